@@ -0,0 +1,365 @@
+package com.example.musicplayer;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads embedded album art off the main thread, decoded at the size it is displayed at.
+ *
+ * Two cache tiers: an in-memory LRU bounded by bitmap bytes, and a disk cache of
+ * pre-scaled JPEG thumbnails keyed by song id, modification time and size, so a retagged
+ * file is decoded afresh. Concurrent requests for the same
+ * art share one decode, and a request is dropped once nobody is waiting for it anymore.
+ * All public methods must be called on the main thread.
+ */
+public final class AlbumArtLoader {
+
+    public interface Callback {
+        /** Called on the main thread; art is null when the song has no embedded picture. */
+        void onArtLoaded(@Nullable Bitmap art);
+    }
+
+    private static final String TAG = "AlbumArtLoader";
+    private static final int DEFAULT_SIZE_DP = 300;
+    private static final long MAX_DISK_BYTES = 50L * 1024 * 1024;
+    private static final int WRITES_BETWEEN_TRIMS = 50;
+
+    private static AlbumArtLoader instance;
+
+    private final Context context;
+    private final File diskDir;
+    private final int defaultSize;
+    private final LruCache<String, Bitmap> memoryCache;
+    // Keys known to have no art, so they are not probed again.
+    private final Set<String> missing = new HashSet<>();
+    // Songs whose file could not be read; unlike missing art, retried after a while.
+    private final DecodeFailures failures = new DecodeFailures();
+    private final HashMap<String, Request> inFlight = new HashMap<>();
+    private final WeakHashMap<ImageView, Ticket> viewTickets = new WeakHashMap<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger diskWrites = new AtomicInteger();
+    private final ExecutorService executor = Executors.newFixedThreadPool(2, r -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            r.run();
+        }, "AlbumArtLoader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static synchronized AlbumArtLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new AlbumArtLoader(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AlbumArtLoader(Context context) {
+        this.context = context;
+        this.diskDir = new File(context.getCacheDir(), "art");
+        this.defaultSize = (int) (DEFAULT_SIZE_DP * context.getResources().getDisplayMetrics().density);
+
+        // An eighth of the heap, accounted in KiB.
+        int maxKb = (int) (Runtime.getRuntime().maxMemory() / 1024 / 8);
+        memoryCache = new LruCache<String, Bitmap>(maxKb) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount() / 1024;
+            }
+        };
+    }
+
+    /** Shows the song's art in the view, falling back to the placeholder; replaces any pending load for the view. */
+    public void load(Song song, ImageView target) {
+        cancel(target);
+        int size = Math.max(target.getWidth(), target.getHeight());
+        if (size == 0) {
+            size = defaultSize;
+        }
+        Ticket ticket = load(song, size, art -> {
+            viewTickets.remove(target);
+            if (art != null) {
+                target.setImageBitmap(art);
+            } else {
+                target.setImageResource(R.drawable.ic_music_note);
+            }
+        });
+        if (ticket != null) {
+            viewTickets.put(target, ticket);
+        }
+    }
+
+    public void cancel(ImageView target) {
+        Ticket ticket = viewTickets.remove(target);
+        if (ticket != null) {
+            ticket.cancel();
+        }
+    }
+
+    /**
+     * Loads the song's art scaled to fit within size pixels. On a memory hit the callback runs
+     * before this returns and null is returned; otherwise the returned ticket cancels the request.
+     */
+    @Nullable
+    public Ticket load(Song song, int size, Callback callback) {
+        String key = song.getId() + "_" + song.getDateModified() + "_" + size;
+        Bitmap cached = memoryCache.get(key);
+        if (cached != null || missing.contains(key)
+                || failures.isBlocked(song.getId(), song.getDateModified(), SystemClock.elapsedRealtime())) {
+            callback.onArtLoaded(cached);
+            return null;
+        }
+
+        Request request = inFlight.get(key);
+        if (request == null) {
+            final Request newRequest = new Request();
+            final String uriString = song.getUriString();
+            final long id = song.getId();
+            final long dateModified = song.getDateModified();
+            final int targetSize = size;
+            newRequest.future = executor.submit(() -> {
+                Bitmap art = loadFromDisk(key);
+                boolean failed = false;
+                if (art == null && !isMarkedMissing(key)) {
+                    try {
+                        art = decodeEmbedded(uriString, targetSize);
+                        deleteOlderVersions(id, dateModified);
+                        saveToDisk(key, art);
+                    } catch (IOException | RuntimeException e) {
+                        // Maybe transient (a file still being written, storage not mounted): nothing is saved.
+                        Log.e(TAG, "Error loading album art", e);
+                        failed = true;
+                    }
+                }
+                final Bitmap result = art;
+                final boolean decodeFailed = failed;
+                mainHandler.post(() -> {
+                    if (decodeFailed) {
+                        failures.recordFailure(song.getId(), song.getDateModified(), SystemClock.elapsedRealtime());
+                    }
+                    deliver(key, newRequest, result, decodeFailed);
+                });
+            });
+            request = newRequest;
+            inFlight.put(key, request);
+        }
+        Ticket ticket = new Ticket(key, callback);
+        request.tickets.add(ticket);
+        return ticket;
+    }
+
+    /** Drops every cached bitmap from memory; the disk tier is kept. */
+    public void clearMemory() {
+        memoryCache.evictAll();
+    }
+
+    private void deliver(String key, Request request, Bitmap art, boolean failed) {
+        // Cache even if the request was cancelled meanwhile; the decode is already paid for.
+        if (art != null) {
+            memoryCache.put(key, art);
+        } else if (!failed) {
+            missing.add(key);
+        }
+        if (inFlight.get(key) != request) {
+            return;
+        }
+        inFlight.remove(key);
+        for (Ticket ticket : request.tickets) {
+            ticket.callback.onArtLoaded(art);
+        }
+    }
+
+    // --- Decoding (worker threads) ---
+
+    /**
+     * The embedded picture scaled to fit size, or null if the file has none. Throws if the
+     * file or the picture could not be read, which says nothing about whether there is art.
+     */
+    @Nullable
+    private Bitmap decodeEmbedded(String uriString, int size) throws IOException {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(context, Uri.parse(uriString));
+            byte[] art = retriever.getEmbeddedPicture();
+            if (art == null) {
+                return null;
+            }
+
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(art, 0, art.length, options);
+            options.inSampleSize = sampleSize(options.outWidth, options.outHeight, size);
+            options.inJustDecodeBounds = false;
+            Bitmap bitmap = BitmapFactory.decodeByteArray(art, 0, art.length, options);
+            if (bitmap == null) {
+                throw new IOException("Undecodable embedded picture in " + uriString);
+            }
+
+            // inSampleSize only halves; finish with an exact scale so the cached copy is no larger than needed.
+            int longest = Math.max(bitmap.getWidth(), bitmap.getHeight());
+            if (longest > size) {
+                float scale = (float) size / longest;
+                Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                        Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                        Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+                if (scaled != bitmap) {
+                    bitmap.recycle();
+                }
+                bitmap = scaled;
+            }
+            return bitmap;
+        } finally {
+            try {
+                retriever.release();
+            } catch (IOException e) {
+                Log.w(TAG, "Could not release metadata retriever", e);
+            }
+        }
+    }
+
+    private static int sampleSize(int width, int height, int size) {
+        int sample = 1;
+        while (width / (sample * 2) >= size && height / (sample * 2) >= size) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    // --- Disk tier (worker threads) ---
+
+    private File diskFile(String key) {
+        return new File(diskDir, key + ".jpg");
+    }
+
+    private Bitmap loadFromDisk(String key) {
+        File file = diskFile(key);
+        if (file.length() == 0) {
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return BitmapFactory.decodeFile(file.getPath());
+    }
+
+    private boolean isMarkedMissing(String key) {
+        File file = diskFile(key);
+        return file.exists() && file.length() == 0;
+    }
+
+    /** Writes the thumbnail, or an empty marker file when the song has no art. */
+    private void saveToDisk(String key, Bitmap art) {
+        if (!diskDir.isDirectory() && !diskDir.mkdirs()) {
+            return;
+        }
+        File file = diskFile(key);
+        File tmp = new File(diskDir, key + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            if (art != null) {
+                art.compress(Bitmap.CompressFormat.JPEG, 90, out);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not cache album art", e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+        }
+        if (diskWrites.incrementAndGet() % WRITES_BETWEEN_TRIMS == 0) {
+            trimDisk();
+        }
+    }
+
+    /** Deletes the song's thumbnails and missing-art markers from before it was last modified. */
+    private void deleteOlderVersions(long id, long dateModified) {
+        String songPrefix = id + "_";
+        String currentPrefix = songPrefix + dateModified + "_";
+        File[] stale = diskDir.listFiles((dir, name) -> name.startsWith(songPrefix) && !name.startsWith(currentPrefix));
+        if (stale != null) {
+            for (File file : stale) {
+                file.delete();
+            }
+        }
+    }
+
+    /** Deletes the least recently used thumbnails until the cache fits its budget. */
+    private void trimDisk() {
+        File[] files = diskDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= MAX_DISK_BYTES) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (total <= MAX_DISK_BYTES) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    // --- Request bookkeeping (main thread) ---
+
+    private static final class Request {
+        Future<?> future;
+        final List<Ticket> tickets = new ArrayList<>(1);
+    }
+
+    public final class Ticket {
+        private final String key;
+        private final Callback callback;
+
+        private Ticket(String key, Callback callback) {
+            this.key = key;
+            this.callback = callback;
+        }
+
+        /** Stops the callback from firing; the decode itself is abandoned once no ticket is left. */
+        public void cancel() {
+            Request request = inFlight.get(key);
+            if (request == null || !request.tickets.remove(this)) {
+                return;
+            }
+            if (request.tickets.isEmpty()) {
+                request.future.cancel(true);
+                inFlight.remove(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.musicplayer;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The songs of a SongStore grouped by album or by artist, precomputed so a browse screen
+ * opens in constant time whatever the library size.
+ *
+ * Each group is a range of one int array of store positions (offsets[g] to offsets[g + 1]),
+ * with its name and total duration alongside. Groups are in name order, equal names in key
+ * order (album id, or the artist's exact spelling), so group order never depends on where
+ * songs sit in the store and update() agrees with build(). An album's tracks are in disc and
+ * track order, an artist's in store (title) order. Immutable; update() derives the index of
+ * a changed library and only regroups and re-sorts the groups the change touched.
+ */
+public final class BrowseIndex {
+
+    public enum Kind { ALBUM, ARTIST }
+
+    private static final Comparator<String> NAME_ORDER = String::compareToIgnoreCase;
+
+    private final Kind kind;
+    private final SongStore store;
+    private final String[] names;
+    private final int[] offsets;
+    private final int[] members;
+    private final long[] durations;
+
+    private BrowseIndex(Kind kind, SongStore store, String[] names, int[] offsets, int[] members, long[] durations) {
+        this.kind = kind;
+        this.store = store;
+        this.names = names;
+        this.offsets = offsets;
+        this.members = members;
+        this.durations = durations;
+    }
+
+    public static BrowseIndex build(Kind kind, SongStore store) {
+        int size = store.size();
+        HashMap<Object, Integer> groupsByKey = new HashMap<>();
+        int[] groupOf = new int[size];
+        for (int position = 0; position < size; position++) {
+            groupOf[position] = groupFor(groupsByKey, keyOf(kind, store, position));
+        }
+        return assemble(kind, store, groupOf, groupsByKey.size(), null, null, null);
+    }
+
+    /**
+     * The index for newStore, derived from this one. previousPositions maps each position in
+     * newStore to the same, unmodified song's position in this index's store, or -1 for songs
+     * that are new or were modified. Groups that kept exactly their songs are copied over
+     * without re-sorting, and only new or modified songs are looked up by key.
+     */
+    public BrowseIndex update(SongStore newStore, int[] previousPositions) {
+        int size = newStore.size();
+        int previousGroupCount = names.length;
+        int[] previousGroupOf = new int[store.size()];
+        for (int group = 0; group < previousGroupCount; group++) {
+            for (int i = offsets[group]; i < offsets[group + 1]; i++) {
+                previousGroupOf[members[i]] = group;
+            }
+        }
+
+        int added = 0;
+        for (int previous : previousPositions) {
+            if (previous < 0) added++;
+        }
+        boolean[] dirty = new boolean[previousGroupCount + added];
+        int[] kept = new int[previousGroupCount];
+        int[] groupOf = new int[size];
+        HashMap<Object, Integer> groupsByKey = null;
+        for (int position = 0; position < size; position++) {
+            int previous = previousPositions[position];
+            if (previous >= 0) {
+                int group = previousGroupOf[previous];
+                groupOf[position] = group;
+                kept[group]++;
+                continue;
+            }
+            if (groupsByKey == null) {
+                groupsByKey = new HashMap<>(previousGroupCount * 2);
+                for (int group = 0; group < previousGroupCount; group++) {
+                    groupsByKey.put(keyOf(kind, store, members[offsets[group]]), group);
+                }
+            }
+            int group = groupFor(groupsByKey, keyOf(kind, newStore, position));
+            groupOf[position] = group;
+            dirty[group] = true;
+        }
+        for (int group = 0; group < previousGroupCount; group++) {
+            if (kept[group] != offsets[group + 1] - offsets[group]) {
+                dirty[group] = true; // Lost songs to removal or modification.
+            }
+        }
+        int groupCount = groupsByKey == null ? previousGroupCount : groupsByKey.size();
+        return assemble(kind, newStore, groupOf, groupCount, dirty, this, previousPositions);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public SongStore getStore() {
+        return store;
+    }
+
+    public int getGroupCount() {
+        return names.length;
+    }
+
+    /** Album title or artist name. */
+    public String getName(int group) {
+        return names[group];
+    }
+
+    public int getSongCount(int group) {
+        return offsets[group + 1] - offsets[group];
+    }
+
+    public long getTotalDurationMs(int group) {
+        return durations[group];
+    }
+
+    /** Store position of the group's index-th song. */
+    public int getPosition(int group, int index) {
+        if (index < 0 || index >= getSongCount(group)) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + getSongCount(group));
+        }
+        return members[offsets[group] + index];
+    }
+
+    /** The group's songs in order, as a view over the store; creating it is constant time. */
+    public List<Song> getSongs(int group) {
+        return new GroupList(offsets[group], offsets[group + 1]);
+    }
+
+    // --- Building ---
+
+    private static Object keyOf(Kind kind, SongStore store, int position) {
+        if (kind == Kind.ARTIST) {
+            return store.getArtist(position);
+        }
+        // Same-named albums by different artists are different albums; the id tells them apart.
+        long albumId = store.getAlbumId(position);
+        return albumId >= 0 ? (Object) albumId : store.getAlbum(position);
+    }
+
+    private static String nameOf(Kind kind, SongStore store, int position) {
+        String name = kind == Kind.ARTIST ? store.getArtist(position) : store.getAlbum(position);
+        return name == null ? "" : name;
+    }
+
+    /** Album ids in numeric order, before albums without one; names in exact string order. */
+    private static int compareKeys(Object a, Object b) {
+        if (a instanceof Long) {
+            return b instanceof Long ? Long.compare((Long) a, (Long) b) : -1;
+        }
+        if (b instanceof Long) {
+            return 1;
+        }
+        return a == null ? (b == null ? 0 : -1) : b == null ? 1 : ((String) a).compareTo((String) b);
+    }
+
+    private static int groupFor(HashMap<Object, Integer> groupsByKey, Object key) {
+        Integer group = groupsByKey.get(key);
+        if (group == null) {
+            group = groupsByKey.size();
+            groupsByKey.put(key, group);
+        }
+        return group;
+    }
+
+    /**
+     * Lays out the groups given each position's group id. With a previous index, groups below
+     * its group count that aren't dirty are copied from it; all others are filled from groupOf
+     * and sorted.
+     */
+    private static BrowseIndex assemble(Kind kind, SongStore store, int[] groupOf, int groupCount,
+                                        boolean[] dirty, BrowseIndex previous, int[] previousPositions) {
+        int size = store.size();
+        int previousGroupCount = previous == null ? 0 : previous.names.length;
+        int[] counts = new int[groupCount];
+        int[] firstPositions = new int[groupCount];
+        for (int position = size - 1; position >= 0; position--) {
+            counts[groupOf[position]]++;
+            firstPositions[groupOf[position]] = position;
+        }
+
+        // Names, and whether group order can be carried over from the previous index.
+        String[] groupNames = new String[groupCount];
+        boolean reorder = previous == null || groupCount != previousGroupCount;
+        int liveCount = 0;
+        for (int group = 0; group < groupCount; group++) {
+            if (counts[group] == 0) {
+                reorder = true; // Every song of a previous group is gone.
+                continue;
+            }
+            liveCount++;
+            if (group < previousGroupCount && !dirty[group]) {
+                groupNames[group] = previous.names[group];
+            } else {
+                groupNames[group] = nameOf(kind, store, firstPositions[group]);
+                reorder |= group < previousGroupCount && !groupNames[group].equals(previous.names[group]);
+            }
+        }
+        int[] order = new int[liveCount];
+        if (reorder) {
+            Integer[] boxed = new Integer[liveCount];
+            for (int group = 0, i = 0; group < groupCount; group++) {
+                if (counts[group] > 0) boxed[i++] = group;
+            }
+            Arrays.sort(boxed, (a, b) -> {
+                int byName = NAME_ORDER.compare(groupNames[a], groupNames[b]);
+                return byName != 0 ? byName : compareKeys(keyOf(kind, store, firstPositions[a]),
+                        keyOf(kind, store, firstPositions[b]));
+            });
+            for (int i = 0; i < liveCount; i++) order[i] = boxed[i];
+        } else {
+            // Same groups under the same names: the previous (sorted) group order still holds.
+            for (int group = 0; group < groupCount; group++) order[group] = group;
+        }
+
+        int[] slotOf = new int[groupCount];
+        String[] names = new String[liveCount];
+        int[] offsets = new int[liveCount + 1];
+        long[] durations = new long[liveCount];
+        for (int slot = 0; slot < liveCount; slot++) {
+            int group = order[slot];
+            slotOf[group] = slot;
+            names[slot] = groupNames[group];
+            offsets[slot + 1] = offsets[slot] + counts[group];
+        }
+
+        int[] members = new int[size];
+        int[] fill = Arrays.copyOf(offsets, liveCount);
+        boolean[] copied = new boolean[groupCount];
+        if (previous != null) {
+            int[] newPositions = new int[previous.store.size()];
+            for (int position = 0; position < size; position++) {
+                if (previousPositions[position] >= 0) {
+                    newPositions[previousPositions[position]] = position;
+                }
+            }
+            for (int group = 0; group < previousGroupCount; group++) {
+                if (dirty[group] || counts[group] == 0) continue;
+                int slot = slotOf[group];
+                for (int i = previous.offsets[group]; i < previous.offsets[group + 1]; i++) {
+                    members[fill[slot]++] = newPositions[previous.members[i]];
+                }
+                durations[slot] = previous.durations[group];
+                copied[group] = true;
+            }
+        }
+        for (int position = 0; position < size; position++) {
+            int group = groupOf[position];
+            if (!copied[group]) {
+                int slot = slotOf[group];
+                members[fill[slot]++] = position;
+                durations[slot] += store.getDurationMs(position);
+            }
+        }
+        if (kind == Kind.ALBUM) {
+            for (int group = 0; group < groupCount; group++) {
+                if (counts[group] > 1 && !copied[group]) {
+                    int slot = slotOf[group];
+                    sortByTrack(store, members, offsets[slot], offsets[slot + 1]);
+                }
+            }
+        }
+        // Artist groups were filled in position order, which is already their order.
+        return new BrowseIndex(kind, store, names, offsets, members, durations);
+    }
+
+    /** Orders members[from, to) by track number, then store position, without boxing. */
+    private static void sortByTrack(SongStore store, int[] members, int from, int to) {
+        long[] keys = new long[to - from];
+        for (int i = from; i < to; i++) {
+            keys[i - from] = ((long) Math.max(0, store.getTrackNumber(members[i])) << 32) | members[i];
+        }
+        Arrays.sort(keys);
+        for (int i = from; i < to; i++) {
+            members[i] = (int) keys[i - from];
+        }
+    }
+
+    private final class GroupList extends AbstractList<Song> implements RandomAccess {
+        private final int from;
+        private final int to;
+
+        GroupList(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Song get(int index) {
+            if (index < 0 || index >= to - from) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + (to - from));
+            }
+            return store.get(members[from + index]);
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.musicplayer;
+
+import java.util.HashMap;
+
+/**
+ * Songs whose decode failed, so they are not retried on every request, without giving up on
+ * them for good: such failures are often transient (a file still being copied, storage not
+ * mounted yet, a codec busy elsewhere). A song may be tried again after FIRST_RETRY_DELAY_MS,
+ * doubling with every failure, until it has failed MAX_FAILURES times; a modified file always
+ * gets a fresh start. Times are whatever monotonic clock the caller uses. Not thread-safe.
+ */
+final class DecodeFailures {
+
+    static final long FIRST_RETRY_DELAY_MS = 30_000;
+    static final int MAX_FAILURES = 4;
+
+    private static final class Failure {
+        final long dateModified;
+        final int count;
+        final long retryAtMs;
+
+        Failure(long dateModified, int count, long retryAtMs) {
+            this.dateModified = dateModified;
+            this.count = count;
+            this.retryAtMs = retryAtMs;
+        }
+    }
+
+    private final HashMap<Long, Failure> failures = new HashMap<>();
+
+    /** Whether the song, as last modified at dateModified, should be left alone for now. */
+    boolean isBlocked(long id, long dateModified, long nowMs) {
+        Failure failure = failures.get(id);
+        if (failure == null) {
+            return false;
+        }
+        if (failure.dateModified != dateModified) {
+            failures.remove(id);
+            return false;
+        }
+        return failure.count >= MAX_FAILURES || nowMs < failure.retryAtMs;
+    }
+
+    void recordFailure(long id, long dateModified, long nowMs) {
+        Failure old = failures.get(id);
+        int count = old != null && old.dateModified == dateModified ? old.count + 1 : 1;
+        failures.put(id, new Failure(dateModified, count, nowMs + (FIRST_RETRY_DELAY_MS << (count - 1))));
+    }
+
+    void recordSuccess(long id) {
+        failures.remove(id);
+    }
+}
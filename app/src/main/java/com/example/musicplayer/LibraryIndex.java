@@ -0,0 +1,96 @@
+package com.example.musicplayer;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A loaded library: the song store plus its album and artist browse indexes. LibraryLoader
+ * builds a new one off the main thread for every load or library change and publishes it
+ * through MusicRepository. LibraryLoader builds the sorter on its thread once a load is done,
+ * and from then on it is carried across updates, so no sort request pays for collation. The
+ * id index is built on first use, for turning stored song ids (playlists) back into songs.
+ */
+public final class LibraryIndex {
+
+    private static final LibraryIndex EMPTY = build(SongStore.empty());
+
+    private final SongStore songs;
+    private final BrowseIndex albums;
+    private final BrowseIndex artists;
+    private SongSorter sorter; // guarded by this
+    private SongIdIndex idIndex; // guarded by this
+
+    private LibraryIndex(SongStore songs, BrowseIndex albums, BrowseIndex artists) {
+        this.songs = songs;
+        this.albums = albums;
+        this.artists = artists;
+    }
+
+    public static LibraryIndex empty() {
+        return EMPTY;
+    }
+
+    public static LibraryIndex build(SongStore songs) {
+        return new LibraryIndex(songs, BrowseIndex.build(BrowseIndex.Kind.ALBUM, songs),
+                BrowseIndex.build(BrowseIndex.Kind.ARTIST, songs));
+    }
+
+    /** See BrowseIndex.update() for previousPositions. */
+    public LibraryIndex update(SongStore newSongs, int[] previousPositions) {
+        LibraryIndex updated = new LibraryIndex(newSongs, albums.update(newSongs, previousPositions),
+                artists.update(newSongs, previousPositions));
+        SongSorter previousSorter;
+        synchronized (this) {
+            previousSorter = sorter;
+        }
+        if (previousSorter != null) {
+            updated.sorter = previousSorter.update(newSongs, previousPositions);
+        }
+        return updated;
+    }
+
+    /** Builds the sorter on first call, or again if the locale changed; call off the main thread. */
+    public synchronized SongSorter getSorter() {
+        Locale locale = Locale.getDefault();
+        if (sorter == null || !sorter.getLocale().equals(locale)) {
+            sorter = SongSorter.build(songs, locale);
+        }
+        return sorter;
+    }
+
+    public synchronized SongIdIndex getIdIndex() {
+        if (idIndex == null) {
+            idIndex = SongIdIndex.build(songs);
+        }
+        return idIndex;
+    }
+
+    /**
+     * The songs with the given ids, in that order, skipping ids that are no longer in the
+     * library. Gathers columns without creating Song objects, so even 50k ids take milliseconds.
+     */
+    public SongStore select(long[] ids) {
+        SongIdIndex index = getIdIndex();
+        int[] positions = new int[ids.length];
+        int count = 0;
+        for (long id : ids) {
+            int position = index.positionOf(id);
+            if (position >= 0) {
+                positions[count++] = position;
+            }
+        }
+        return songs.reorder(count == positions.length ? positions : Arrays.copyOf(positions, count));
+    }
+
+    public SongStore getSongs() {
+        return songs;
+    }
+
+    public BrowseIndex getAlbums() {
+        return albums;
+    }
+
+    public BrowseIndex getArtists() {
+        return artists;
+    }
+}
@@ -0,0 +1,444 @@
+package com.example.musicplayer;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+import android.os.Process;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Streams the music library on a background thread and hands the rows to the UI in
+ * pages, so the first screenful shows up without waiting for the whole library.
+ *
+ * When a snapshot from a previous run exists it is rendered first, then reconciled
+ * against MediaStore by fetching only the rows that were added or modified since.
+ *
+ * After a load the loader keeps watching MediaStore and runs the same delta sync whenever
+ * it changes. Bursts of changes (a sync copying thousands of files) are coalesced: the sync
+ * runs once changes have settled, or at the latest CHANGE_MAX_DELAY_MS after the first.
+ */
+public class LibraryLoader {
+
+    public interface Callback {
+        /** Called on the main thread for every page, in list order. */
+        void onSongsLoaded(List<Song> page, int loaded, int total);
+
+        /** Called on the main thread once every page has been delivered, with all of them as one compact list. */
+        void onLoadFinished(List<Song> songs);
+
+        /** Called on the main thread when the delta sync changed the list that was already delivered. */
+        void onLibraryChanged(List<Song> songs);
+    }
+
+    private static final String TAG = "LibraryLoader";
+    private static final String SNAPSHOT_FILE = "library.snapshot";
+
+    // Small first page so the list renders immediately, larger pages afterwards
+    // to keep the number of main-thread posts low.
+    private static final int FIRST_PAGE_SIZE = 30;
+    private static final int PAGE_SIZE = 500;
+
+    // Stay well below SQLite's bound-argument limit when fetching rows by id.
+    private static final int ID_BATCH_SIZE = 500;
+
+    // Quiet period after a MediaStore change before syncing, and the longest a steady stream
+    // of changes can hold the sync off, so a long copy still shows up as it goes.
+    private static final long CHANGE_DEBOUNCE_MS = 1000;
+    private static final long CHANGE_MAX_DELAY_MS = 10_000;
+
+    private static final Uri MUSIC_URI = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
+    private static final String SELECTION = MediaStore.Audio.Media.IS_MUSIC + "!= 0";
+    private static final String[] PROJECTION = {
+            MediaStore.Audio.Media._ID,
+            MediaStore.Audio.Media.TITLE,
+            MediaStore.Audio.Media.ARTIST,
+            MediaStore.Audio.Media.DATE_MODIFIED,
+            MediaStore.Audio.Media.ALBUM,
+            MediaStore.Audio.Media.ALBUM_ID,
+            MediaStore.Audio.Media.DURATION,
+            MediaStore.Audio.Media.TRACK,
+            MediaStore.Audio.Media.DATE_ADDED
+    };
+
+    private final Context context;
+    private final ContentResolver contentResolver;
+    private final File snapshotFile;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            r.run();
+        }, "LibraryLoader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Main thread.
+    private CancellationSignal cancellationSignal;
+    private Callback callback;
+    private ContentObserver observer;
+    private long firstChangeAt;
+    private final Runnable syncChanges = this::syncChanges;
+
+    // Loader thread: the library as last delivered, and the MediaStore generation it reflects.
+    private LibraryIndex library;
+    private long libraryGeneration = -1;
+
+    public LibraryLoader(Context context) {
+        this.context = context.getApplicationContext();
+        this.contentResolver = this.context.getContentResolver();
+        this.snapshotFile = new File(this.context.getCacheDir(), SNAPSHOT_FILE);
+    }
+
+    /**
+     * Starts a fresh load, cancelling any load still in flight, and keeps delivering library
+     * changes to the callback until cancel(). Must be called on the main thread.
+     */
+    public void load(Callback callback) {
+        cancel();
+        final CancellationSignal signal = new CancellationSignal();
+        cancellationSignal = signal;
+        this.callback = callback;
+        if (observer == null) {
+            observer = new ContentObserver(mainHandler) {
+                @Override
+                public void onChange(boolean selfChange) {
+                    scheduleChangeSync();
+                }
+            };
+            contentResolver.registerContentObserver(MUSIC_URI, true, observer);
+        }
+        executor.execute(() -> {
+            try {
+                LibrarySnapshot.Reader snapshot = LibrarySnapshot.open(snapshotFile);
+                if (snapshot == null) {
+                    scan(signal, callback);
+                } else {
+                    library = readSnapshot(snapshot, signal, callback);
+                    libraryGeneration = snapshot.getGeneration();
+                    sync(signal, callback);
+                }
+                // Collate now, while nobody waits, so the first sort the user picks is instant.
+                // Later syncs carry the sorter over, collating only the titles they fetched.
+                if (!signal.isCanceled()) {
+                    library.getSorter();
+                }
+            } catch (OperationCanceledException e) {
+                // Superseded by a newer load or the activity went away.
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error loading music library", e);
+            }
+        });
+    }
+
+    /** Stops the current load and change syncs; no further callbacks are delivered for them. */
+    public void cancel() {
+        mainHandler.removeCallbacks(syncChanges);
+        firstChangeAt = 0;
+        callback = null;
+        if (cancellationSignal != null) {
+            cancellationSignal.cancel();
+            cancellationSignal = null;
+        }
+    }
+
+    public void shutdown() {
+        cancel();
+        if (observer != null) {
+            contentResolver.unregisterContentObserver(observer);
+            observer = null;
+        }
+        executor.shutdownNow();
+    }
+
+    // --- Live updates ---
+
+    // Main thread: (re)starts the quiet period, without pushing the sync past the burst's deadline.
+    private void scheduleChangeSync() {
+        if (cancellationSignal == null) {
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        if (firstChangeAt == 0) {
+            firstChangeAt = now;
+        }
+        mainHandler.removeCallbacks(syncChanges);
+        long delay = Math.min(CHANGE_DEBOUNCE_MS, firstChangeAt + CHANGE_MAX_DELAY_MS - now);
+        mainHandler.postDelayed(syncChanges, Math.max(0, delay));
+    }
+
+    private void syncChanges() {
+        firstChangeAt = 0;
+        final CancellationSignal signal = cancellationSignal;
+        final Callback changeCallback = callback;
+        if (signal == null) {
+            return;
+        }
+        // Queued behind the load on the same thread, so it always diffs against the latest library.
+        executor.execute(() -> {
+            try {
+                if (library != null && !signal.isCanceled()) {
+                    sync(signal, changeCallback);
+                }
+            } catch (OperationCanceledException e) {
+                // A newer load replaced this one.
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error syncing music library changes", e);
+            }
+        });
+    }
+
+    // --- Full scan (no snapshot yet) ---
+
+    private void scan(CancellationSignal signal, Callback callback) {
+        long generation = currentGeneration();
+        SongStore songs = SongStore.empty();
+        try (Cursor cursor = contentResolver.query(MUSIC_URI, PROJECTION, SELECTION, null,
+                MediaStore.Audio.Media.TITLE + " ASC", signal)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                int total = cursor.getCount();
+                SongStore.Builder builder = new SongStore.Builder(total);
+                Pager pager = new Pager(signal, callback, total);
+                do {
+                    pager.add(songFromCursor(cursor, builder));
+                } while (cursor.moveToNext());
+                pager.flush();
+                songs = builder.build();
+            }
+        }
+        library = LibraryIndex.build(songs);
+        libraryGeneration = generation;
+        finish(signal, callback, library);
+        saveSnapshot(generation, songs);
+    }
+
+    // --- Snapshot + delta sync ---
+
+    private LibraryIndex readSnapshot(LibrarySnapshot.Reader snapshot, CancellationSignal signal, Callback callback) {
+        SongStore.Builder builder = new SongStore.Builder(snapshot.getCount());
+        Pager pager = new Pager(signal, callback, snapshot.getCount());
+        while (snapshot.moveToNext()) {
+            pager.add(builder.add(snapshot.getId(), snapshot.getTitle(), snapshot.getArtist(), snapshot.getAlbum(),
+                    snapshot.getAlbumId(), snapshot.getDurationMs(), snapshot.getTrackNumber(),
+                    snapshot.getDateAdded(), snapshot.getDateModified()));
+        }
+        pager.flush();
+        LibraryIndex library = LibraryIndex.build(builder.build());
+        finish(signal, callback, library);
+        return library;
+    }
+
+    /** Brings library up to date with MediaStore, re-reading only added and modified rows. */
+    private void sync(CancellationSignal signal, Callback callback) {
+        long generation = currentGeneration();
+        if (generation != -1 && generation == libraryGeneration) {
+            return; // MediaStore has not changed since the library was read.
+        }
+
+        SongStore cached = library.getSongs();
+        HashMap<Long, Integer> positions = new HashMap<>(cached.size() * 2);
+        for (int i = 0; i < cached.size(); i++) {
+            positions.put(cached.getId(i), i);
+        }
+
+        // Cheap pass over ids and timestamps only, to find what needs re-reading.
+        String[] stampProjection = {MediaStore.Audio.Media._ID, MediaStore.Audio.Media.DATE_MODIFIED};
+        Set<Long> present = new HashSet<>(cached.size() * 2);
+        List<Long> stale = new ArrayList<>();
+        try (Cursor cursor = contentResolver.query(MUSIC_URI, stampProjection, SELECTION, null, null, signal)) {
+            if (cursor == null) {
+                return;
+            }
+            while (cursor.moveToNext()) {
+                long id = cursor.getLong(0);
+                Integer position = positions.get(id);
+                if (position == null || cached.getDateModified(position) != cursor.getLong(1)) {
+                    stale.add(id);
+                } else {
+                    present.add(id);
+                }
+            }
+        }
+
+        boolean removedAny = present.size() != cached.size();
+        if (stale.isEmpty() && !removedAny) {
+            libraryGeneration = generation;
+            saveSnapshot(generation, cached);
+            return;
+        }
+
+        SongStore fetched = fetchSongs(stale, signal);
+        // Survivors keep their cached order, which came from SQLite's collation and which Java
+        // can't reproduce; fetched songs are merged in by title. Re-sorting everything would
+        // reorder mixed-case and non-ASCII titles the user never touched.
+        List<Song> added = new ArrayList<>(fetched);
+        Collections.sort(added, Song.TITLE_ORDER);
+        List<Song> mergedSongs = new ArrayList<>(present.size() + added.size());
+        int next = 0;
+        for (int i = 0; i < cached.size(); i++) {
+            if (!present.contains(cached.getId(i))) {
+                continue;
+            }
+            Song survivor = cached.get(i);
+            while (next < added.size() && Song.TITLE_ORDER.compare(added.get(next), survivor) < 0) {
+                mergedSongs.add(added.get(next++));
+            }
+            mergedSongs.add(survivor);
+        }
+        mergedSongs.addAll(added.subList(next, added.size()));
+        SongStore merged = SongStore.copyOf(mergedSongs);
+
+        // Only the fetched songs are new to the browse indexes; everything else keeps its groups.
+        Set<Long> fetchedIds = new HashSet<>(fetched.size() * 2);
+        for (int i = 0; i < fetched.size(); i++) {
+            fetchedIds.add(fetched.getId(i));
+        }
+        int[] previousPositions = new int[merged.size()];
+        for (int i = 0; i < merged.size(); i++) {
+            long id = merged.getId(i);
+            previousPositions[i] = fetchedIds.contains(id) ? -1 : positions.get(id);
+        }
+        LibraryIndex updated = library.update(merged, previousPositions);
+
+        // Deleted: cached songs that neither kept their row nor were fetched again.
+        long[] removedIds = new long[cached.size()];
+        int removedCount = 0;
+        for (int i = 0; i < cached.size(); i++) {
+            long id = cached.getId(i);
+            if (!present.contains(id) && !fetchedIds.contains(id)) {
+                removedIds[removedCount++] = id;
+            }
+        }
+        final long[] removed = Arrays.copyOf(removedIds, removedCount);
+
+        library = updated;
+        libraryGeneration = generation;
+        mainHandler.post(() -> {
+            if (!signal.isCanceled()) {
+                MusicRepository.getInstance().publishLibraryChange(updated, removed, fetched);
+                callback.onLibraryChanged(merged);
+            }
+        });
+        saveSnapshot(generation, merged);
+    }
+
+    private SongStore fetchSongs(List<Long> ids, CancellationSignal signal) {
+        SongStore.Builder builder = new SongStore.Builder(ids.size());
+        for (int start = 0; start < ids.size(); start += ID_BATCH_SIZE) {
+            int end = Math.min(start + ID_BATCH_SIZE, ids.size());
+            StringBuilder selection = new StringBuilder(SELECTION).append(" AND ")
+                    .append(MediaStore.Audio.Media._ID).append(" IN (");
+            String[] args = new String[end - start];
+            for (int i = start; i < end; i++) {
+                selection.append(i == start ? "?" : ",?");
+                args[i - start] = String.valueOf(ids.get(i));
+            }
+            selection.append(')');
+
+            try (Cursor cursor = contentResolver.query(MUSIC_URI, PROJECTION, selection.toString(), args, null, signal)) {
+                while (cursor != null && cursor.moveToNext()) {
+                    songFromCursor(cursor, builder);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    // --- Helpers ---
+
+    private static Song songFromCursor(Cursor cursor, SongStore.Builder builder) {
+        return builder.addRow(cursor.getLong(0), cursor.getString(1), cursor.getString(2), cursor.getString(4),
+                cursor.getLong(5), cursor.getLong(6), cursor.getInt(7), cursor.getLong(8), cursor.getLong(3));
+    }
+
+    /** Sum of the external volumes' generations, or -1 where MediaStore has no generation API. */
+    private long currentGeneration() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.R) {
+            return -1;
+        }
+        long generation = 0;
+        for (String volume : MediaStore.getExternalVolumeNames(context)) {
+            generation += MediaStore.getGeneration(context, volume);
+        }
+        return generation;
+    }
+
+    private void saveSnapshot(long generation, List<Song> songs) {
+        try {
+            LibrarySnapshot.write(snapshotFile, generation, songs);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write library snapshot", e);
+        }
+    }
+
+    private void finish(CancellationSignal signal, Callback callback, LibraryIndex library) {
+        mainHandler.post(() -> {
+            if (!signal.isCanceled()) {
+                MusicRepository.getInstance().setLibrary(library);
+                callback.onLoadFinished(library.getSongs());
+            }
+        });
+    }
+
+    /** Batches songs into pages and posts them to the main thread. */
+    private class Pager {
+        private final CancellationSignal signal;
+        private final Callback callback;
+        private final int total;
+        private int pageSize = FIRST_PAGE_SIZE;
+        private List<Song> page = new ArrayList<>(FIRST_PAGE_SIZE);
+        private int loaded;
+
+        Pager(CancellationSignal signal, Callback callback, int total) {
+            this.signal = signal;
+            this.callback = callback;
+            this.total = total;
+        }
+
+        void add(Song song) {
+            page.add(song);
+            if (page.size() == pageSize) {
+                pageSize = PAGE_SIZE;
+                flush();
+            }
+        }
+
+        void flush() {
+            signal.throwIfCanceled();
+            if (page.isEmpty()) {
+                return;
+            }
+            final List<Song> delivered = page;
+            loaded += delivered.size();
+            final int loadedSoFar = loaded;
+            mainHandler.post(() -> {
+                // cancel() runs on the main thread too, so this check can't race with it.
+                if (!signal.isCanceled()) {
+                    callback.onSongsLoaded(delivered, loadedSoFar, total);
+                }
+            });
+            page = new ArrayList<>(pageSize);
+        }
+    }
+}
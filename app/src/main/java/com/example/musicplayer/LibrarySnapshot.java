@@ -0,0 +1,157 @@
+package com.example.musicplayer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Compact binary copy of the song list, written after every scan so the next cold start
+ * can render the library before MediaStore is queried.
+ *
+ * Layout: magic, version, song count, MediaStore generation, then one record per song
+ * (id, date modified, title, artist, album, album id, duration, track, date added). Content URIs are not stored, they are derived from the id.
+ */
+final class LibrarySnapshot {
+
+    private static final int MAGIC = 0x4D504C53; // "MPLS"
+    private static final int VERSION = 3;
+
+    private LibrarySnapshot() {}
+
+    /** Writes the snapshot to a temp file and renames it over the old one, so readers never see a partial file. */
+    static void write(File file, long generation, List<Song> songs) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(songs.size());
+            out.writeLong(generation);
+            for (Song song : songs) {
+                out.writeLong(song.getId());
+                out.writeLong(song.getDateModified());
+                writeString(out, song.getTitle());
+                writeString(out, song.getArtist());
+                writeString(out, song.getAlbum());
+                out.writeLong(song.getAlbumId());
+                out.writeInt((int) song.getDurationMs());
+                out.writeInt(song.getTrackNumber());
+                out.writeLong(song.getDateAdded());
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Maps the snapshot into memory and returns a cursor-style reader over it, or null if
+     * there is no usable snapshot. Records are decoded one at a time as the reader advances.
+     */
+    static Reader open(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid after the channel is closed.
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 20 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            int count = buffer.getInt();
+            long generation = buffer.getLong();
+            return new Reader(buffer, count, generation);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    static final class Reader {
+        private final MappedByteBuffer buffer;
+        private final int count;
+        private final long generation;
+        private int read;
+
+        private long id;
+        private long dateModified;
+        private String title;
+        private String artist;
+        private String album;
+        private long albumId;
+        private int durationMs;
+        private int trackNumber;
+        private long dateAdded;
+
+        private Reader(MappedByteBuffer buffer, int count, long generation) {
+            this.buffer = buffer;
+            this.count = count;
+            this.generation = generation;
+        }
+
+        int getCount() { return count; }
+        long getGeneration() { return generation; }
+
+        /** Decodes the next record; returns false at the end or if the file is truncated. */
+        boolean moveToNext() {
+            if (read >= count) {
+                return false;
+            }
+            try {
+                id = buffer.getLong();
+                dateModified = buffer.getLong();
+                title = readString();
+                artist = readString();
+                album = readString();
+                albumId = buffer.getLong();
+                durationMs = buffer.getInt();
+                trackNumber = buffer.getInt();
+                dateAdded = buffer.getLong();
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                read = count;
+                return false;
+            }
+            read++;
+            return true;
+        }
+
+        private String readString() {
+            int length = buffer.getInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        long getId() { return id; }
+        long getDateModified() { return dateModified; }
+        String getTitle() { return title; }
+        String getArtist() { return artist; }
+        String getAlbum() { return album; }
+        long getAlbumId() { return albumId; }
+        int getDurationMs() { return durationMs; }
+        int getTrackNumber() { return trackNumber; }
+        long getDateAdded() { return dateAdded; }
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.musicplayer;
+
+import java.nio.ShortBuffer;
+
+/**
+ * A track's integrated loudness (ITU-R BS.1770 / EBU R128) and sample peak, and the
+ * ReplayGain 2.0 gain derived from them.
+ */
+public final class Loudness {
+
+    /** ReplayGain 2.0 reference level. */
+    public static final float REFERENCE_LUFS = -18f;
+
+    private final float integratedLufs;
+    private final float peak;
+
+    /** integratedLufs is NEGATIVE_INFINITY for silence; peak is linear, 1 being full scale. */
+    public Loudness(float integratedLufs, float peak) {
+        this.integratedLufs = integratedLufs;
+        this.peak = peak;
+    }
+
+    public float getIntegratedLufs() {
+        return integratedLufs;
+    }
+
+    public float getPeak() {
+        return peak;
+    }
+
+    /** Gain in dB that brings the track to the reference level, lowered so its peaks don't clip. */
+    public float getGainDb() {
+        if (Float.isInfinite(integratedLufs)) {
+            return 0f;
+        }
+        float gain = REFERENCE_LUFS - integratedLufs;
+        if (peak > 0f) {
+            gain = Math.min(gain, (float) (-20 * Math.log10(peak)));
+        }
+        return gain;
+    }
+
+    /**
+     * Streaming meter over interleaved 16-bit PCM. Samples go through the K-weighting filter
+     * into 100 ms sub-blocks, four of which make each 400 ms gating block. Block loudness is
+     * binned in 0.1 LU steps from -70 to +30 LUFS, so memory stays constant whatever the
+     * track length, and the two gating passes run over the bins at the end.
+     */
+    static final class Meter {
+        private static final double ABSOLUTE_GATE_LUFS = -70;
+        private static final double RELATIVE_GATE_LU = -10;
+        private static final double BIN_LU = 0.1;
+        private static final int BIN_COUNT = 1000;
+
+        private final long[] histogram = new long[BIN_COUNT];
+        private final double[] subBlocks = new double[4]; // the last four, as a ring
+        private int subBlockCount;
+        private double subBlockEnergy;
+        private int subBlockFrame;
+        private int subBlockFrames;
+        private int channels;
+        private double[] weights;
+        private Biquad[] shelves;
+        private Biquad[] highPasses;
+        private int peak;
+
+        Meter(int sampleRate, int channels) {
+            setFormat(sampleRate, channels);
+        }
+
+        /** The decoder's output format can differ from the container's, e.g. for HE-AAC. */
+        void setFormat(int sampleRate, int channels) {
+            sampleRate = Math.max(1, sampleRate);
+            this.channels = Math.max(1, channels);
+            subBlockFrames = Math.max(1, Math.round(sampleRate / 10f));
+            weights = new double[this.channels];
+            shelves = new Biquad[this.channels];
+            highPasses = new Biquad[this.channels];
+            for (int c = 0; c < this.channels; c++) {
+                // 5.1 in Android's order (L R C LFE Ls Rs): the LFE is skipped, surrounds count more.
+                weights[c] = this.channels == 6 ? (c == 3 ? 0 : c >= 4 ? 1.41 : 1) : 1;
+                shelves[c] = Biquad.highShelf(sampleRate);
+                highPasses[c] = Biquad.highPass(sampleRate);
+            }
+        }
+
+        void add(ShortBuffer pcm) {
+            int frames = pcm.remaining() / channels;
+            for (int f = 0; f < frames; f++) {
+                double energy = 0;
+                for (int c = 0; c < channels; c++) {
+                    int sample = pcm.get();
+                    int magnitude = sample < 0 ? -sample : sample;
+                    if (magnitude > peak) {
+                        peak = magnitude;
+                    }
+                    double filtered = highPasses[c].process(shelves[c].process(sample / 32768.0));
+                    energy += weights[c] * filtered * filtered;
+                }
+                subBlockEnergy += energy;
+                if (++subBlockFrame == subBlockFrames) {
+                    closeSubBlock();
+                }
+            }
+        }
+
+        Loudness finish() {
+            long gated = 0;
+            double sum = 0;
+            for (int bin = 0; bin < BIN_COUNT; bin++) {
+                gated += histogram[bin];
+                sum += histogram[bin] * binEnergy(bin);
+            }
+            float peakLevel = peak / 32768f;
+            if (gated == 0) {
+                return new Loudness(Float.NEGATIVE_INFINITY, peakLevel);
+            }
+            double relativeGate = lufs(sum / gated) + RELATIVE_GATE_LU;
+            int firstBin = Math.max(0, (int) Math.ceil((relativeGate - ABSOLUTE_GATE_LUFS) / BIN_LU - 0.5));
+            gated = 0;
+            sum = 0;
+            for (int bin = firstBin; bin < BIN_COUNT; bin++) {
+                gated += histogram[bin];
+                sum += histogram[bin] * binEnergy(bin);
+            }
+            return new Loudness(gated == 0 ? Float.NEGATIVE_INFINITY : (float) lufs(sum / gated), peakLevel);
+        }
+
+        private void closeSubBlock() {
+            subBlocks[subBlockCount++ & 3] = subBlockEnergy;
+            subBlockEnergy = 0;
+            subBlockFrame = 0;
+            if (subBlockCount < 4) {
+                return;
+            }
+            double meanSquare = (subBlocks[0] + subBlocks[1] + subBlocks[2] + subBlocks[3]) / (4.0 * subBlockFrames);
+            double loudness = lufs(meanSquare);
+            if (loudness > ABSOLUTE_GATE_LUFS) {
+                int bin = (int) ((loudness - ABSOLUTE_GATE_LUFS) / BIN_LU);
+                histogram[Math.min(bin, BIN_COUNT - 1)]++;
+            }
+        }
+
+        private static double lufs(double meanSquare) {
+            return meanSquare <= 0 ? Double.NEGATIVE_INFINITY : -0.691 + 10 * Math.log10(meanSquare);
+        }
+
+        /** Mean square at the centre of the bin. */
+        private static double binEnergy(int bin) {
+            return Math.pow(10, (ABSOLUTE_GATE_LUFS + (bin + 0.5) * BIN_LU + 0.691) / 10);
+        }
+    }
+
+    /** One second-order section of the K-weighting filter, in transposed direct form II. */
+    private static final class Biquad {
+        private final double b0, b1, b2, a1, a2;
+        private double z1, z2;
+
+        private Biquad(double b0, double b1, double b2, double a1, double a2) {
+            this.b0 = b0;
+            this.b1 = b1;
+            this.b2 = b2;
+            this.a1 = a1;
+            this.a2 = a2;
+        }
+
+        /** Stage 1: the head's acoustic effect, +4 dB above ~1.7 kHz. Coefficients for any rate, as in BS.1770. */
+        static Biquad highShelf(int sampleRate) {
+            double k = Math.tan(Math.PI * 1681.974450955533 / sampleRate);
+            double q = 0.7071752369554196;
+            double vh = Math.pow(10, 3.999843853973347 / 20);
+            double vb = Math.pow(vh, 0.4996667741545416);
+            double a0 = 1 + k / q + k * k;
+            return new Biquad((vh + vb * k / q + k * k) / a0, 2 * (k * k - vh) / a0, (vh - vb * k / q + k * k) / a0,
+                    2 * (k * k - 1) / a0, (1 - k / q + k * k) / a0);
+        }
+
+        /** Stage 2: the RLB high-pass at ~38 Hz. */
+        static Biquad highPass(int sampleRate) {
+            double k = Math.tan(Math.PI * 38.13547087602444 / sampleRate);
+            double q = 0.5003270373238773;
+            double a0 = 1 + k / q + k * k;
+            return new Biquad(1, -2, 1, 2 * (k * k - 1) / a0, (1 - k / q + k * k) / a0);
+        }
+
+        double process(double x) {
+            double y = b0 * x + z1;
+            z1 = b1 * x - a1 * y + z2;
+            z2 = b2 * x - a2 * y;
+            return y;
+        }
+    }
+}
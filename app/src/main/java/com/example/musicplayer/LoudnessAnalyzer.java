@@ -0,0 +1,365 @@
+package com.example.musicplayer;
+
+import android.content.Context;
+import android.media.AudioFormat;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.net.Uri;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the loudness of the whole library in the background, for ReplayGain.
+ *
+ * Tracks are decoded as a stream through MediaCodec into a Loudness.Meter, on a small pool
+ * of background threads (one per spare core, at most four). The current and upcoming
+ * tracks jump the queue; the rest of the library is swept a track at a time behind them,
+ * so the queue never holds more than a few jobs. Each result is appended to a LoudnessStore
+ * as soon as it is known, so after the process is killed the sweep picks up where it left
+ * off. Thread-safe.
+ */
+public final class LoudnessAnalyzer {
+
+    public interface Listener {
+        /** Called on a worker thread whenever a track's loudness has been measured. */
+        void onLoudnessMeasured(long songId);
+    }
+
+    public static final int PRIORITY_LIBRARY = 0;
+    public static final int PRIORITY_UPCOMING = 1;
+    public static final int PRIORITY_CURRENT = 2;
+
+    private static final String TAG = "LoudnessAnalyzer";
+    private static final String STORE_FILE = "loudness.log";
+    private static final long CODEC_TIMEOUT_US = 10_000;
+    private static final int MAX_WORKERS = 4;
+
+    private static LoudnessAnalyzer instance;
+
+    private final Context context;
+    private final int workers;
+    private final AtomicInteger jobSequence = new AtomicInteger();
+    private final PriorityBlockingQueue<Runnable> queue = new PriorityBlockingQueue<>();
+    private final ThreadPoolExecutor executor;
+    private volatile LoudnessStore store;
+    private final CountDownLatch storeOpened = new CountDownLatch(1);
+    private volatile Listener listener;
+
+    // Guarded by this.
+    private final HashMap<Long, Job> inFlight = new HashMap<>();
+    // Songs that failed to decode, so the sweep doesn't keep retrying them.
+    private final DecodeFailures failed = new DecodeFailures();
+    private SongStore sweepSongs = SongStore.empty();
+    private int sweepNext;
+    private int sweepers;
+
+    public static synchronized LoudnessAnalyzer getInstance(Context context) {
+        if (instance == null) {
+            instance = new LoudnessAnalyzer(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private LoudnessAnalyzer(Context context) {
+        this.context = context;
+        workers = Math.max(1, Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors() - 1));
+        executor = new ThreadPoolExecutor(workers, workers, 30, TimeUnit.SECONDS, queue, r -> {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                r.run();
+            }, "LoudnessAnalyzer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        // Read the stored results first thing, off the caller's thread; every job waits for them.
+        executor.execute(new Job(-1, null, 0, Integer.MAX_VALUE, jobSequence.getAndIncrement()) {
+            @Override
+            public void run() {
+                openStore();
+            }
+        });
+    }
+
+    /**
+     * The track's loudness if it has been analysed since it was last modified. Never blocks:
+     * returns null while the stored results are still being read.
+     */
+    @Nullable
+    public Loudness getLoudness(Song song) {
+        LoudnessStore results = store;
+        return results == null ? null : results.get(song.getId(), song.getDateModified());
+    }
+
+    /** At most one listener; null removes it. */
+    public void setListener(@Nullable Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Analyses every song of the library that has no result yet, behind any prioritized
+     * tracks. Replaces the previous sweep, e.g. after a library change.
+     */
+    public synchronized void analyzeLibrary(SongStore songs) {
+        sweepSongs = songs;
+        sweepNext = 0;
+        while (sweepers < workers) {
+            sweepers++;
+            executor.execute(new Sweep(jobSequence.getAndIncrement()));
+        }
+    }
+
+    /** Moves the song ahead of the library sweep, e.g. with PRIORITY_CURRENT for the track about to play. */
+    public void prioritize(Song song, int priority) {
+        if (getLoudness(song) != null) {
+            return;
+        }
+        synchronized (this) {
+            if (failed.isBlocked(song.getId(), song.getDateModified(), SystemClock.elapsedRealtime())) {
+                return;
+            }
+            Job job = inFlight.get(song.getId());
+            if (job == null) {
+                job = newJob(song.getId(), song.getUriString(), song.getDateModified(), priority);
+                executor.execute(job);
+            } else if (job.priority < priority && queue.remove(job)) {
+                // Re-insert so the queue sees the new priority; a running job just finishes.
+                job.priority = priority;
+                executor.execute(job);
+            }
+        }
+    }
+
+    private synchronized Job newJob(long id, String uriString, long dateModified, int priority) {
+        Job job = new Job(id, uriString, dateModified, priority, jobSequence.getAndIncrement());
+        inFlight.put(id, job);
+        return job;
+    }
+
+    /** The next library song still to analyse, registered as in flight; null when the sweep is done. */
+    private synchronized Job nextSweepJob() {
+        LoudnessStore results = store;
+        long now = SystemClock.elapsedRealtime();
+        while (sweepNext < sweepSongs.size()) {
+            int position = sweepNext++;
+            long id = sweepSongs.getId(position);
+            long dateModified = sweepSongs.getDateModified(position);
+            if (!inFlight.containsKey(id) && !failed.isBlocked(id, dateModified, now)
+                    && (results == null || results.get(id, dateModified) == null)) {
+                return newJob(id, sweepSongs.get(position).getUriString(), dateModified, PRIORITY_LIBRARY);
+            }
+        }
+        sweepers--;
+        return null;
+    }
+
+    // --- Analysis (worker threads) ---
+
+    private void run(Job job) {
+        Loudness loudness = null;
+        try {
+            awaitStore();
+            LoudnessStore results = store;
+            loudness = results == null ? null : results.get(job.id, job.dateModified);
+            if (loudness == null) {
+                loudness = measure(job.uriString);
+                if (loudness != null && results != null) {
+                    try {
+                        results.put(job.id, job.dateModified, loudness);
+                    } catch (IOException e) {
+                        Log.w(TAG, "Could not save loudness", e);
+                    }
+                    Listener current = listener;
+                    if (current != null) {
+                        current.onLoudnessMeasured(job.id);
+                    }
+                }
+            }
+        } finally {
+            // Also when something above threw; otherwise the song would stay in flight for good.
+            synchronized (this) {
+                inFlight.remove(job.id);
+                if (loudness == null) {
+                    failed.recordFailure(job.id, job.dateModified, SystemClock.elapsedRealtime());
+                } else {
+                    failed.recordSuccess(job.id);
+                }
+            }
+        }
+    }
+
+    private void openStore() {
+        try {
+            store = LoudnessStore.open(new File(context.getFilesDir(), STORE_FILE));
+        } catch (IOException e) {
+            Log.w(TAG, "Loudness results unavailable; keeping them in memory only", e);
+            store = LoudnessStore.inMemory();
+        } finally {
+            storeOpened.countDown();
+        }
+    }
+
+    // So no worker re-analyses tracks whose results are still being read.
+    private void awaitStore() {
+        try {
+            storeOpened.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Nullable
+    private Loudness measure(String uriString) {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            extractor.setDataSource(context, Uri.parse(uriString), null);
+            MediaFormat format = null;
+            String mime = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat candidate = extractor.getTrackFormat(i);
+                String candidateMime = candidate.getString(MediaFormat.KEY_MIME);
+                if (candidateMime != null && candidateMime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    format = candidate;
+                    mime = candidateMime;
+                    break;
+                }
+            }
+            if (format == null) {
+                return null;
+            }
+            Loudness.Meter meter = new Loudness.Meter(format.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+                    format.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
+
+            codec = MediaCodec.createDecoderByType(mime);
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            boolean inputDone = false;
+            while (true) {
+                if (!inputDone) {
+                    int inIndex = codec.dequeueInputBuffer(CODEC_TIMEOUT_US);
+                    if (inIndex >= 0) {
+                        ByteBuffer input = codec.getInputBuffer(inIndex);
+                        int size = extractor.readSampleData(input, 0);
+                        if (size < 0) {
+                            codec.queueInputBuffer(inIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            codec.queueInputBuffer(inIndex, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+
+                int outIndex = codec.dequeueOutputBuffer(info, CODEC_TIMEOUT_US);
+                if (outIndex >= 0) {
+                    if (info.size > 0) {
+                        ByteBuffer output = codec.getOutputBuffer(outIndex);
+                        output.position(info.offset);
+                        output.limit(info.offset + info.size);
+                        meter.add(output.order(ByteOrder.nativeOrder()).asShortBuffer());
+                    }
+                    codec.releaseOutputBuffer(outIndex, false);
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                        break;
+                    }
+                } else if (outIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    MediaFormat outputFormat = codec.getOutputFormat();
+                    if (outputFormat.containsKey(MediaFormat.KEY_PCM_ENCODING)
+                            && outputFormat.getInteger(MediaFormat.KEY_PCM_ENCODING) != AudioFormat.ENCODING_PCM_16BIT) {
+                        return null;
+                    }
+                    meter.setFormat(outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+                            outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
+                }
+            }
+            return meter.finish();
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Error measuring loudness", e);
+            return null;
+        } finally {
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (IllegalStateException ignored) {
+                    // Never started.
+                }
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+
+    // --- Job bookkeeping ---
+
+    /** Queue entry; higher priority first, then first come first served. */
+    private class Job implements Runnable, Comparable<Job> {
+        final long id;
+        final String uriString;
+        final long dateModified;
+        final int sequence;
+        volatile int priority;
+
+        Job(long id, String uriString, long dateModified, int priority, int sequence) {
+            this.id = id;
+            this.uriString = uriString;
+            this.dateModified = dateModified;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            LoudnessAnalyzer.this.run(this);
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return Integer.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * One of the library sweep's workers: analyses the next unanalysed song, then goes to the
+     * back of the queue, so prioritized tracks get in between songs of the sweep.
+     */
+    private final class Sweep extends Job {
+        Sweep(int sequence) {
+            super(-1, null, 0, PRIORITY_LIBRARY, sequence);
+        }
+
+        @Override
+        public void run() {
+            awaitStore();
+            Job job = nextSweepJob();
+            if (job != null) {
+                try {
+                    LoudnessAnalyzer.this.run(job);
+                } finally {
+                    executor.execute(new Sweep(jobSequence.getAndIncrement()));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.musicplayer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Analysis results on disk, as an append-only log of 20-byte records: song id, the
+ * DATE_MODIFIED the track had when analysed, loudness in centi-LU and peak in 1/32767 of
+ * full scale. Every result is appended as soon as it is known, so a killed process loses at
+ * most the tracks that were mid-analysis; a torn last record is cut off on open. Superseded
+ * records are compacted away once they outnumber the live ones. Thread-safe.
+ *
+ * When the log can't be opened at all, an in-memory store keeps results for the life of the
+ * process instead, so nothing is measured twice.
+ */
+final class LoudnessStore {
+
+    private static final int MAGIC = 0x4d504c47; // "MPLG"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int RECORD_BYTES = 20;
+    private static final short SILENT = Short.MIN_VALUE;
+    private static final int MIN_RECORDS_TO_COMPACT = 1000;
+
+    private final File file; // null for an in-memory store
+    private final HashMap<Long, Record> records = new HashMap<>();
+    private int recordsOnDisk;
+    private DataOutputStream out;
+
+    private static final class Record {
+        final long dateModified;
+        final Loudness loudness;
+
+        Record(long dateModified, Loudness loudness) {
+            this.dateModified = dateModified;
+            this.loudness = loudness;
+        }
+    }
+
+    private LoudnessStore(File file) {
+        this.file = file;
+    }
+
+    /** Reads the log, starting a fresh one if it is missing or unreadable. Blocking I/O. */
+    static LoudnessStore open(File file) throws IOException {
+        LoudnessStore store = new LoudnessStore(file);
+        store.read();
+        return store;
+    }
+
+    /** A store that keeps nothing on disk. */
+    static LoudnessStore inMemory() {
+        return new LoudnessStore(null);
+    }
+
+    /** The result for the track as it was when analysed, or null if it was modified since or never analysed. */
+    synchronized Loudness get(long id, long dateModified) {
+        Record record = records.get(id);
+        return record != null && record.dateModified == dateModified ? record.loudness : null;
+    }
+
+    synchronized void put(long id, long dateModified, Loudness loudness) throws IOException {
+        records.put(id, new Record(dateModified, loudness));
+        if (file == null) {
+            return;
+        }
+        // No log open means an earlier rewrite failed before there was one; try again.
+        if (out == null || (recordsOnDisk >= MIN_RECORDS_TO_COMPACT && recordsOnDisk >= 2 * records.size())) {
+            rewrite();
+            return;
+        }
+        writeRecord(out, id, dateModified, loudness);
+        out.flush();
+        recordsOnDisk++;
+    }
+
+    synchronized void close() {
+        try {
+            if (out != null) {
+                out.close();
+            }
+        } catch (IOException ignored) {
+            // Every record was already flushed.
+        }
+        out = null;
+    }
+
+    private void read() throws IOException {
+        long goodLength = HEADER_BYTES;
+        if (file.isFile()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+                    while (true) {
+                        long id = in.readLong();
+                        long dateModified = in.readLong();
+                        short loudness = in.readShort();
+                        short peak = in.readShort();
+                        records.put(id, new Record(dateModified, new Loudness(
+                                loudness == SILENT ? Float.NEGATIVE_INFINITY : loudness / 100f, peak / 32767f)));
+                        recordsOnDisk++;
+                        goodLength += RECORD_BYTES;
+                    }
+                }
+            } catch (EOFException e) {
+                // End of the log, possibly mid-record if the process died while appending.
+            }
+        }
+        if (recordsOnDisk == 0) {
+            rewrite();
+            return;
+        }
+        if (file.length() != goodLength) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(goodLength);
+            }
+        }
+        out = openForAppend();
+    }
+
+    /**
+     * Writes the live records to a new log and swaps it in. Whether or not that works, the
+     * log in place afterwards is reopened for appending.
+     */
+    private void rewrite() throws IOException {
+        close();
+        try {
+            File parent = file.getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Cannot create " + parent);
+            }
+            File tmp = new File(file.getPath() + ".tmp");
+            try (DataOutputStream tmpOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                tmpOut.writeInt(MAGIC);
+                tmpOut.writeInt(VERSION);
+                for (Map.Entry<Long, Record> entry : records.entrySet()) {
+                    Record record = entry.getValue();
+                    writeRecord(tmpOut, entry.getKey(), record.dateModified, record.loudness);
+                }
+            }
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new IOException("Cannot replace " + file);
+            }
+            recordsOnDisk = records.size();
+        } finally {
+            if (file.isFile()) {
+                out = openForAppend();
+            }
+        }
+    }
+
+    private DataOutputStream openForAppend() throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+    }
+
+    private static void writeRecord(DataOutputStream out, long id, long dateModified, Loudness loudness)
+            throws IOException {
+        float lufs = loudness.getIntegratedLufs();
+        out.writeLong(id);
+        out.writeLong(dateModified);
+        out.writeShort(Float.isInfinite(lufs) ? SILENT : (short) Math.max(-32767, Math.min(32767, Math.round(lufs * 100))));
+        out.writeShort((short) Math.min(32767, Math.round(loudness.getPeak() * 32767)));
+    }
+}
@@ -2,18 +2,22 @@ package com.example.musicplayer;
 
 import android.Manifest;
 import android.content.ComponentName;
-import android.content.ContentResolver;
 import android.content.Intent;
 import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.IBinder;
-import android.provider.MediaStore;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.Menu;
+import android.view.View;
+import android.widget.EditText;
+import android.widget.PopupMenu;
+import android.widget.ProgressBar;
+import android.widget.TextView;
 import android.widget.Toast;
-import android.content.ContentUris;
 
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
@@ -21,12 +25,57 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MainActivity extends AppCompatActivity implements SongAdapter.OnSongListener {
 
-    private ArrayList<Song> songList;
+    // Playlist files are typed inconsistently across file managers, so text and binary are offered too.
+    private static final String[] PLAYLIST_MIME_TYPES = {
+            "audio/x-mpegurl", "audio/mpegurl", "application/vnd.apple.mpegurl", "application/x-mpegurl",
+            "audio/x-scpls", "text/plain", "application/octet-stream"
+    };
+    private static final int MENU_IMPORT_PLAYLIST = -1;
+    private static final int MENU_MOST_PLAYED = -2;
+    private static final int MENU_RECENTLY_PLAYED = -3;
+    // Length of the play-history lists; the history keeps every song, these show the top.
+    private static final int HISTORY_LIST_SIZE = 100;
+
+    /** Where a list of song ids to play comes from; read on the playlist executor. */
+    private interface SongIdSource {
+        long[] read() throws IOException;
+    }
+
+    // Grows page by page while loading, then becomes the loader's compact SongStore.
+    private List<Song> songList = SongStore.empty();
     private RecyclerView recyclerView;
+    private SongAdapter songAdapter;
+    private ProgressBar loadingProgressBar;
+    private LibraryLoader libraryLoader;
+    private EditText searchEditText;
+    private final SongSearchIndex searchIndex = new SongSearchIndex();
+    // Index updates happen here; queries on the UI thread read the last published state and never wait for them.
+    private final ExecutorService indexExecutor = Executors.newSingleThreadExecutor();
+    private String searchQuery = "";
+    // Positions in songList, so search hits follow the list's order; null until built for it.
+    private SongIdIndex listOrder;
+    private TextView sortButton;
+    // Sorting runs here, apart from index updates, so a re-sort never waits behind a re-index.
+    private final ExecutorService sortExecutor = Executors.newSingleThreadExecutor();
+    private SongSorter.Key sortKey = SongSorter.Key.TITLE;
+    private boolean sortAscending = true;
+    // Until the user picks a sort, the list stays in MediaStore's title order and is never re-sorted.
+    private boolean sortChosen = false;
+    // Bumped by every sort request and reload; a finished sort that is no longer current is dropped.
+    private int sortGeneration;
+    private boolean libraryLoaded = false;
+    private TextView playlistsButton;
+    private PlaylistImporter playlistImporter;
+    // Playlist index reads and playlist loads; all blocking I/O.
+    private final ExecutorService playlistExecutor = Executors.newSingleThreadExecutor();
     private MusicService musicService;
     private boolean serviceBound = false;
     private Intent playIntent;
@@ -37,7 +86,16 @@ public class MainActivity extends AppCompatActivity implements SongAdapter.OnSon
         setContentView(R.layout.activity_main);
 
         recyclerView = findViewById(R.id.recyclerView);
-        songList = new ArrayList<>();
+        loadingProgressBar = findViewById(R.id.loading_progress);
+        searchEditText = findViewById(R.id.search_edit_text);
+        sortButton = findViewById(R.id.sort_button);
+        playlistsButton = findViewById(R.id.playlists_button);
+        libraryLoader = new LibraryLoader(this);
+        playlistImporter = new PlaylistImporter(this);
+        setupRecyclerView();
+        setupSearch();
+        setupSort();
+        setupPlaylists();
 
         requestPermissions();
     }
@@ -48,7 +106,6 @@ public class MainActivity extends AppCompatActivity implements SongAdapter.OnSon
         public void onServiceConnected(ComponentName name, IBinder service) {
             MusicService.MusicBinder binder = (MusicService.MusicBinder) service;
             musicService = binder.getService();
-            musicService.setSongs(songList);
             serviceBound = true;
         }
 
@@ -71,61 +128,314 @@ public class MainActivity extends AppCompatActivity implements SongAdapter.OnSon
     // --- Music Loading & UI Setup ---
 
     private void loadSongs() {
-        ContentResolver contentResolver = getContentResolver();
-        Uri musicUri = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
+        libraryLoaded = false;
+        sortGeneration++;
+        songList = new ArrayList<>();
+        listOrder = null;
+        songAdapter.submitList(SongStore.empty());
+        indexExecutor.execute(searchIndex::clear);
+        loadingProgressBar.setProgress(0);
+        loadingProgressBar.setVisibility(View.VISIBLE);
 
+        libraryLoader.load(new LibraryLoader.Callback() {
+            @Override
+            public void onSongsLoaded(List<Song> page, int loaded, int total) {
+                songList.addAll(page);
+                if (!isSearching()) {
+                    songAdapter.appendSongs(page);
+                }
+                indexExecutor.execute(() -> {
+                    searchIndex.addAll(page);
+                    runOnUiThread(MainActivity.this::refreshSearchResults);
+                });
+                loadingProgressBar.setMax(total);
+                loadingProgressBar.setProgress(loaded);
+            }
 
-        String[] projection = {
-                MediaStore.Audio.Media._ID,
-                MediaStore.Audio.Media.TITLE,
-                MediaStore.Audio.Media.ARTIST
-        };
+            @Override
+            public void onLoadFinished(List<Song> songs) {
+                loadingProgressBar.setVisibility(View.GONE);
+                libraryLoaded = true;
+                // Same songs in the same order, so this diffs to nothing and only swaps the
+                // page-built list for the compact one.
+                songList = songs;
+                if (sortChosen) {
+                    applySort();
+                } else {
+                    if (!isSearching()) {
+                        songAdapter.submitList(songs);
+                    }
+                    indexListOrder(SongStore.copyOf(songs));
+                }
+                LoudnessAnalyzer.getInstance(MainActivity.this).analyzeLibrary(SongStore.copyOf(songs));
+                // Matches what the pages added; moves the index onto the compact list so the pages can go.
+                indexExecutor.execute(() -> searchIndex.update(songs));
+                if (songs.isEmpty()) {
+                    Toast.makeText(MainActivity.this, "No music files found on device.", Toast.LENGTH_LONG).show();
+                }
+            }
 
-        String selection = MediaStore.Audio.Media.IS_MUSIC + "!= 0";
-        Cursor cursor = contentResolver.query(musicUri, projection, selection, null, MediaStore.Audio.Media.TITLE + " ASC");
+            @Override
+            public void onLibraryChanged(List<Song> songs) {
+                songList = songs;
+                if (sortChosen) {
+                    applySort();
+                } else {
+                    if (!isSearching()) {
+                        // The loader hands over a fresh list, so the adapter may keep it.
+                        songAdapter.submitList(songs);
+                    }
+                    indexListOrder(SongStore.copyOf(songs));
+                }
+                LoudnessAnalyzer.getInstance(MainActivity.this).analyzeLibrary(SongStore.copyOf(songs));
+                indexExecutor.execute(() -> {
+                    searchIndex.update(songs);
+                    runOnUiThread(MainActivity.this::refreshSearchResults);
+                });
+            }
+        });
+    }
 
-        songList.clear();
+    private void setupRecyclerView() {
+        songAdapter = new SongAdapter(this);
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        layoutManager.setItemPrefetchEnabled(true);
+        recyclerView.setLayoutManager(layoutManager);
+        // Rows never change the list's own size, so updates skip a full relayout.
+        recyclerView.setHasFixedSize(true);
+        recyclerView.setItemViewCacheSize(20);
+        recyclerView.setAdapter(songAdapter);
+    }
 
-        if (cursor != null && cursor.moveToFirst()) {
-            int idColumn = cursor.getColumnIndex(MediaStore.Audio.Media._ID);
-            int titleColumn = cursor.getColumnIndex(MediaStore.Audio.Media.TITLE);
-            int artistColumn = cursor.getColumnIndex(MediaStore.Audio.Media.ARTIST);
+    // --- Search ---
 
-            do {
-                long thisId = cursor.getLong(idColumn);
-                String thisTitle = cursor.getString(titleColumn);
-                String thisArtist = cursor.getString(artistColumn);
-                if (thisArtist == null || thisArtist.equals("<unknown>")) {
-                    thisArtist = "Unknown Artist";
+    private void setupSearch() {
+        searchEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                boolean wasSearching = isSearching();
+                searchQuery = s.toString().trim();
+                if (isSearching()) {
+                    refreshSearchResults();
+                } else if (wasSearching) {
+                    songAdapter.submitList(SongStore.copyOf(songList));
                 }
+            }
+        });
+    }
 
-                // Construct the proper content URI for this song.
-                Uri contentUri = ContentUris.withAppendedId(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, thisId);
+    private boolean isSearching() {
+        return !searchQuery.isEmpty();
+    }
 
-                // Add the new Song object with the URI as a string
-                songList.add(new Song(thisId, thisTitle, thisArtist, contentUri.toString()));
+    private void refreshSearchResults() {
+        if (isSearching()) {
+            songAdapter.submitList(searchIndex.search(searchQuery, listOrder));
+        }
+    }
 
-            } while (cursor.moveToNext());
-            cursor.close();
-        } else {
-            Toast.makeText(this, "No music files found on device.", Toast.LENGTH_LONG).show();
+    /** Indexes the positions of a newly shown library list off the main thread, for ordering search hits. */
+    private void indexListOrder(SongStore list) {
+        sortExecutor.execute(() -> {
+            SongIdIndex order = SongIdIndex.build(list);
+            runOnUiThread(() -> {
+                if (songList == list) {
+                    listOrder = order;
+                    refreshSearchResults();
+                }
+            });
+        });
+    }
+
+    // --- Sorting ---
+
+    private void setupSort() {
+        updateSortButton();
+        sortButton.setOnClickListener(v -> {
+            PopupMenu popup = new PopupMenu(this, sortButton);
+            Menu menu = popup.getMenu();
+            menu.add(Menu.NONE, SongSorter.Key.TITLE.ordinal(), 0, "Title");
+            menu.add(Menu.NONE, SongSorter.Key.ARTIST.ordinal(), 1, "Artist");
+            menu.add(Menu.NONE, SongSorter.Key.ALBUM.ordinal(), 2, "Album");
+            menu.add(Menu.NONE, SongSorter.Key.DURATION.ordinal(), 3, "Duration");
+            menu.add(Menu.NONE, SongSorter.Key.DATE_ADDED.ordinal(), 4, "Date added");
+            popup.setOnMenuItemClickListener(item -> {
+                SongSorter.Key key = SongSorter.Key.values()[item.getItemId()];
+                if (sortChosen && key == sortKey) {
+                    sortAscending = !sortAscending;
+                } else {
+                    sortKey = key;
+                    // Newest first is what anyone sorting by date wants.
+                    sortAscending = key != SongSorter.Key.DATE_ADDED;
+                }
+                sortChosen = true;
+                updateSortButton();
+                applySort();
+                return true;
+            });
+            popup.show();
+        });
+    }
+
+    private void updateSortButton() {
+        String label;
+        switch (sortKey) {
+            case ARTIST: label = "Artist"; break;
+            case ALBUM: label = "Album"; break;
+            case DURATION: label = "Duration"; break;
+            case DATE_ADDED: label = "Date added"; break;
+            default: label = "Title"; break;
         }
-        setupRecyclerView();
+        sortButton.setText(label + (sortAscending ? " \u2191" : " \u2193"));
     }
 
-    private void setupRecyclerView() {
-        SongAdapter songAdapter = new SongAdapter(songList, this);
-        recyclerView.setLayoutManager(new LinearLayoutManager(this));
-        recyclerView.setAdapter(songAdapter);
+    /**
+     * Re-sorts the loaded library off the main thread. The loader builds the library's sorter
+     * right after a load, so a sort only compares cached ranks.
+     */
+    private void applySort() {
+        if (!libraryLoaded) {
+            return; // onLoadFinished() sorts once the whole library is in.
+        }
+        final int generation = ++sortGeneration;
+        final LibraryIndex library = MusicRepository.getInstance().getLibrary();
+        final SongSorter.Key key = sortKey;
+        final boolean ascending = sortAscending;
+        sortExecutor.execute(() -> {
+            SongStore sorted = library.getSorter().sort(key, ascending);
+            SongIdIndex order = SongIdIndex.build(sorted);
+            runOnUiThread(() -> {
+                if (generation != sortGeneration) {
+                    return;
+                }
+                songList = sorted;
+                listOrder = order;
+                if (isSearching()) {
+                    refreshSearchResults();
+                } else {
+                    songAdapter.submitList(sorted);
+                }
+            });
+        });
+    }
+
+    // --- Playlists ---
+
+    private final ActivityResultLauncher<String[]> playlistPicker =
+            registerForActivityResult(new ActivityResultContracts.OpenDocument(), uri -> {
+                if (uri != null) {
+                    importPlaylist(uri);
+                }
+            });
+
+    private void setupPlaylists() {
+        PlaylistStore store = PlaylistStore.getInstance(this);
+        playlistsButton.setOnClickListener(v -> playlistExecutor.execute(() -> {
+            // The first call reads the index from disk.
+            List<PlaylistStore.Playlist> playlists = store.getPlaylists();
+            runOnUiThread(() -> showPlaylistMenu(playlists));
+        }));
+    }
+
+    private void showPlaylistMenu(List<PlaylistStore.Playlist> playlists) {
+        if (isFinishing()) {
+            return;
+        }
+        PopupMenu popup = new PopupMenu(this, playlistsButton);
+        Menu menu = popup.getMenu();
+        menu.add(Menu.NONE, MENU_IMPORT_PLAYLIST, 0, "Import playlist\u2026");
+        menu.add(Menu.NONE, MENU_MOST_PLAYED, 1, "Most played");
+        menu.add(Menu.NONE, MENU_RECENTLY_PLAYED, 2, "Recently played");
+        for (int i = 0; i < playlists.size(); i++) {
+            PlaylistStore.Playlist playlist = playlists.get(i);
+            menu.add(Menu.NONE, i, i + 3, playlist.getName() + " (" + playlist.getSize() + ")");
+        }
+        PlayHistory history = PlayHistory.getInstance(this);
+        PlaylistStore store = PlaylistStore.getInstance(this);
+        popup.setOnMenuItemClickListener(item -> {
+            switch (item.getItemId()) {
+                case MENU_IMPORT_PLAYLIST:
+                    playlistPicker.launch(PLAYLIST_MIME_TYPES);
+                    break;
+                case MENU_MOST_PLAYED:
+                    playSongIds(() -> history.getMostPlayed(HISTORY_LIST_SIZE));
+                    break;
+                case MENU_RECENTLY_PLAYED:
+                    playSongIds(() -> history.getRecentlyPlayed(HISTORY_LIST_SIZE));
+                    break;
+                default:
+                    long playlistId = playlists.get(item.getItemId()).getId();
+                    playSongIds(() -> store.readIds(playlistId));
+                    break;
+            }
+            return true;
+        });
+        popup.show();
+    }
+
+    private void importPlaylist(Uri uri) {
+        Toast.makeText(this, "Importing playlist\u2026", Toast.LENGTH_SHORT).show();
+        playlistImporter.importPlaylist(uri, new PlaylistImporter.Callback() {
+            @Override
+            public void onImported(PlaylistStore.Playlist playlist, int missing) {
+                String message = "Imported \"" + playlist.getName() + "\" with " + playlist.getSize() + " songs";
+                if (missing > 0) {
+                    message += " (" + missing + " not found)";
+                }
+                Toast.makeText(MainActivity.this, message, Toast.LENGTH_LONG).show();
+            }
+
+            @Override
+            public void onImportFailed(String message) {
+                Toast.makeText(MainActivity.this, message, Toast.LENGTH_LONG).show();
+            }
+        });
+    }
+
+    /** Reads the ids and gathers their songs from the library off the main thread, then plays them. */
+    private void playSongIds(SongIdSource source) {
+        if (!libraryLoaded) {
+            Toast.makeText(this, "Still loading the library.", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        final LibraryIndex library = MusicRepository.getInstance().getLibrary();
+        playlistExecutor.execute(() -> {
+            SongStore songs;
+            try {
+                songs = library.select(source.read());
+            } catch (IOException e) {
+                runOnUiThread(() -> Toast.makeText(this, "Could not read the playlist.", Toast.LENGTH_SHORT).show());
+                return;
+            }
+            runOnUiThread(() -> {
+                if (songs.isEmpty()) {
+                    Toast.makeText(this, "None of these songs are in the library.", Toast.LENGTH_SHORT).show();
+                } else {
+                    playQueue(songs, 0);
+                }
+            });
+        });
     }
 
     @Override
     public void onSongClick(int position) {
+        // Queue exactly what is on screen, so a search result plays within its results.
+        playQueue(songAdapter.getSongs(), position);
+    }
+
+    private void playQueue(List<Song> songs, int position) {
         if (serviceBound) {
-            musicService.playSong(position);
+            long queueToken = MusicRepository.getInstance().setQueue(songs);
+            musicService.playQueue(queueToken, position);
             Intent intent = new Intent(this, PlayerActivity.class);
-            intent.putExtra("songs", songList);
-            intent.putExtra("pos", position);
+            intent.putExtra(MusicRepository.EXTRA_QUEUE_TOKEN, queueToken);
+            intent.putExtra(MusicRepository.EXTRA_POSITION, position);
             startActivity(intent);
         }
     }
@@ -154,6 +464,11 @@ public class MainActivity extends AppCompatActivity implements SongAdapter.OnSon
 
     @Override
     protected void onDestroy() {
+        libraryLoader.shutdown();
+        indexExecutor.shutdownNow();
+        sortExecutor.shutdownNow();
+        playlistExecutor.shutdownNow();
+        playlistImporter.shutdown();
         if (serviceBound) {
             unbindService(musicConnection);
         }
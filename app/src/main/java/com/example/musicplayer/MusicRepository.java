@@ -0,0 +1,82 @@
+package com.example.musicplayer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Process-wide holder for the loaded library and the play queue, shared by MusicService and the activities so song
+ * lists never travel through Intents or Binder transactions. Intents carry the queue token
+ * and a position instead.
+ */
+public final class MusicRepository {
+
+    public static final String EXTRA_QUEUE_TOKEN = "queue_token";
+    public static final String EXTRA_POSITION = "pos";
+
+    /** Told about delta syncs, so holders of song lists can patch them instead of reloading. */
+    public interface LibraryListener {
+        /**
+         * Called on the main thread after library is published. removedIds are songs gone from
+         * MediaStore; changed holds the songs that were added or whose metadata changed.
+         */
+        void onLibraryChanged(LibraryIndex library, long[] removedIds, List<Song> changed);
+    }
+
+    private static final MusicRepository INSTANCE = new MusicRepository();
+
+    private List<Song> queue = Collections.emptyList();
+    private long queueToken;
+    private LibraryIndex library = LibraryIndex.empty();
+    // Main thread only.
+    private final List<LibraryListener> libraryListeners = new ArrayList<>();
+
+    private MusicRepository() {}
+
+    public static MusicRepository getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Replaces the queue with a compact, immutable copy of the given songs and returns the token
+     * that identifies it. Queuing the library itself shares its store instead of copying it.
+     */
+    public synchronized long setQueue(List<Song> songs) {
+        queue = SongStore.copyOf(songs);
+        return ++queueToken;
+    }
+
+    /** Returns the queue the token was issued for, or null if it has been replaced since. */
+    public synchronized List<Song> getQueue(long token) {
+        return token == queueToken ? queue : null;
+    }
+
+    public synchronized long getQueueToken() {
+        return queueToken;
+    }
+
+    public synchronized void setLibrary(LibraryIndex library) {
+        this.library = library;
+    }
+
+    /** Publishes the library a delta sync produced and tells the listeners what changed. Main thread only. */
+    public void publishLibraryChange(LibraryIndex library, long[] removedIds, List<Song> changed) {
+        setLibrary(library);
+        for (LibraryListener listener : new ArrayList<>(libraryListeners)) {
+            listener.onLibraryChanged(library, removedIds, changed);
+        }
+    }
+
+    public void addLibraryListener(LibraryListener listener) {
+        libraryListeners.add(listener);
+    }
+
+    public void removeLibraryListener(LibraryListener listener) {
+        libraryListeners.remove(listener);
+    }
+
+    /** The latest loaded library with its album and artist indexes; empty until a load finishes. */
+    public synchronized LibraryIndex getLibrary() {
+        return library;
+    }
+}
@@ -6,27 +6,156 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Intent;
+import android.graphics.Bitmap;
+import android.media.AudioManager;
 import android.media.MediaPlayer;
+import android.media.MediaTimestamp;
+import android.media.audiofx.LoudnessEnhancer;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
 import android.os.PowerManager;
+import android.os.Process;
+import android.os.SystemClock;
+import android.text.TextUtils;
 import android.util.Log;
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class MusicService extends Service implements MediaPlayer.OnPreparedListener, MediaPlayer.OnErrorListener, MediaPlayer.OnCompletionListener {
+/**
+ * Foreground playback service. The MediaPlayers are created and driven exclusively on a
+ * dedicated playback thread, so their callbacks land there too; the public methods below
+ * only post commands to it and read the last published PlaybackState, and never block on
+ * media I/O.
+ */
+public class MusicService extends Service implements MediaPlayer.OnPreparedListener, MediaPlayer.OnErrorListener,
+        MediaPlayer.OnCompletionListener, MediaPlayer.OnInfoListener, MediaPlayer.OnSeekCompleteListener {
 
+    public interface PlaybackListener {
+        /** Called on the main thread with the state right after the event. */
+        void onPlaybackEvent(PlaybackState.Event event, PlaybackState state);
+    }
+
+    // Skips closer together than this are treated as one burst: only the track the burst
+    // ends on gets prepared.
+    private static final long SKIP_SETTLE_MS = 250;
+    // How long playback may stay paused before both players are released to free their
+    // decoders; play then re-prepares the track and resumes at the exact position.
+    private static final long IDLE_RELEASE_DELAY_MS = 5 * 60 * 1000;
+    // ReplayGain, always on: the session is boosted by this much and each player turned down
+    // by headroom minus its track's gain, so gains up to +6 dB apply and still switch exactly
+    // at gapless transitions.
+    private static final float REPLAY_GAIN_HEADROOM_DB = 6f;
+    // How often the position is saved while playing, bounding how far back a killed process resumes.
+    private static final long SESSION_SAVE_INTERVAL_MS = 10_000;
+
+    private HandlerThread playerThread;
+    private Handler playerHandler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // --- Playback thread state ---
     private MediaPlayer mediaPlayer;
-    private ArrayList<Song> songs;
-    private int currentSongPosition;
+    // Prepared with the following queue item and chained through setNextMediaPlayer,
+    // so the framework starts it the moment the current track ends.
+    private MediaPlayer nextPlayer;
+    private int nextEntry = PlayQueue.NO_ENTRY;
+    private boolean nextPlayerArmed;
+    private final PlayQueue queue = new PlayQueue();
+    private int playerState = PlaybackState.STATE_IDLE;
+    private boolean playWhenReady = true;
+    private long lastSkipAt;
+    private boolean seekInFlight;
+    // Where a released player left off; while not prepared, this is also the published position.
+    private int resumePositionMs;
+    private int resumeDurationMs;
+    private boolean resumeSeekPending;
+    private LoudnessEnhancer loudnessEnhancer;
+    // The entry whose play was last counted in the history and hasn't ended yet, and its song.
+    private int historyEntry = PlayQueue.NO_ENTRY;
+    private long historySongId;
+    // Queue version last handed to the session store, and whether the restored session was playing.
+    private int savedQueueVersion = -1;
+    private boolean restoredPlaying;
+    // Set from restoring a session until playback first starts: the player is prepared
+    // quietly, without a notification for a session the user hasn't resumed.
+    private boolean restoredIdle;
+    private boolean restartedBySystem;
+
+    // --- Shared with the main thread ---
+    private volatile PlaybackState currentState =
+            new PlaybackState(PlaybackState.STATE_IDLE, null, 0, 0, 0, 0);
+    private volatile long queueToken;
+    private int audioSessionId;
+    // Latest drag position not yet handed to the player, or -1.
+    private final AtomicInteger pendingScrubMs = new AtomicInteger(-1);
+    private LoudnessAnalyzer loudnessAnalyzer;
+    private PlayHistory playHistory;
+    private SessionStore sessionStore;
+
+    // --- Main thread state ---
+    private final List<PlaybackListener> playbackListeners = new ArrayList<>();
     private final IBinder musicBind = new MusicBinder();
 
+    // Inter-track gap: time between a track completing and the following one starting.
+    private long completedAt;
+    private long startedAsNextAt;
+    private volatile long lastTrackGapMs = -1;
+    private volatile long totalTrackGapMs;
+    private volatile int trackGapCount;
+
+    // --- Start-latency instrumentation ---
+    // Budget for the p95 of play request to first audio; dumps warn when it is exceeded.
+    private static final long START_BUDGET_P95_MS = 400;
+    private static final int START_BUDGET_MIN_SAMPLES = 20;
+    private static final long FIRST_AUDIO_POLL_MS = 20;
+    private static final long FIRST_AUDIO_TIMEOUT_NS = 2_000_000_000L;
+    private static final String METRICS_FILE = "playback_metrics.json";
+    private static final long METRICS_DUMP_INTERVAL_MS = 60_000;
+    private final PlaybackMetrics metrics = new PlaybackMetrics();
+    // Playback thread: elapsedRealtimeNanos() of the play request being measured (0 if none),
+    // and of the stages it has reached so far.
+    private long startRequestedAt;
+    private long prepareStartedAt;
+    private long audioStartedAt;
+    private int audioStartPosition;
+    private long metricsDumpedAt; // elapsedRealtime() of the last dump, 0 if none
+
     private static final String CHANNEL_ID = "MUSIC_PLAYER_CHANNEL";
     private static final int NOTIFICATION_ID = 1;
+    private static final long NOTIFICATION_THROTTLE_MS = 500;
+    private static final int NOTIFICATION_ART_DP = 64;
+
+    // --- Notification state (main thread) ---
+    private NotificationManager notificationManager;
+    private NotificationCompat.Builder notificationBuilder;
+    private boolean foregroundStarted;
+    private boolean notificationUpdatePending;
+    private long lastNotificationAt;
+    private long contentIntentToken = -1;
+    private String shownTitle;
+    private String shownArtist;
+    private boolean shownPlaying;
+    private Bitmap shownArt;
+    private long notificationArtSongId = -1;
+    private Bitmap notificationArt;
+    private AlbumArtLoader.Ticket notificationArtTicket;
 
     public class MusicBinder extends Binder {
         MusicService getService() {
@@ -37,118 +166,915 @@ public class MusicService extends Service implements MediaPlayer.OnPreparedListe
     @Override
     public void onCreate() {
         super.onCreate();
-        mediaPlayer = new MediaPlayer();
-        initMusicPlayer();
+        // One session for every player we create, so effects like the visualizer survive track changes.
+        AudioManager audioManager = (AudioManager) getSystemService(AUDIO_SERVICE);
+        audioSessionId = audioManager.generateAudioSessionId();
+
+        createNotificationChannel();
+        notificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+        notificationBuilder = new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_music_note)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setShowWhen(false);
+
+        playerThread = new HandlerThread("PlaybackThread", Process.THREAD_PRIORITY_AUDIO);
+        playerThread.start();
+        playerHandler = new Handler(playerThread.getLooper());
+        loudnessAnalyzer = LoudnessAnalyzer.getInstance(this);
+        playHistory = PlayHistory.getInstance(this);
+        loudnessAnalyzer.setListener(songId -> playerHandler.post(() -> onLoudnessMeasured(songId)));
+        playerHandler.post(() -> {
+            mediaPlayer = createPlayer();
+            createLoudnessEnhancer();
+        });
+        // Read in the background and taken up on the playback thread, without waiting for an activity.
+        sessionStore = SessionStore.getInstance(this);
+        sessionStore.restore(session -> playerHandler.post(() -> restoreSession(session)));
+        MusicRepository.getInstance().addLibraryListener(libraryListener);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent == null) {
+            // Restarted by the system after the process was killed: carry on if it was playing.
+            playerHandler.post(() -> {
+                restartedBySystem = true;
+                resumeRestoredPlayback();
+            });
+        }
+        return START_STICKY;
+    }
+
+    // Must run on the playback thread: MediaPlayer delivers its callbacks to the creating thread's looper.
+    private MediaPlayer createPlayer() {
+        MediaPlayer player = new MediaPlayer();
+        if (audioSessionId != AudioManager.ERROR) {
+            player.setAudioSessionId(audioSessionId);
+        }
+        player.setWakeMode(getApplicationContext(), PowerManager.PARTIAL_WAKE_LOCK);
+        player.setOnPreparedListener(this);
+        player.setOnCompletionListener(this);
+        player.setOnErrorListener(this);
+        player.setOnInfoListener(this);
+        player.setOnSeekCompleteListener(this);
+        return player;
+    }
+
+    // --- Playback Commands (any thread) ---
+
+    /** Switches to the queue published in MusicRepository under the given token and plays from songIndex. */
+    public void playQueue(long token, int songIndex) {
+        List<Song> songs = MusicRepository.getInstance().getQueue(token);
+        if (songs == null || songIndex < 0 || songIndex >= songs.size()) {
+            return;
+        }
+        queueToken = token;
+        long requestedAt = SystemClock.elapsedRealtimeNanos();
+        playerHandler.post(() -> {
+            beginStartMeasurement(requestedAt);
+            // Entry ids start over with the new queue.
+            historyEntry = PlayQueue.NO_ENTRY;
+            restoredPlaying = false;
+            restoredIdle = false;
+            queue.setSongs(songs, songIndex);
+            completedAt = 0;
+            playWhenReady = true;
+            playCurrent();
+        });
+    }
+
+    public void go() {
+        long requestedAt = SystemClock.elapsedRealtimeNanos();
+        playerHandler.post(() -> {
+            playWhenReady = true;
+            if (playerState == PlaybackState.STATE_RELEASED) {
+                beginStartMeasurement(requestedAt);
+                resumeReleasedPlayer();
+            } else if (playerState == PlaybackState.STATE_PAUSED) {
+                mediaPlayer.start();
+                restoredIdle = false;
+                recordPlayStarted(); // Prepared paused, this is its first start.
+                playerState = PlaybackState.STATE_PLAYING;
+                publish(PlaybackState.Event.PLAY_STATE_CHANGED);
+                postNotification();
+            }
+        });
+    }
+
+    public void pause() {
+        playerHandler.post(() -> {
+            playWhenReady = false;
+            restoredPlaying = false;
+            if (playerState == PlaybackState.STATE_PLAYING) {
+                mediaPlayer.pause();
+                playerState = PlaybackState.STATE_PAUSED;
+                scheduleIdleRelease();
+                publish(PlaybackState.Event.PLAY_STATE_CHANGED);
+                postNotification();
+                dumpMetricsIfDue();
+            }
+        });
+    }
+
+    public void playNext() {
+        long requestedAt = SystemClock.elapsedRealtimeNanos();
+        playerHandler.post(() -> skip(1, requestedAt));
+    }
+
+    public void playPrev() {
+        long requestedAt = SystemClock.elapsedRealtimeNanos();
+        playerHandler.post(() -> skip(-1, requestedAt));
+    }
+
+    // --- Queue Editing (any thread) ---
+    // Positions are in queue list order. Edits never interrupt the current track; the
+    // prepared next track is re-armed only if the edit changed what follows.
+
+    public void setShuffled(boolean shuffled) {
+        playerHandler.post(() -> {
+            queue.setShuffled(shuffled);
+            onQueueChanged();
+        });
+    }
+
+    /** One of PlayQueue.REPEAT_OFF, REPEAT_ALL or REPEAT_ONE. */
+    public void setRepeatMode(int repeatMode) {
+        playerHandler.post(() -> {
+            queue.setRepeatMode(repeatMode);
+            onQueueChanged();
+        });
+    }
+
+    public void enqueue(Song song) {
+        playerHandler.post(() -> {
+            queue.enqueue(song);
+            onQueueChanged();
+        });
+    }
+
+    /** Queues the song to play right after the current one. */
+    public void playAfterCurrent(Song song) {
+        playerHandler.post(() -> {
+            queue.playNext(song);
+            onQueueChanged();
+        });
     }
 
-    private void initMusicPlayer() {
-        mediaPlayer.setWakeMode(getApplicationContext(), PowerManager.PARTIAL_WAKE_LOCK);
-        mediaPlayer.setOnPreparedListener(this);
-        mediaPlayer.setOnCompletionListener(this);
-        mediaPlayer.setOnErrorListener(this);
+    public void removeFromQueue(int position) {
+        playerHandler.post(() -> {
+            if (position >= 0 && position < queue.size()) {
+                queue.remove(position);
+                onQueueChanged();
+            }
+        });
+    }
+
+    public void moveInQueue(int from, int to) {
+        playerHandler.post(() -> {
+            if (from >= 0 && from < queue.size() && to >= 0 && to < queue.size()) {
+                queue.move(from, to);
+                onQueueChanged();
+            }
+        });
+    }
+
+    /** Precise seek, e.g. when the user lets go of the seekbar. */
+    public void seekTo(int position) {
+        pendingScrubMs.set(-1);
+        playerHandler.removeCallbacks(applyScrub);
+        playerHandler.post(() -> {
+            if (playerState == PlaybackState.STATE_RELEASED) {
+                // Nothing to seek yet; just move where playback will resume.
+                resumePositionMs = position;
+                publish(PlaybackState.Event.SEEK_COMPLETED);
+                return;
+            }
+            if (!isPrepared()) return;
+            seekInFlight = true;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                mediaPlayer.seekTo(position, MediaPlayer.SEEK_CLOSEST);
+            } else {
+                mediaPlayer.seekTo(position);
+            }
+        });
     }
 
-    public void setSongs(ArrayList<Song> songs) {
-        this.songs = songs;
+    /**
+     * Fast seek to the nearest sync frame while the user is dragging. Calls coalesce: only the
+     * latest position is applied, and never while a previous seek is still in flight.
+     */
+    public void scrubTo(int position) {
+        pendingScrubMs.set(position);
+        playerHandler.removeCallbacks(applyScrub);
+        playerHandler.post(applyScrub);
     }
 
-    public void playSong(int songIndex) {
+    // --- Playback Thread ---
+
+    private final Runnable applyScrub = () -> {
+        if (seekInFlight || !isPrepared()) {
+            return; // onSeekComplete picks up whatever is pending.
+        }
+        int position = pendingScrubMs.getAndSet(-1);
+        if (position < 0) {
+            return;
+        }
+        seekInFlight = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            mediaPlayer.seekTo(position, MediaPlayer.SEEK_CLOSEST_SYNC);
+        } else {
+            mediaPlayer.seekTo(position);
+        }
+    };
+
+    private final Runnable prepareCurrent = this::playCurrent;
+
+    private boolean isPrepared() {
+        return playerState == PlaybackState.STATE_PLAYING || playerState == PlaybackState.STATE_PAUSED;
+    }
+
+    private void skip(int delta, long requestedAt) {
+        if (queue.isEmpty()) {
+            return;
+        }
+        int target = delta > 0 ? queue.next(false) : queue.previous();
+        if (target == PlayQueue.NO_ENTRY) {
+            if (delta < 0 && isPrepared()) {
+                // Nothing to go back to: restart the current track instead.
+                seekInFlight = true;
+                mediaPlayer.seekTo(0);
+            }
+            return;
+        }
+        recordPlayEnded(PlayStats.EVENT_SKIPPED);
+
+        beginStartMeasurement(requestedAt);
+        long now = SystemClock.uptimeMillis();
+        boolean inBurst = now - lastSkipAt < SKIP_SETTLE_MS;
+        lastSkipAt = now;
+        playWhenReady = true;
+        playerHandler.removeCallbacks(prepareCurrent);
+
+        if (!inBurst) {
+            playCurrent();
+            return;
+        }
+        // Still skipping: show the new track right away, but only prepare it once the taps settle.
+        cancelNextPlayer();
+        if (mediaPlayer != null) {
+            mediaPlayer.reset();
+        }
+        resumePositionMs = 0;
+        resumeDurationMs = 0;
+        playerState = PlaybackState.STATE_PREPARING;
+        publish(PlaybackState.Event.TRACK_CHANGED);
+        postNotification();
+        playerHandler.postDelayed(prepareCurrent, SKIP_SETTLE_MS);
+    }
+
+    /** Plays the queue's current entry. */
+    private void playCurrent() {
         if (mediaPlayer == null) {
-            initMusicPlayer();
+            mediaPlayer = createPlayer();
         }
+        seekInFlight = false;
+        resumePositionMs = 0;
+        resumeDurationMs = 0;
+        resumeSeekPending = false;
+        if (nextPlayerArmed && queue.getCurrentEntry() == nextEntry) {
+            // The requested track is already prepared, switch to it directly.
+            mediaPlayer.setNextMediaPlayer(null);
+            mediaPlayer.reset();
+            promoteNextPlayer();
+            startPlayer();
+            playerState = PlaybackState.STATE_PLAYING;
+            publish(PlaybackState.Event.TRACK_CHANGED);
+            postNotification();
+            prepareNextPlayer();
+            return;
+        }
+        cancelNextPlayer();
         mediaPlayer.reset();
-        currentSongPosition = songIndex;
-        Song songToPlay = songs.get(currentSongPosition);
+        Song songToPlay = queue.getCurrentSong();
+        loudnessAnalyzer.prioritize(songToPlay, LoudnessAnalyzer.PRIORITY_CURRENT);
 
         // ** THIS IS THE CORRECTED LINE **
         Uri songUri = Uri.parse(songToPlay.getUriString());
 
         try {
+            long setDataSourceAt = SystemClock.elapsedRealtimeNanos();
             mediaPlayer.setDataSource(getApplicationContext(), songUri);
+            recordStage(PlaybackMetrics.Stage.SET_DATA_SOURCE, setDataSourceAt);
+            applyReplayGain(mediaPlayer, songToPlay);
+            prepareStartedAt = SystemClock.elapsedRealtimeNanos();
             mediaPlayer.prepareAsync();
-        } catch (IOException e) {
+            playerState = PlaybackState.STATE_PREPARING;
+        } catch (IOException | IllegalArgumentException | SecurityException e) {
+            // Also what a file deleted behind MediaStore's back looks like.
             Log.e("MUSIC SERVICE", "Error setting data source", e);
+            playerState = PlaybackState.STATE_ERROR;
+            startRequestedAt = 0;
         }
+        publish(PlaybackState.Event.TRACK_CHANGED);
+        postNotification();
     }
 
     @Override
     public void onPrepared(MediaPlayer mp) {
-        mp.start();
-        showNotification();
+        if (mp == nextPlayer) {
+            if (nextEntry != PlayQueue.NO_ENTRY) {
+                mediaPlayer.setNextMediaPlayer(nextPlayer);
+                nextPlayerArmed = true;
+            }
+            return;
+        }
+        recordStage(PlaybackMetrics.Stage.PREPARE, prepareStartedAt);
+        prepareStartedAt = 0;
+        if (resumePositionMs > 0) {
+            // Back from an idle release: land on the exact position before making any sound.
+            resumeSeekPending = true;
+            seekInFlight = true;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                mediaPlayer.seekTo(resumePositionMs, MediaPlayer.SEEK_CLOSEST);
+            } else {
+                mediaPlayer.seekTo(resumePositionMs);
+            }
+            return;
+        }
+        startPrepared();
+    }
+
+    /** Starts (or holds, if paused meanwhile) the freshly prepared current player. */
+    private void startPrepared() {
+        if (playWhenReady) {
+            startPlayer();
+            playerState = PlaybackState.STATE_PLAYING;
+        } else {
+            playerState = PlaybackState.STATE_PAUSED;
+            startRequestedAt = 0; // Prepared paused: there is no start to measure.
+            scheduleIdleRelease();
+        }
+        if (completedAt != 0) {
+            recordTrackGap(SystemClock.elapsedRealtime() - completedAt);
+        }
+        publish(PlaybackState.Event.PREPARED);
+        postNotification();
+        prepareNextPlayer();
     }
 
     @Override
     public void onCompletion(MediaPlayer mp) {
-        if (songs != null && !songs.isEmpty()) {
-            playNext();
+        if (mp != mediaPlayer) {
+            return;
+        }
+        completedAt = SystemClock.elapsedRealtime();
+        recordPlayEnded(PlayStats.EVENT_COMPLETED);
+        if (nextPlayerArmed) {
+            // The framework has already started nextPlayer; adopt it as the current player.
+            queue.next(true);
+            mediaPlayer.reset();
+            promoteNextPlayer();
+            recordPlayStarted();
+            if (startedAsNextAt != 0) {
+                recordTrackGap(startedAsNextAt - completedAt);
+            }
+            publish(PlaybackState.Event.TRACK_CHANGED);
+            postNotification();
+            prepareNextPlayer();
+        } else if (queue.next(true) != PlayQueue.NO_ENTRY) {
+            beginStartMeasurement(SystemClock.elapsedRealtimeNanos());
+            playCurrent();
+        } else {
+            // End of the queue with repeat off: stay on the finished track, paused.
+            playWhenReady = false;
+            playerState = PlaybackState.STATE_PAUSED;
+            scheduleIdleRelease();
+            publish(PlaybackState.Event.PLAY_STATE_CHANGED);
+            postNotification();
+            dumpMetricsIfDue();
         }
     }
 
+    @Override
+    public boolean onInfo(MediaPlayer mp, int what, int extra) {
+        if (what == MediaPlayer.MEDIA_INFO_STARTED_AS_NEXT) {
+            startedAsNextAt = SystemClock.elapsedRealtime();
+            if (completedAt != 0) {
+                recordTrackGap(startedAsNextAt - completedAt);
+            }
+        }
+        return false;
+    }
+
     @Override
     public boolean onError(MediaPlayer mp, int what, int extra) {
-        Log.e("MUSIC SERVICE", "MediaPlayer error: " + what);
+        metrics.recordError(what, extra);
+        if (mp == nextPlayer) {
+            Log.e("MUSIC SERVICE", "Next MediaPlayer error: " + what + "/" + extra);
+            cancelNextPlayer();
+            return true;
+        }
+        Log.e("MUSIC SERVICE", "MediaPlayer error: " + what + "/" + extra);
+        startRequestedAt = 0;
+        playerHandler.removeCallbacks(checkFirstAudio);
         mp.reset();
+        seekInFlight = false;
+        resumeSeekPending = false;
+        playerState = PlaybackState.STATE_ERROR;
+        publish(PlaybackState.Event.ERROR);
         return true;
     }
 
-    // --- Playback Controls ---
-    public void go() {
+    @Override
+    public void onSeekComplete(MediaPlayer mp) {
+        if (mp != mediaPlayer) {
+            return;
+        }
+        seekInFlight = false;
+        if (resumeSeekPending) {
+            resumeSeekPending = false;
+            resumePositionMs = 0;
+            resumeDurationMs = 0;
+            startPrepared();
+        } else if (pendingScrubMs.get() >= 0) {
+            applyScrub.run();
+        } else {
+            publish(PlaybackState.Event.SEEK_COMPLETED);
+        }
+    }
+
+    // --- Idle Release ---
+    // A long pause gives up both MediaPlayers, whose decoders and buffers are the service's
+    // largest allocations. STATE_RELEASED keeps the track and position; play re-prepares it.
+
+    private final Runnable releaseIdlePlayer = this::releaseIdlePlayer;
+
+    private void scheduleIdleRelease() {
+        playerHandler.removeCallbacks(releaseIdlePlayer);
+        playerHandler.postDelayed(releaseIdlePlayer, IDLE_RELEASE_DELAY_MS);
+    }
+
+    /** Releases the players if playback is (still) paused; a no-op in any other state. */
+    private void releaseIdlePlayer() {
+        if (playerState != PlaybackState.STATE_PAUSED || seekInFlight) {
+            return;
+        }
+        resumePositionMs = mediaPlayer.getCurrentPosition();
+        resumeDurationMs = mediaPlayer.getDuration();
+        releaseNextPlayer();
+        mediaPlayer.release();
+        mediaPlayer = null;
+        playerState = PlaybackState.STATE_RELEASED;
+        Log.i("MUSIC SERVICE", "Released idle player at " + resumePositionMs + " ms");
+        publish(PlaybackState.Event.PLAY_STATE_CHANGED);
+        dumpMetricsIfDue();
+    }
+
+    private void resumeReleasedPlayer() {
+        prepareReleasedPlayer();
+        publish(PlaybackState.Event.PLAY_STATE_CHANGED);
+        postNotification();
+    }
+
+    /** Prepares the current track to continue at resumePositionMs; stages only count while a start is measured. */
+    private void prepareReleasedPlayer() {
+        if (mediaPlayer == null) {
+            mediaPlayer = createPlayer();
+        }
+        completedAt = 0;
+        try {
+            long setDataSourceAt = SystemClock.elapsedRealtimeNanos();
+            mediaPlayer.setDataSource(getApplicationContext(), Uri.parse(queue.getCurrentSong().getUriString()));
+            recordStage(PlaybackMetrics.Stage.SET_DATA_SOURCE, setDataSourceAt);
+            applyReplayGain(mediaPlayer, queue.getCurrentSong());
+            prepareStartedAt = SystemClock.elapsedRealtimeNanos();
+            mediaPlayer.prepareAsync();
+            playerState = PlaybackState.STATE_PREPARING;
+        } catch (IOException | IllegalArgumentException | SecurityException e) {
+            // Also what a file deleted behind MediaStore's back looks like.
+            Log.e("MUSIC SERVICE", "Error setting data source", e);
+            playerState = PlaybackState.STATE_ERROR;
+            startRequestedAt = 0;
+        }
+    }
+
+    // --- Session (playback thread) ---
+    // The session is saved on every published change and every SESSION_SAVE_INTERVAL_MS while
+    // playing; SessionStore coalesces the updates and writes them in the background.
+
+    private final Runnable saveSessionPosition = this::saveSession;
+
+    private void saveSession() {
+        playerHandler.removeCallbacks(saveSessionPosition);
+        if (queue.getCurrentSong() == null) {
+            return; // Nothing to resume; also keeps a not yet restored session from being overwritten.
+        }
+        if (queue.getVersion() != savedQueueVersion) {
+            savedQueueVersion = queue.getVersion();
+            sessionStore.saveQueue(queue.songs());
+        }
+        boolean playing = playerState == PlaybackState.STATE_PLAYING
+                || (playerState == PlaybackState.STATE_PREPARING && playWhenReady);
+        int positionMs = isPrepared() ? mediaPlayer.getCurrentPosition() : resumePositionMs;
+        sessionStore.saveState(queue.getCurrentPosition(), positionMs, playing, queue.isShuffled(), queue.getRepeatMode());
+        if (playerState == PlaybackState.STATE_PLAYING) {
+            playerHandler.postDelayed(saveSessionPosition, SESSION_SAVE_INTERVAL_MS);
+        }
+    }
+
+    /**
+     * Takes up the saved session, unless a queue was started meanwhile: the current track is
+     * prepared and held at the saved position, so play starts it without a prepare. Nothing
+     * is measured or shown in a notification until playback actually starts.
+     */
+    private void restoreSession(@Nullable SessionStore.Session session) {
+        if (session == null || !queue.isEmpty()) {
+            return;
+        }
+        queue.setSongs(session.getSongs(), session.getIndex());
+        queue.setRepeatMode(session.getRepeatMode());
+        queue.setShuffled(session.isShuffled());
+        savedQueueVersion = queue.getVersion(); // Just read from disk.
+        restoredPlaying = session.isPlaying();
+        Log.i("MUSIC SERVICE", "Restored a queue of " + queue.size() + " at " + session.getPositionMs() + " ms");
+        playWhenReady = false;
+        resumePositionMs = session.getPositionMs();
+        resumeDurationMs = (int) queue.getCurrentSong().getDurationMs();
+        startRequestedAt = 0; // No one asked for this start.
+        restoredIdle = true;
+        prepareReleasedPlayer();
+        publish(PlaybackState.Event.TRACK_CHANGED);
+        resumeRestoredPlayback();
+    }
+
+    // Whichever of the restore and a system restart comes second resumes playback.
+    private void resumeRestoredPlayback() {
+        if (restartedBySystem && restoredPlaying) {
+            restoredPlaying = false;
+            go();
+        }
+    }
+
+    // --- Start Latency ---
+
+    /** Called as the playback thread picks up a play request, before any skip-settle delay. */
+    private void beginStartMeasurement(long requestedAt) {
+        startRequestedAt = requestedAt;
+        prepareStartedAt = 0;
+        playerHandler.removeCallbacks(checkFirstAudio);
+        recordStage(PlaybackMetrics.Stage.DISPATCH, requestedAt);
+    }
+
+    private void recordStage(PlaybackMetrics.Stage stage, long since) {
+        if (startRequestedAt != 0 && since != 0) {
+            metrics.record(stage, SystemClock.elapsedRealtimeNanos() - since);
+        }
+    }
+
+    /** Starts the current player and, if a request is being measured, waits for its first audio. */
+    private void startPlayer() {
+        long startAt = SystemClock.elapsedRealtimeNanos();
         mediaPlayer.start();
-        showNotification();
+        restoredIdle = false;
+        recordPlayStarted();
+        if (startRequestedAt == 0) {
+            return;
+        }
+        recordStage(PlaybackMetrics.Stage.START, startAt);
+        audioStartedAt = SystemClock.elapsedRealtimeNanos();
+        audioStartPosition = mediaPlayer.getCurrentPosition();
+        playerHandler.postDelayed(checkFirstAudio, FIRST_AUDIO_POLL_MS);
     }
 
-    public void pause() {
-        mediaPlayer.pause();
-        showNotification();
+    // MediaPlayer has no "audio is out" callback; the position only advances once the track
+    // is actually rendering, so poll it briefly after start(). On M+ the player's timestamp
+    // dates the start exactly, so the poll only has to notice it and can stay coarse.
+    private final Runnable checkFirstAudio = new Runnable() {
+        @Override
+        public void run() {
+            long now = SystemClock.elapsedRealtimeNanos();
+            if (startRequestedAt == 0 || playerState != PlaybackState.STATE_PLAYING
+                    || now - audioStartedAt > FIRST_AUDIO_TIMEOUT_NS) {
+                startRequestedAt = 0;
+                return;
+            }
+            if (mediaPlayer.getCurrentPosition() <= audioStartPosition) {
+                playerHandler.postDelayed(this, FIRST_AUDIO_POLL_MS);
+                return;
+            }
+            long audibleAt = estimateAudibleAt(now);
+            metrics.record(PlaybackMetrics.Stage.FIRST_AUDIO, audibleAt - audioStartedAt);
+            metrics.record(PlaybackMetrics.Stage.REQUEST_TO_AUDIO, audibleAt - startRequestedAt);
+            startRequestedAt = 0;
+        }
+    };
+
+    /** When playback left audioStartPosition, from the player's timestamp if it has one, else now. */
+    private long estimateAudibleAt(long now) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return now;
+        }
+        MediaTimestamp timestamp = mediaPlayer.getTimestamp();
+        if (timestamp == null || timestamp.getMediaClockRate() <= 0) {
+            return now;
+        }
+        long playedUs = timestamp.getAnchorMediaTimeUs() - audioStartPosition * 1000L;
+        @SuppressWarnings("deprecation") // getAnchorSystemNanoTime() is API 29+
+        long anchorNs = timestamp.getAnchorSytemNanoTime();
+        // The anchor is on the System.nanoTime() clock; move it to elapsedRealtimeNanos().
+        long audibleAt = anchorNs - (long) (playedUs * 1000 / timestamp.getMediaClockRate())
+                + SystemClock.elapsedRealtimeNanos() - System.nanoTime();
+        // Outside the polled window the timestamp is stale or off; fall back to the poll.
+        return audibleAt >= audioStartedAt && audibleAt <= now ? audibleAt : now;
     }
 
-    public void playNext() {
-        currentSongPosition++;
-        if (currentSongPosition >= songs.size()) {
-            currentSongPosition = 0;
+    /** Live start-latency histograms and error counts; safe to read from any thread. */
+    public PlaybackMetrics getPlaybackMetrics() {
+        return metrics;
+    }
+
+    /** Whether the p95 of request to first audio is within budget, once there are enough samples. */
+    public boolean isStartLatencyWithinBudget() {
+        LatencyHistogram histogram = metrics.getHistogram(PlaybackMetrics.Stage.REQUEST_TO_AUDIO);
+        return histogram.getCount() < START_BUDGET_MIN_SAMPLES
+                || histogram.getPercentileMicros(95) <= START_BUDGET_P95_MS * 1000;
+    }
+
+    /** Writes the metrics as one JSON line to logcat and to files/playback_metrics.json. */
+    public void dumpMetrics() {
+        String json = metrics.toJson();
+        Log.i("PLAYBACK METRICS", json);
+        if (!isStartLatencyWithinBudget()) {
+            Log.w("PLAYBACK METRICS", "p95 start latency over the " + START_BUDGET_P95_MS + " ms budget");
+        }
+        try (Writer out = new OutputStreamWriter(
+                new FileOutputStream(new File(getFilesDir(), METRICS_FILE)), StandardCharsets.UTF_8)) {
+            out.write(json);
+        } catch (IOException e) {
+            Log.w("PLAYBACK METRICS", "Could not write " + METRICS_FILE, e);
         }
-        playSong(currentSongPosition);
     }
 
-    public void playPrev() {
-        currentSongPosition--;
-        if (currentSongPosition < 0) {
-            currentSongPosition = songs.size() - 1;
+    /**
+     * Dumps the metrics when playback pauses or stops, at most once per METRICS_DUMP_INTERVAL_MS.
+     * onDestroy() dumps them too, but rarely runs for a service whose process gets killed.
+     */
+    private void dumpMetricsIfDue() {
+        long now = SystemClock.elapsedRealtime();
+        if (metricsDumpedAt != 0 && now - metricsDumpedAt < METRICS_DUMP_INTERVAL_MS) {
+            return;
+        }
+        metricsDumpedAt = now;
+        dumpMetrics();
+    }
+
+    // adb shell dumpsys activity service com.example.musicplayer/.MusicService
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        writer.println(metrics.toJson());
+    }
+
+    // --- Gapless Hand-over ---
+    private void prepareNextPlayer() {
+        cancelNextPlayer();
+        int entry = queue.peekNext(true);
+        if (entry == PlayQueue.NO_ENTRY) {
+            return;
         }
-        playSong(currentSongPosition);
+        if (nextPlayer == null) {
+            nextPlayer = createPlayer();
+        }
+        Song nextSong = queue.getSong(entry);
+        loudnessAnalyzer.prioritize(nextSong, LoudnessAnalyzer.PRIORITY_UPCOMING);
+        try {
+            nextPlayer.setDataSource(getApplicationContext(), Uri.parse(nextSong.getUriString()));
+            applyReplayGain(nextPlayer, nextSong);
+            nextEntry = entry;
+            nextPlayer.prepareAsync();
+            // Have the seekbar waveform ready by the time the next track starts.
+            mainHandler.post(() -> WaveformLoader.getInstance(this).prefetch(nextSong));
+        } catch (IOException | IllegalStateException e) {
+            Log.e("MUSIC SERVICE", "Error preparing next song", e);
+            cancelNextPlayer();
+        }
+    }
+
+    // --- ReplayGain ---
+
+    // Playback thread.
+    private void createLoudnessEnhancer() {
+        if (audioSessionId == AudioManager.ERROR) {
+            return;
+        }
+        try {
+            loudnessEnhancer = new LoudnessEnhancer(audioSessionId);
+            loudnessEnhancer.setTargetGain(Math.round(REPLAY_GAIN_HEADROOM_DB * 100));
+            loudnessEnhancer.setEnabled(true);
+        } catch (RuntimeException e) {
+            // Without it gains are capped at 0 dB: quiet tracks stay quiet, loud ones are still cut.
+            Log.w("MUSIC SERVICE", "LoudnessEnhancer unavailable", e);
+            loudnessEnhancer = null;
+        }
+    }
+
+    /** Playback thread: sets the player's volume for the song's gain; unmeasured songs play at unity. */
+    private void applyReplayGain(MediaPlayer player, Song song) {
+        float headroomDb = loudnessEnhancer != null ? REPLAY_GAIN_HEADROOM_DB : 0f;
+        Loudness loudness = loudnessAnalyzer.getLoudness(song);
+        float gainDb = loudness != null ? Math.min(loudness.getGainDb(), headroomDb) : 0f;
+        float volume = (float) Math.pow(10, (gainDb - headroomDb) / 20);
+        player.setVolume(volume, volume);
+    }
+
+    // Playback thread: the upcoming track was measured after its player was prepared. The
+    // current one keeps its volume; a jump mid-track would be worse than no levelling.
+    private void onLoudnessMeasured(long songId) {
+        if (nextEntry != PlayQueue.NO_ENTRY && nextPlayer != null) {
+            Song nextSong = queue.getSong(nextEntry);
+            if (nextSong.getId() == songId) {
+                applyReplayGain(nextPlayer, nextSong);
+            }
+        }
+    }
+
+    // --- Library Changes ---
+
+    // Main thread: a delta sync found songs added, changed or deleted while the queue was live.
+    private final MusicRepository.LibraryListener libraryListener = (library, removedIds, changed) -> {
+        if (removedIds.length > 0 || !changed.isEmpty()) {
+            playerHandler.post(() -> applyLibraryChange(removedIds, changed));
+        }
+    };
+
+    /**
+     * Playback thread: drops deleted songs from the queue, so they are never handed to the
+     * player, and refreshes the metadata of changed ones. The current track keeps playing
+     * even if its file is gone; the queue moves on from where it was.
+     */
+    private void applyLibraryChange(long[] removedIds, List<Song> changed) {
+        if (queue.isEmpty()) {
+            return;
+        }
+        HashSet<Long> removed = new HashSet<>(removedIds.length * 2);
+        for (long id : removedIds) {
+            removed.add(id);
+        }
+        HashMap<Long, Song> changedById = new HashMap<>(changed.size() * 2);
+        for (Song song : changed) {
+            changedById.put(song.getId(), song);
+        }
+        boolean edited = false;
+        // Back to front, so removals don't shift the positions still to visit.
+        for (int position = queue.size() - 1; position >= 0; position--) {
+            int entry = queue.entryAt(position);
+            long id = queue.getSong(entry).getId();
+            if (removed.contains(id)) {
+                queue.remove(position);
+                edited = true;
+            } else {
+                Song song = changedById.get(id);
+                if (song != null) {
+                    queue.replaceSong(entry, song);
+                    edited = true;
+                }
+            }
+        }
+        if (edited) {
+            onQueueChanged();
+        }
+    }
+
+    // Playback thread: after a queue edit, re-arms the next player if what follows has changed.
+    private void onQueueChanged() {
+        if (isPrepared() && queue.peekNext(true) != nextEntry) {
+            prepareNextPlayer();
+        }
+        publish(PlaybackState.Event.QUEUE_CHANGED);
+    }
+
+    /** Swaps the prepared next player in as the current one; the old player (already reset) is kept for reuse. */
+    private void promoteNextPlayer() {
+        MediaPlayer finished = mediaPlayer;
+        mediaPlayer = nextPlayer;
+        nextPlayer = finished;
+        nextEntry = PlayQueue.NO_ENTRY;
+        nextPlayerArmed = false;
+    }
+
+    private void cancelNextPlayer() {
+        if (nextPlayerArmed) {
+            mediaPlayer.setNextMediaPlayer(null);
+        }
+        nextPlayerArmed = false;
+        nextEntry = PlayQueue.NO_ENTRY;
+        if (nextPlayer != null) {
+            nextPlayer.reset();
+        }
+    }
+
+    private void releaseNextPlayer() {
+        cancelNextPlayer();
+        if (nextPlayer != null) {
+            nextPlayer.release();
+            nextPlayer = null;
+        }
+    }
+
+    // --- Play History (playback thread) ---
+    // A play is counted when its entry first starts, so resuming after a pause, an idle
+    // release or a seek is not a new play. It ends in a completion or a skip; a play cut
+    // short by starting a new queue is left as just a play.
+
+    private void recordPlayStarted() {
+        Song song = queue.getCurrentSong();
+        int entry = queue.getCurrentEntry();
+        if (song == null || entry == historyEntry) {
+            return;
+        }
+        historyEntry = entry;
+        historySongId = song.getId();
+        playHistory.record(historySongId, PlayStats.EVENT_PLAYED);
+    }
+
+    private void recordPlayEnded(int event) {
+        if (historyEntry == PlayQueue.NO_ENTRY) {
+            return;
+        }
+        playHistory.record(historySongId, event);
+        historyEntry = PlayQueue.NO_ENTRY;
+    }
+
+    private void recordTrackGap(long gapMs) {
+        lastTrackGapMs = Math.max(0, gapMs);
+        totalTrackGapMs += lastTrackGapMs;
+        trackGapCount++;
+        completedAt = 0;
+        startedAsNextAt = 0;
+    }
+
+    /** Gap between the last two tracks that followed each other naturally, or -1 if none yet. */
+    public long getLastTrackGapMs() {
+        return lastTrackGapMs;
+    }
+
+    public long getAverageTrackGapMs() {
+        return trackGapCount == 0 ? -1 : totalTrackGapMs / trackGapCount;
+    }
+
+    // --- Playback State Events ---
+    public void addPlaybackListener(PlaybackListener listener) {
+        playbackListeners.add(listener);
+    }
+
+    public void removePlaybackListener(PlaybackListener listener) {
+        playbackListeners.remove(listener);
+    }
+
+    public PlaybackState getPlaybackState() {
+        return currentState;
+    }
+
+    // Playback thread: snapshots the player and hands the snapshot to the listeners on the main thread.
+    private void publish(PlaybackState.Event event) {
+        boolean prepared = isPrepared();
+        PlaybackState state = new PlaybackState(playerState, queue.getCurrentSong(), queue.getCurrentPosition(),
+                prepared ? mediaPlayer.getCurrentPosition() : resumePositionMs,
+                prepared ? mediaPlayer.getDuration() : resumeDurationMs,
+                SystemClock.elapsedRealtime());
+        currentState = state;
+        mainHandler.post(() -> {
+            for (PlaybackListener listener : new ArrayList<>(playbackListeners)) {
+                listener.onPlaybackEvent(event, state);
+            }
+        });
+        saveSession();
     }
 
     // --- Getters for UI updates ---
     public int getCurrentPosition() {
-        return mediaPlayer.getCurrentPosition();
+        return (int) currentState.getPositionMs(SystemClock.elapsedRealtime());
     }
 
     public int getDuration() {
-        return mediaPlayer.getDuration();
+        return (int) currentState.getDurationMs();
     }
 
-
     public boolean isPlaying() {
-        try {
-            return mediaPlayer.isPlaying();
-        } catch (IllegalStateException e) {
-            return false;
-        }
+        return currentState.isPlaying();
     }
 
     public int getAudioSessionId() {
-        return mediaPlayer.getAudioSessionId();
+        return audioSessionId;
     }
 
-    public void seekTo(int position) {
-        mediaPlayer.seekTo(position);
+    public Song getCurrentSong() {
+        return currentState.getSong();
     }
 
-    public Song getCurrentSong() {
-        if (songs != null && !songs.isEmpty()){
-            return songs.get(currentSongPosition);
-        }
-        return null;
+    /** Token of the last queue playQueue() accepted, set before its track is even prepared; 0 if none. */
+    public long getQueueToken() {
+        return queueToken;
     }
 
     // --- Service Lifecycle & Binding ---
@@ -163,38 +1089,149 @@ public class MusicService extends Service implements MediaPlayer.OnPreparedListe
         return false;
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // Tiers go cheapest to rebuild first: in-memory caches that the disk tier refills, then
+        // the pre-prepared next player (costs gapless hand-over), then a paused current player.
+        // Running and background levels map onto the same steps; UI_HIDDEN is the activity's.
+        int tier;
+        if (level >= TRIM_MEMORY_COMPLETE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            tier = 3;
+        } else if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_LOW) {
+            tier = 2;
+        } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_MODERATE) {
+            tier = 1;
+        } else {
+            return;
+        }
+        Log.i("MUSIC SERVICE", "Trimming memory, level " + level + ", tier " + tier);
+        AlbumArtLoader.getInstance(this).clearMemory();
+        WaveformLoader.getInstance(this).clearMemory();
+        if (tier >= 2) {
+            playerHandler.post(this::releaseNextPlayer);
+        }
+        if (tier >= 3) {
+            playerHandler.post(releaseIdlePlayer);
+        }
+    }
+
     @Override
     public void onDestroy() {
+        MusicRepository.getInstance().removeLibraryListener(libraryListener);
+        loudnessAnalyzer.setListener(null);
         stopForeground(true);
-        if (mediaPlayer != null) {
-            mediaPlayer.stop();
-            mediaPlayer.release();
-            mediaPlayer = null;
+        if (notificationArtTicket != null) {
+            notificationArtTicket.cancel();
         }
+        mainHandler.removeCallbacksAndMessages(null);
+        playerHandler.removeCallbacksAndMessages(null);
+        playerHandler.post(() -> {
+            dumpMetrics();
+            playHistory.flush();
+            saveSession();
+            sessionStore.flush();
+            releaseNextPlayer();
+            if (loudnessEnhancer != null) {
+                loudnessEnhancer.release();
+                loudnessEnhancer = null;
+            }
+            if (mediaPlayer != null) {
+                mediaPlayer.release();
+                mediaPlayer = null;
+            }
+        });
+        playerThread.quitSafely();
         super.onDestroy();
     }
 
     // --- Foreground Service Notification ---
-    private void showNotification() {
-        createNotificationChannel();
-        Song currentSong = songs.get(currentSongPosition);
+    // All of this runs on the main thread. The builder and content intent are reused, and a
+    // notification is only posted when something it shows has changed, at most once per
+    // NOTIFICATION_THROTTLE_MS so skip bursts don't flood the notification service.
+    // Playback thread.
+    private void postNotification() {
+        if (!restoredIdle) {
+            mainHandler.post(this::requestNotificationUpdate);
+        }
+    }
 
-        Intent notificationIntent = new Intent(this, PlayerActivity.class);
-        notificationIntent.putExtra("songs", songs);
-        notificationIntent.putExtra("pos", currentSongPosition);
-        notificationIntent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
+    private void requestNotificationUpdate() {
+        if (notificationUpdatePending) {
+            return;
+        }
+        long wait = lastNotificationAt + NOTIFICATION_THROTTLE_MS - SystemClock.uptimeMillis();
+        if (!foregroundStarted || wait <= 0) {
+            updateNotification();
+        } else {
+            notificationUpdatePending = true;
+            mainHandler.postDelayed(notificationUpdate, wait);
+        }
+    }
 
-        PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, notificationIntent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    private final Runnable notificationUpdate = this::updateNotification;
 
-        Notification notification = new NotificationCompat.Builder(this, CHANNEL_ID)
-                .setContentTitle(currentSong.getTitle())
-                .setContentText(currentSong.getArtist())
-                .setSmallIcon(R.drawable.ic_music_note)
-                .setContentIntent(pendingIntent)
-                .setOngoing(true)
+    private void updateNotification() {
+        notificationUpdatePending = false;
+        PlaybackState state = currentState;
+        Song currentSong = state.getSong();
+        if (currentSong == null) {
+            return;
+        }
+        if (currentSong.getId() != notificationArtSongId) {
+            loadNotificationArt(currentSong);
+        }
+
+        boolean playing = state.getState() != PlaybackState.STATE_PAUSED;
+        if (foregroundStarted
+                && TextUtils.equals(currentSong.getTitle(), shownTitle)
+                && TextUtils.equals(currentSong.getArtist(), shownArtist)
+                && playing == shownPlaying
+                && notificationArt == shownArt) {
+            return;
+        }
+        shownTitle = currentSong.getTitle();
+        shownArtist = currentSong.getArtist();
+        shownPlaying = playing;
+        shownArt = notificationArt;
+
+        long token = queueToken;
+        if (token != contentIntentToken) {
+            Intent notificationIntent = new Intent(this, PlayerActivity.class);
+            notificationIntent.putExtra(MusicRepository.EXTRA_QUEUE_TOKEN, token);
+            notificationIntent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
+            notificationBuilder.setContentIntent(PendingIntent.getActivity(this, 0, notificationIntent,
+                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE));
+            contentIntentToken = token;
+        }
+
+        Notification notification = notificationBuilder
+                .setContentTitle(shownTitle)
+                .setContentText(shownArtist)
+                .setSubText(playing ? null : "Paused")
+                .setLargeIcon(shownArt)
                 .build();
-        startForeground(NOTIFICATION_ID, notification);
+        lastNotificationAt = SystemClock.uptimeMillis();
+        if (foregroundStarted) {
+            notificationManager.notify(NOTIFICATION_ID, notification);
+        } else {
+            startForeground(NOTIFICATION_ID, notification);
+            foregroundStarted = true;
+        }
+    }
+
+    private void loadNotificationArt(Song song) {
+        if (notificationArtTicket != null) {
+            notificationArtTicket.cancel();
+        }
+        notificationArtSongId = song.getId();
+        notificationArt = null;
+        int size = (int) (NOTIFICATION_ART_DP * getResources().getDisplayMetrics().density);
+        notificationArtTicket = AlbumArtLoader.getInstance(this).load(song, size, art -> {
+            notificationArtTicket = null;
+            notificationArt = art;
+            requestNotificationUpdate();
+        });
     }
 
     private void createNotificationChannel() {
@@ -210,4 +1247,4 @@ public class MusicService extends Service implements MediaPlayer.OnPreparedListe
             }
         }
     }
-}
\ No newline at end of file
+}
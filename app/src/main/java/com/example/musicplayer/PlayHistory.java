@@ -0,0 +1,320 @@
+package com.example.musicplayer;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Play history: what was played, finished and skipped, for "most played", "recently played"
+ * and skip rates.
+ *
+ * record() only counts the event in memory and queues its 17-byte log record, so it is cheap
+ * enough for the playback thread. Queued records are appended to an event log by a background
+ * thread in groups, one write per GROUP_COMMIT_MS at most, however many events arrived. Once
+ * the log holds COMPACT_RECORDS events it is folded into a file of per-song counters and
+ * started afresh, so startup reads one record per song plus a short log tail. Both files carry
+ * an epoch: a log older than the counters was already folded in and is ignored, so a crash
+ * between writing the counters and resetting the log never counts an event twice.
+ *
+ * Queries are answered from PlayStats' in-memory indexes. Until the files have been read
+ * (right after the first getInstance()), they only see events recorded since. Thread-safe.
+ */
+public final class PlayHistory {
+
+    private static final String TAG = "PlayHistory";
+    private static final String LOG_FILE = "play_history.log";
+    private static final String STATS_FILE = "play_stats";
+    private static final int LOG_MAGIC = 0x4d505048; // "MPPH"
+    private static final int STATS_MAGIC = 0x4d505053; // "MPPS"
+    private static final int VERSION = 1;
+    private static final int LOG_HEADER_BYTES = 16;
+    private static final int LOG_RECORD_BYTES = 17;
+    private static final long GROUP_COMMIT_MS = 2000;
+    private static final int COMPACT_RECORDS = 5000;
+
+    private static PlayHistory instance;
+
+    private final File logFile;
+    private final File statsFile;
+    private final ScheduledExecutorService executor;
+
+    // Guarded by this.
+    private final PlayStats stats = new PlayStats();
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream(LOG_RECORD_BYTES * 64);
+    private final DataOutputStream pendingOut = new DataOutputStream(pending);
+    private boolean commitScheduled;
+
+    // Background thread.
+    private FileOutputStream log;
+    private long epoch;
+    private int logRecords;
+
+    public static synchronized PlayHistory getInstance(Context context) {
+        if (instance == null) {
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }, "PlayHistory");
+                thread.setDaemon(true);
+                return thread;
+            });
+            instance = new PlayHistory(context.getApplicationContext().getFilesDir(), executor);
+        }
+        return instance;
+    }
+
+    /** All file access runs on the executor, which must be single-threaded. */
+    PlayHistory(File directory, ScheduledExecutorService executor) {
+        logFile = new File(directory, LOG_FILE);
+        statsFile = new File(directory, STATS_FILE);
+        this.executor = executor;
+        executor.execute(this::open);
+    }
+
+    /** Counts a PlayStats event for the song now and queues it for the log. Never blocks on I/O. */
+    public void record(long songId, int event) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            stats.apply(songId, event, now);
+            try {
+                pendingOut.writeLong(songId);
+                pendingOut.writeLong(now);
+                pendingOut.writeByte(event);
+            } catch (IOException e) {
+                throw new AssertionError(e); // In memory.
+            }
+            if (!commitScheduled) {
+                commitScheduled = true;
+                executor.schedule(this::commit, GROUP_COMMIT_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /** Writes queued events out now, e.g. when the service is going away. */
+    public void flush() {
+        executor.execute(this::commit);
+    }
+
+    /** Ids of up to n songs with the most plays, most played first. */
+    public synchronized long[] getMostPlayed(int n) {
+        return stats.mostPlayed(n);
+    }
+
+    /** Ids of up to n songs by their latest play, newest first. */
+    public synchronized long[] getRecentlyPlayed(int n) {
+        return stats.recentlyPlayed(n);
+    }
+
+    @Nullable
+    public synchronized PlayStats.Entry getStats(long songId) {
+        return stats.get(songId);
+    }
+
+    // --- Background thread ---
+
+    private void open() {
+        long statsEpoch = readStats();
+        long logEpoch = -1;
+        long goodLength = 0;
+        if (logFile.isFile()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+                if (in.readInt() == LOG_MAGIC && in.readInt() == VERSION) {
+                    logEpoch = in.readLong();
+                    goodLength = LOG_HEADER_BYTES;
+                    // A log at least as new as the counters holds events they don't include yet.
+                    if (logEpoch >= statsEpoch) {
+                        while (true) {
+                            long songId = in.readLong();
+                            long timeMs = in.readLong();
+                            int event = in.readByte();
+                            synchronized (this) {
+                                stats.apply(songId, event, timeMs);
+                            }
+                            logRecords++;
+                            goodLength += LOG_RECORD_BYTES;
+                        }
+                    }
+                }
+            } catch (EOFException e) {
+                // End of the log, possibly mid-record if the process died while appending.
+            } catch (IOException e) {
+                Log.w(TAG, "Could not read play history log", e);
+            }
+        }
+        try {
+            if (logEpoch < statsEpoch) {
+                epoch = statsEpoch;
+                resetLog();
+            } else {
+                epoch = logEpoch;
+                if (logFile.length() != goodLength) {
+                    try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+                        raf.setLength(goodLength);
+                    }
+                }
+                log = new FileOutputStream(logFile, true);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Play history log unavailable; history will not be saved", e);
+        }
+        if (logRecords >= COMPACT_RECORDS) {
+            compact();
+        }
+    }
+
+    /** Reads the compacted counters and returns their epoch, 0 if there are none. */
+    private long readStats() {
+        if (!statsFile.isFile()) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(statsFile)))) {
+            if (in.readInt() != STATS_MAGIC || in.readInt() != VERSION) {
+                return 0;
+            }
+            long statsEpoch = in.readLong();
+            int count = in.readInt();
+            // Read in full before any of it counts, so a damaged file can't half-apply.
+            PlayStats read = new PlayStats();
+            for (int i = 0; i < count; i++) {
+                read.add(in.readLong(), in.readInt(), in.readInt(), in.readInt(), in.readLong());
+            }
+            synchronized (this) {
+                for (PlayStats.Entry entry : read.snapshot()) {
+                    stats.add(entry.getSongId(), entry.getPlays(), entry.getCompletions(), entry.getSkips(),
+                            entry.getLastPlayedMs());
+                }
+            }
+            return statsEpoch;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read play stats; starting over", e);
+            return 0;
+        }
+    }
+
+    /** Appends every queued event in one write. */
+    private void commit() {
+        byte[] records;
+        synchronized (this) {
+            commitScheduled = false;
+            if (pending.size() == 0) {
+                return;
+            }
+            records = pending.toByteArray();
+            pending.reset();
+        }
+        if (log == null) {
+            return; // Kept in memory only; see open().
+        }
+        try {
+            // Not synced: written data survives the process being killed, which is what matters here.
+            log.write(records);
+            logRecords += records.length / LOG_RECORD_BYTES;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not append to play history", e);
+        }
+        if (logRecords >= COMPACT_RECORDS) {
+            compact();
+        }
+    }
+
+    /** Folds everything counted so far into the counters file and starts an empty log. */
+    private void compact() {
+        List<PlayStats.Entry> entries;
+        byte[] folded;
+        synchronized (this) {
+            // Queued events are in the snapshot, so they must not reach the new log as well.
+            entries = stats.snapshot();
+            folded = pending.toByteArray();
+            pending.reset();
+        }
+        long newEpoch = epoch + 1;
+        try {
+            writeStats(entries, newEpoch);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not compact play history", e);
+            if (log != null && folded.length > 0) {
+                try {
+                    log.write(folded);
+                    logRecords += folded.length / LOG_RECORD_BYTES;
+                } catch (IOException writeError) {
+                    Log.w(TAG, "Could not append to play history", writeError);
+                }
+            }
+            return;
+        }
+        epoch = newEpoch;
+        try {
+            resetLog();
+        } catch (IOException e) {
+            // The counters are saved; the stale log is ignored on the next start.
+            Log.e(TAG, "Could not start a new play history log", e);
+        }
+    }
+
+    private void writeStats(List<PlayStats.Entry> entries, long statsEpoch) throws IOException {
+        File tmp = new File(statsFile.getPath() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024))) {
+            out.writeInt(STATS_MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(statsEpoch);
+            out.writeInt(entries.size());
+            for (PlayStats.Entry entry : entries) {
+                out.writeLong(entry.getSongId());
+                out.writeInt(entry.getPlays());
+                out.writeInt(entry.getCompletions());
+                out.writeInt(entry.getSkips());
+                out.writeLong(entry.getLastPlayedMs());
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        if (!tmp.renameTo(statsFile)) {
+            tmp.delete();
+            throw new IOException("Cannot replace " + statsFile);
+        }
+    }
+
+    /** Replaces the log with an empty one for the current epoch. */
+    private void resetLog() throws IOException {
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException ignored) {
+                // Replaced anyway.
+            }
+            log = null;
+        }
+        logRecords = 0;
+        File tmp = new File(logFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+            out.writeInt(LOG_MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(epoch);
+        }
+        if (!tmp.renameTo(logFile)) {
+            tmp.delete();
+            throw new IOException("Cannot replace " + logFile);
+        }
+        log = new FileOutputStream(logFile, true);
+    }
+}
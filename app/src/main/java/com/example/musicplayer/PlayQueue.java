@@ -0,0 +1,579 @@
+package com.example.musicplayer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * The play queue: list order, the current entry, shuffle, repeat modes and history.
+ *
+ * Every queued item is an entry with a stable int id. Songs of the list passed to setSongs()
+ * get ids 0..n-1 and songs added later get the following ids, so the list is never copied.
+ * List order is kept as a treap of runs of consecutive ids, indexed by item count. That makes
+ * positional lookups and every edit O(log r), where r is the number of runs: 1 for a fresh
+ * queue and at most a few more per edit. Edits never disturb the current entry; if it is
+ * removed it keeps playing and the queue continues from where it was.
+ *
+ * Shuffle is a Fisher-Yates permutation over entry ids that is drawn lazily, one step per
+ * track. Only the positions it has displaced are stored. Entries added later join the
+ * undrawn pool and removed ones are skipped when drawn.
+ *
+ * Not thread-safe; MusicService only touches it from its playback thread.
+ */
+public final class PlayQueue {
+
+    public static final int REPEAT_OFF = 0;
+    public static final int REPEAT_ALL = 1;
+    public static final int REPEAT_ONE = 2;
+
+    /** Returned where there is no entry, e.g. past the end of the queue with repeat off. */
+    public static final int NO_ENTRY = -1;
+
+    private static final int HISTORY_LIMIT = 100;
+
+    private final Random random;
+
+    // Entry ids below base.size() index base, the rest index added.
+    private List<Song> base = Collections.emptyList();
+    private final List<Song> added = new ArrayList<>();
+    // Newer metadata for entries whose song changed after it was queued, by entry id.
+    private final HashMap<Integer, Song> replaced = new HashMap<>();
+
+    // List order: treap of id runs, plus each run by its first id for id -> position lookups.
+    private Run root;
+    private final TreeMap<Integer, Run> runsByFirstId = new TreeMap<>();
+    // Bumped by every change to list order or to an entry's song.
+    private int version;
+
+    private int current = NO_ENTRY;
+    // Where a removed current entry used to be, so "next" continues from there; -1 otherwise.
+    private int detachedPosition = -1;
+    private int repeatMode = REPEAT_ALL;
+
+    private boolean shuffled;
+    // Lazy Fisher-Yates state: slot i of the virtual permutation holds displaced.get(i), or i itself.
+    private final HashMap<Integer, Integer> displaced = new HashMap<>();
+    private int drawn;
+    // Drawn from the permutation by peekNext() but not played yet.
+    private int reserved = NO_ENTRY;
+    // Shuffle mode only: songs queued with playNext(), and entries to replay after going back.
+    private final ArrayDeque<Integer> upNext = new ArrayDeque<>();
+    private final ArrayDeque<Integer> forward = new ArrayDeque<>();
+    private final ArrayDeque<Integer> history = new ArrayDeque<>();
+
+    public PlayQueue() {
+        this(new Random());
+    }
+
+    public PlayQueue(Random random) {
+        this.random = random;
+    }
+
+    /** Replaces the queue with the given songs, without copying them, and makes startIndex current. */
+    public void setSongs(List<Song> songs, int startIndex) {
+        base = songs;
+        version++;
+        added.clear();
+        replaced.clear();
+        runsByFirstId.clear();
+        root = null;
+        if (!songs.isEmpty()) {
+            root = newRun(0, songs.size(), random.nextInt());
+        }
+        current = songs.isEmpty() ? NO_ENTRY : startIndex;
+        detachedPosition = -1;
+        history.clear();
+        resetPlayOrder();
+    }
+
+    // --- List order ---
+
+    public int size() {
+        return count(root);
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /** Entry id at the given position in list order. */
+    public int entryAt(int position) {
+        if (position < 0 || position >= size()) {
+            throw new IndexOutOfBoundsException("Position: " + position + ", size: " + size());
+        }
+        Run run = root;
+        while (true) {
+            int leftCount = count(run.left);
+            if (position < leftCount) {
+                run = run.left;
+            } else if (position < leftCount + run.length()) {
+                return run.firstId + position - leftCount;
+            } else {
+                position -= leftCount + run.length();
+                run = run.right;
+            }
+        }
+    }
+
+    public Song get(int position) {
+        return getSong(entryAt(position));
+    }
+
+    /**
+     * The songs in list order. While the queue is unedited this is the list passed to
+     * setSongs() itself, otherwise an O(n) copy; either way it is not changed by later edits.
+     */
+    public List<Song> songs() {
+        if (root == null) {
+            return Collections.emptyList();
+        }
+        if (root.left == null && root.right == null && root.firstId == 0 && root.endId == base.size()
+                && replaced.isEmpty()) {
+            return base;
+        }
+        List<Song> songs = new ArrayList<>(root.count);
+        // In-order walk of the runs, without recursion.
+        ArrayDeque<Run> stack = new ArrayDeque<>();
+        Run run = root;
+        while (run != null || !stack.isEmpty()) {
+            while (run != null) {
+                stack.push(run);
+                run = run.left;
+            }
+            run = stack.pop();
+            for (int entry = run.firstId; entry < run.endId; entry++) {
+                songs.add(getSong(entry));
+            }
+            run = run.right;
+        }
+        return songs;
+    }
+
+    /** Changes whenever list order or a song changes, but not on moving through the queue or toggling modes. */
+    public int getVersion() {
+        return version;
+    }
+
+    /** Position of the entry in list order, or -1 if it has been removed. */
+    public int positionOf(int entry) {
+        Map.Entry<Integer, Run> floor = entry < 0 ? null : runsByFirstId.floorEntry(entry);
+        if (floor == null || entry >= floor.getValue().endId) {
+            return -1;
+        }
+        Run run = floor.getValue();
+        int position = count(run.left) + entry - run.firstId;
+        for (Run child = run, parent = run.parent; parent != null; child = parent, parent = parent.parent) {
+            if (child == parent.right) {
+                position += count(parent.left) + parent.length();
+            }
+        }
+        return position;
+    }
+
+    /** The song of any entry ever queued since setSongs(), including removed ones. */
+    public Song getSong(int entry) {
+        if (!replaced.isEmpty()) {
+            Song song = replaced.get(entry);
+            if (song != null) {
+                return song;
+            }
+        }
+        return entry < base.size() ? base.get(entry) : added.get(entry - base.size());
+    }
+
+    /** Swaps in newer metadata for the entry's song, e.g. after a tag edit; order and identity stay. */
+    public void replaceSong(int entry, Song song) {
+        if (entry < 0 || entry >= base.size() + added.size()) {
+            throw new IndexOutOfBoundsException("Entry: " + entry);
+        }
+        replaced.put(entry, song);
+        version++;
+    }
+
+    // --- Edits ---
+
+    /** Adds the song at the end of the queue and returns its entry id. */
+    public int enqueue(Song song) {
+        return insert(size(), song);
+    }
+
+    /** Inserts the song right after the current entry, so it plays next even when shuffled. */
+    public int playNext(Song song) {
+        int position = currentPosition();
+        int entry = insert(position < 0 ? (detachedPosition < 0 ? 0 : detachedPosition) : position + 1, song);
+        if (shuffled) {
+            upNext.addLast(entry);
+        }
+        return entry;
+    }
+
+    public int insert(int position, Song song) {
+        if (position < 0 || position > size()) {
+            throw new IndexOutOfBoundsException("Position: " + position + ", size: " + size());
+        }
+        int entry = base.size() + added.size();
+        added.add(song);
+        insertEntry(position, entry);
+        if (detachedPosition > position) {
+            detachedPosition++;
+        }
+        if (root.count == 1 && current == NO_ENTRY) {
+            current = entry;
+        }
+        return entry;
+    }
+
+    /** Removes the entry at the position; removing the current entry leaves it playing. */
+    public void remove(int position) {
+        int entry = removeEntry(position);
+        if (entry == current) {
+            detachedPosition = position;
+        } else if (detachedPosition > position) {
+            detachedPosition--;
+        }
+        if (entry == reserved) {
+            reserved = NO_ENTRY;
+        }
+    }
+
+    /** Moves the entry at from to the position to, keeping its identity. */
+    public void move(int from, int to) {
+        if (to < 0 || to >= size()) {
+            throw new IndexOutOfBoundsException("Position: " + to + ", size: " + size());
+        }
+        int entry = removeEntry(from);
+        insertEntry(to, entry);
+        if (detachedPosition > from) {
+            detachedPosition--;
+        }
+        if (detachedPosition >= 0 && detachedPosition >= to) {
+            detachedPosition++;
+        }
+    }
+
+    // --- Playback order ---
+
+    public int getCurrentEntry() {
+        return current;
+    }
+
+    public Song getCurrentSong() {
+        return current == NO_ENTRY ? null : getSong(current);
+    }
+
+    /** Position of the current entry, or -1 if there is none or it was removed. */
+    public int getCurrentPosition() {
+        return currentPosition();
+    }
+
+    /** Makes the entry at the position current, e.g. when the user picks a song. */
+    public void jumpTo(int position) {
+        int entry = entryAt(position);
+        forward.clear();
+        makeCurrent(entry);
+    }
+
+    /**
+     * The entry next(auto) would move to, without moving. auto means the current track
+     * finished by itself, which is when repeat-one applies.
+     */
+    public int peekNext(boolean auto) {
+        if (current == NO_ENTRY) {
+            return NO_ENTRY;
+        }
+        if (auto && repeatMode == REPEAT_ONE) {
+            return current;
+        }
+        if (shuffled) {
+            int entry = firstPresent(upNext);
+            if (entry == NO_ENTRY) {
+                entry = firstPresent(forward);
+            }
+            if (entry == NO_ENTRY) {
+                entry = reservedDraw();
+            }
+            return entry;
+        }
+        int position = currentPosition();
+        position = position < 0 ? detachedPosition : position + 1;
+        if (position < 0 || position >= size()) {
+            if (repeatMode == REPEAT_OFF || isEmpty()) {
+                return NO_ENTRY;
+            }
+            position = 0;
+        }
+        return entryAt(position);
+    }
+
+    /** Moves to the following entry in play order and returns it, or NO_ENTRY at the end. */
+    public int next(boolean auto) {
+        int entry = peekNext(auto);
+        if (entry == NO_ENTRY || entry == current) {
+            return entry;
+        }
+        if (!upNext.isEmpty() && upNext.peekFirst() == entry) {
+            upNext.pollFirst();
+        } else if (!forward.isEmpty() && forward.peekFirst() == entry) {
+            forward.pollFirst();
+        } else if (entry == reserved) {
+            reserved = NO_ENTRY;
+        }
+        makeCurrent(entry);
+        return entry;
+    }
+
+    /**
+     * Moves back: to the previously played entry when shuffled, to the preceding position
+     * otherwise. Returns NO_ENTRY if there is nothing to go back to.
+     */
+    public int previous() {
+        if (current == NO_ENTRY) {
+            return NO_ENTRY;
+        }
+        int entry;
+        if (shuffled) {
+            entry = NO_ENTRY;
+            while (!history.isEmpty() && entry == NO_ENTRY) {
+                int candidate = history.pollLast();
+                entry = positionOf(candidate) >= 0 ? candidate : NO_ENTRY;
+            }
+            if (entry == NO_ENTRY) {
+                return NO_ENTRY;
+            }
+            forward.addFirst(current);
+        } else {
+            int position = currentPosition();
+            position = (position < 0 ? detachedPosition : position) - 1;
+            if (position < 0) {
+                if (repeatMode == REPEAT_OFF || isEmpty()) {
+                    return NO_ENTRY;
+                }
+                position = size() - 1;
+            }
+            entry = entryAt(position);
+            history.addLast(current);
+            trimHistory();
+        }
+        current = entry;
+        detachedPosition = -1;
+        return entry;
+    }
+
+    public int getRepeatMode() {
+        return repeatMode;
+    }
+
+    public void setRepeatMode(int repeatMode) {
+        this.repeatMode = repeatMode;
+    }
+
+    public boolean isShuffled() {
+        return shuffled;
+    }
+
+    /** Turning shuffle on starts a fresh permutation from the current entry. */
+    public void setShuffled(boolean shuffled) {
+        if (this.shuffled != shuffled) {
+            this.shuffled = shuffled;
+            resetPlayOrder();
+        }
+    }
+
+    // --- Internals ---
+
+    private int currentPosition() {
+        return current == NO_ENTRY ? -1 : positionOf(current);
+    }
+
+    private void makeCurrent(int entry) {
+        if (current != NO_ENTRY) {
+            history.addLast(current);
+            trimHistory();
+        }
+        current = entry;
+        detachedPosition = -1;
+    }
+
+    private void trimHistory() {
+        while (history.size() > HISTORY_LIMIT) {
+            history.pollFirst();
+        }
+    }
+
+    private void resetPlayOrder() {
+        startRound();
+        reserved = NO_ENTRY;
+        upNext.clear();
+        forward.clear();
+    }
+
+    /** Drops removed entries from the head of the deque and returns the first one left. */
+    private int firstPresent(ArrayDeque<Integer> entries) {
+        for (Iterator<Integer> it = entries.iterator(); it.hasNext(); ) {
+            int entry = it.next();
+            if (positionOf(entry) >= 0 && entry != current) {
+                return entry;
+            }
+            it.remove();
+        }
+        return NO_ENTRY;
+    }
+
+    private int reservedDraw() {
+        if (reserved != NO_ENTRY && positionOf(reserved) >= 0) {
+            return reserved;
+        }
+        reserved = draw();
+        if (reserved == NO_ENTRY && repeatMode != REPEAT_OFF) {
+            // Every entry has been played once: start another round.
+            startRound();
+            reserved = draw();
+        }
+        return reserved;
+    }
+
+    /** Restarts the permutation with the current entry already drawn, so a round plays it only once. */
+    private void startRound() {
+        displaced.clear();
+        drawn = 0;
+        if (current != NO_ENTRY) {
+            displaced.put(current, 0);
+            drawn = 1;
+        }
+    }
+
+    /** One lazy Fisher-Yates step over all entry ids, skipping removed ones and the current one. */
+    private int draw() {
+        int total = base.size() + added.size();
+        while (drawn < total) {
+            int pick = drawn + random.nextInt(total - drawn);
+            int entry = slot(pick);
+            displaced.put(pick, slot(drawn));
+            displaced.remove(drawn); // Slots behind the cursor are never read again.
+            drawn++;
+            if (entry != current && positionOf(entry) >= 0) {
+                return entry;
+            }
+        }
+        return NO_ENTRY;
+    }
+
+    private int slot(int index) {
+        Integer value = displaced.get(index);
+        return value == null ? index : value;
+    }
+
+    // --- Treap of id runs ---
+
+    /** A run of consecutive entry ids [firstId, endId) that sit next to each other in list order. */
+    private static final class Run {
+        int firstId;
+        int endId;
+        final int priority;
+        int count; // items in this subtree
+        Run left;
+        Run right;
+        Run parent;
+
+        Run(int firstId, int endId, int priority) {
+            this.firstId = firstId;
+            this.endId = endId;
+            this.priority = priority;
+            this.count = endId - firstId;
+        }
+
+        int length() {
+            return endId - firstId;
+        }
+    }
+
+    private Run newRun(int firstId, int endId, int priority) {
+        Run run = new Run(firstId, endId, priority);
+        runsByFirstId.put(firstId, run);
+        return run;
+    }
+
+    private static int count(Run run) {
+        return run == null ? 0 : run.count;
+    }
+
+    private static void update(Run run) {
+        run.count = count(run.left) + count(run.right) + run.length();
+        if (run.left != null) run.left.parent = run;
+        if (run.right != null) run.right.parent = run;
+    }
+
+    private void insertEntry(int position, int entry) {
+        Run[] parts = split(root, position);
+        root = merge(merge(parts[0], newRun(entry, entry + 1, random.nextInt())), parts[1]);
+        root.parent = null;
+        version++;
+    }
+
+    private int removeEntry(int position) {
+        if (position < 0 || position >= size()) {
+            throw new IndexOutOfBoundsException("Position: " + position + ", size: " + size());
+        }
+        Run[] head = split(root, position);
+        Run[] tail = split(head[1], 1);
+        Run removed = tail[0]; // a single-item run
+        runsByFirstId.remove(removed.firstId);
+        root = merge(head[0], tail[1]);
+        if (root != null) {
+            root.parent = null;
+        }
+        version++;
+        return removed.firstId;
+    }
+
+    /** Splits into the first k items and the rest, cutting a run in two where needed. */
+    private Run[] split(Run run, int k) {
+        if (run == null) {
+            return new Run[]{null, null};
+        }
+        int leftCount = count(run.left);
+        if (k <= leftCount) {
+            Run[] parts = split(run.left, k);
+            run.left = parts[1];
+            update(run);
+            if (parts[0] != null) parts[0].parent = null;
+            return new Run[]{parts[0], run};
+        }
+        if (k >= leftCount + run.length()) {
+            Run[] parts = split(run.right, k - leftCount - run.length());
+            run.right = parts[0];
+            update(run);
+            if (parts[1] != null) parts[1].parent = null;
+            return new Run[]{run, parts[1]};
+        }
+        // The cut falls inside this run: the tail becomes its own node, inheriting the right subtree.
+        int cut = run.firstId + k - leftCount;
+        Run tail = newRun(cut, run.endId, run.priority);
+        run.endId = cut;
+        tail.right = run.right;
+        run.right = null;
+        update(run);
+        update(tail);
+        tail.parent = null;
+        return new Run[]{run, tail};
+    }
+
+    private static Run merge(Run a, Run b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority >= b.priority) {
+            a.right = merge(a.right, b);
+            update(a);
+            return a;
+        }
+        b.left = merge(a, b.left);
+        update(b);
+        return b;
+    }
+}
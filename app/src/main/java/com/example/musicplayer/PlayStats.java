@@ -0,0 +1,137 @@
+package com.example.musicplayer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Per-song play counters, with the songs kept ordered by play count and by last play, so
+ * "most played" and "recently played" read the first n entries of an index instead of
+ * scanning every song. An update is O(log n). Entries are immutable and replaced on every
+ * update, so a snapshot of them can be read outside whatever lock guards the stats. Not
+ * thread-safe.
+ */
+public final class PlayStats {
+
+    public static final int EVENT_PLAYED = 1;
+    public static final int EVENT_COMPLETED = 2;
+    public static final int EVENT_SKIPPED = 3;
+
+    public static final class Entry {
+        private final long songId;
+        private final int plays;
+        private final int completions;
+        private final int skips;
+        private final long lastPlayedMs;
+
+        Entry(long songId, int plays, int completions, int skips, long lastPlayedMs) {
+            this.songId = songId;
+            this.plays = plays;
+            this.completions = completions;
+            this.skips = skips;
+            this.lastPlayedMs = lastPlayedMs;
+        }
+
+        public long getSongId() { return songId; }
+        /** Times the song started playing. */
+        public int getPlays() { return plays; }
+        /** Times it played to the end. */
+        public int getCompletions() { return completions; }
+        /** Times the user skipped away from it. */
+        public int getSkips() { return skips; }
+        /** Wall-clock time of the latest play, or 0 if never played. */
+        public long getLastPlayedMs() { return lastPlayedMs; }
+
+        /** Share of plays that ended in a skip. */
+        public float getSkipRate() {
+            return plays == 0 ? 0f : Math.min(1f, skips / (float) plays);
+        }
+    }
+
+    private static final Comparator<Entry> MOST_PLAYED = (a, b) -> {
+        if (a.plays != b.plays) {
+            return a.plays > b.plays ? -1 : 1;
+        }
+        if (a.lastPlayedMs != b.lastPlayedMs) {
+            return a.lastPlayedMs > b.lastPlayedMs ? -1 : 1;
+        }
+        return Long.compare(a.songId, b.songId);
+    };
+
+    private static final Comparator<Entry> RECENTLY_PLAYED = (a, b) -> {
+        if (a.lastPlayedMs != b.lastPlayedMs) {
+            return a.lastPlayedMs > b.lastPlayedMs ? -1 : 1;
+        }
+        return Long.compare(a.songId, b.songId);
+    };
+
+    private final HashMap<Long, Entry> entries = new HashMap<>();
+    // Both indexes hold only songs that have been played.
+    private final TreeSet<Entry> byPlays = new TreeSet<>(MOST_PLAYED);
+    private final TreeSet<Entry> byLastPlayed = new TreeSet<>(RECENTLY_PLAYED);
+
+    /** Counts one event (EVENT_PLAYED, EVENT_COMPLETED or EVENT_SKIPPED) that happened at timeMs. */
+    public void apply(long songId, int event, long timeMs) {
+        switch (event) {
+            case EVENT_PLAYED: add(songId, 1, 0, 0, timeMs); break;
+            case EVENT_COMPLETED: add(songId, 0, 1, 0, 0); break;
+            case EVENT_SKIPPED: add(songId, 0, 0, 1, 0); break;
+            default: break; // From a newer version; ignored.
+        }
+    }
+
+    /** Adds to a song's counters and moves its last play forward; also how compacted counters are read back. */
+    public void add(long songId, int plays, int completions, int skips, long lastPlayedMs) {
+        Entry old = entries.get(songId);
+        Entry updated;
+        if (old == null) {
+            updated = new Entry(songId, plays, completions, skips, lastPlayedMs);
+        } else {
+            byPlays.remove(old);
+            byLastPlayed.remove(old);
+            updated = new Entry(songId, old.plays + plays, old.completions + completions, old.skips + skips,
+                    Math.max(old.lastPlayedMs, lastPlayedMs));
+        }
+        entries.put(songId, updated);
+        if (updated.plays > 0) {
+            byPlays.add(updated);
+            byLastPlayed.add(updated);
+        }
+    }
+
+    /** The song's counters, or null if nothing was ever recorded for it. */
+    public Entry get(long songId) {
+        return entries.get(songId);
+    }
+
+    /** Ids of up to n songs with the most plays, most played first; ties go to the more recent. */
+    public long[] mostPlayed(int n) {
+        return firstIds(byPlays, n);
+    }
+
+    /** Ids of up to n songs by their latest play, newest first. */
+    public long[] recentlyPlayed(int n) {
+        return firstIds(byLastPlayed, n);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /** Every entry, e.g. for writing them out; safe to read after the stats change again. */
+    public List<Entry> snapshot() {
+        return new ArrayList<>(entries.values());
+    }
+
+    private static long[] firstIds(TreeSet<Entry> index, int n) {
+        long[] ids = new long[Math.max(0, Math.min(n, index.size()))];
+        Iterator<Entry> iterator = index.iterator();
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = iterator.next().songId;
+        }
+        return ids;
+    }
+}
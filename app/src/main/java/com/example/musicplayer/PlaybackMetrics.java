@@ -0,0 +1,112 @@
+package com.example.musicplayer;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Start-latency histograms for each stage between a play request and audible output, plus
+ * MediaPlayer error counts keyed by what/extra. Recorded from MusicService's hot path and
+ * readable from any thread; toJson() is the machine-readable dump format.
+ */
+public final class PlaybackMetrics {
+
+    public enum Stage {
+        /** Play request (tap, skip or track end) until the playback thread picks it up. */
+        DISPATCH("dispatch"),
+        SET_DATA_SOURCE("set_data_source"),
+        /** prepareAsync() until onPrepared(). */
+        PREPARE("prepare"),
+        START("start"),
+        /** start() until the playback position first advances, i.e. audio is flowing. */
+        FIRST_AUDIO("first_audio"),
+        /** The whole path, play request to first audio; for skip bursts, includes the settle delay. */
+        REQUEST_TO_AUDIO("request_to_audio");
+
+        final String key;
+
+        Stage(String key) {
+            this.key = key;
+        }
+    }
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+    private final TreeMap<String, Integer> errorCounts = new TreeMap<>();
+
+    public PlaybackMetrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public void record(Stage stage, long nanos) {
+        histograms[stage.ordinal()].record(nanos / 1000);
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    public void recordError(int what, int extra) {
+        String key = what + "/" + extra;
+        synchronized (errorCounts) {
+            Integer count = errorCounts.get(key);
+            errorCounts.put(key, count == null ? 1 : count + 1);
+        }
+    }
+
+    /** Error counts keyed "what/extra". */
+    public Map<String, Integer> getErrorCounts() {
+        synchronized (errorCounts) {
+            return new TreeMap<>(errorCounts);
+        }
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        synchronized (errorCounts) {
+            errorCounts.clear();
+        }
+    }
+
+    /**
+     * One JSON object: per stage the count, mean, p50/p95/p99 and max in microseconds and the
+     * non-empty buckets as [upper bound, count] pairs; then the error counts.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder(1024).append("{\"unit\":\"us\",\"stages\":{");
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = getHistogram(stage);
+            if (stage.ordinal() > 0) {
+                json.append(',');
+            }
+            json.append('"').append(stage.key).append("\":{")
+                    .append("\"count\":").append(histogram.getCount())
+                    .append(",\"mean\":").append(histogram.getMeanMicros())
+                    .append(",\"p50\":").append(histogram.getPercentileMicros(50))
+                    .append(",\"p95\":").append(histogram.getPercentileMicros(95))
+                    .append(",\"p99\":").append(histogram.getPercentileMicros(99))
+                    .append(",\"max\":").append(histogram.getMaxMicros())
+                    .append(",\"buckets\":[");
+            long[][] buckets = histogram.getBuckets();
+            for (int i = 0; i < buckets.length; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append('[').append(buckets[i][0]).append(',').append(buckets[i][1]).append(']');
+            }
+            json.append("]}");
+        }
+        json.append("},\"errors\":{");
+        boolean first = true;
+        for (Map.Entry<String, Integer> error : getErrorCounts().entrySet()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append('"').append(error.getKey()).append("\":").append(error.getValue());
+        }
+        return json.append("}}").toString();
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.musicplayer;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Immutable snapshot of what MusicService is doing, published to listeners on every change.
+ * The position is stored together with the time it was sampled so that readers can
+ * extrapolate it instead of polling the player.
+ */
+public final class PlaybackState {
+
+    public enum Event {
+        TRACK_CHANGED,
+        PREPARED,
+        PLAY_STATE_CHANGED,
+        SEEK_COMPLETED,
+        QUEUE_CHANGED,
+        ERROR
+    }
+
+    public static final int STATE_IDLE = 0;
+    public static final int STATE_PREPARING = 1;
+    public static final int STATE_PLAYING = 2;
+    public static final int STATE_PAUSED = 3;
+    public static final int STATE_ERROR = 4;
+    /** Paused long enough that the player was torn down; resuming re-prepares at the same position. */
+    public static final int STATE_RELEASED = 5;
+
+    private final int state;
+    @Nullable private final Song song;
+    private final int queueIndex;
+    private final long positionMs;
+    private final long durationMs;
+    private final long updateTimeMs;
+
+    public PlaybackState(int state, @Nullable Song song, int queueIndex, long positionMs, long durationMs, long updateTimeMs) {
+        this.state = state;
+        this.song = song;
+        this.queueIndex = queueIndex;
+        this.positionMs = positionMs;
+        this.durationMs = durationMs;
+        this.updateTimeMs = updateTimeMs;
+    }
+
+    public int getState() { return state; }
+    @Nullable public Song getSong() { return song; }
+    public int getQueueIndex() { return queueIndex; }
+    public long getDurationMs() { return durationMs; }
+    /** elapsedRealtime() at which the position was sampled. */
+    public long getUpdateTimeMs() { return updateTimeMs; }
+
+    public boolean isPlaying() {
+        return state == STATE_PLAYING;
+    }
+
+    /** Position at the given elapsedRealtime(), extrapolated from the sample while playing. */
+    public long getPositionMs(long nowMs) {
+        if (state != STATE_PLAYING) {
+            return positionMs;
+        }
+        long position = positionMs + (nowMs - updateTimeMs);
+        return durationMs > 0 ? Math.min(position, durationMs) : position;
+    }
+}
@@ -1,23 +1,28 @@
 package com.example.musicplayer;
 
+import android.app.ActivityManager;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Paint;
-import android.media.MediaMetadataRetriever;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
 import android.media.audiofx.Visualizer;
-import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
-import android.view.View;
+import android.view.Choreographer;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
 import android.widget.ImageButton;
 import android.widget.ImageView;
 import android.widget.SeekBar;
@@ -28,8 +33,6 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 
-import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Locale;
 
 public class PlayerActivity extends AppCompatActivity {
@@ -37,18 +40,25 @@ public class PlayerActivity extends AppCompatActivity {
     private MusicService musicService;
     private boolean serviceBound = false;
     private Intent playIntent;
-    private ArrayList<Song> songList;
+    private long queueToken;
     private int currentPosition;
 
     // UI Elements
     private TextView titleTextView, artistTextView, currentTimeTextView, totalTimeTextView;
-    private SeekBar seekBar;
+    private WaveformSeekBar seekBar;
     private ImageButton playPauseButton, prevButton, nextButton;
     private ImageView albumArtImageView;
     private VisualizerView visualizerView;
 
+    private WaveformLoader.Ticket waveformTicket;
     private Visualizer visualizer;
+    private int visualizerSessionId = -1;
     private final Handler uiUpdateHandler = new Handler(Looper.getMainLooper());
+    private PlaybackState playbackState;
+    private boolean resumed;
+    private boolean userSeeking;
+    // Set when the art, waveform and visualizer were dropped under memory pressure; restored on resume.
+    private boolean trackViewsReleased;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -56,8 +66,8 @@ public class PlayerActivity extends AppCompatActivity {
         setContentView(R.layout.activity_player);
 
         // Retrieve intent extras
-        songList = (ArrayList<Song>) getIntent().getSerializableExtra("songs");
-        currentPosition = getIntent().getIntExtra("pos", 0);
+        queueToken = getIntent().getLongExtra(MusicRepository.EXTRA_QUEUE_TOKEN, 0);
+        currentPosition = getIntent().getIntExtra(MusicRepository.EXTRA_POSITION, 0);
 
         // Initialize UI components
         initViews();
@@ -87,8 +97,16 @@ public class PlayerActivity extends AppCompatActivity {
             MusicService.MusicBinder binder = (MusicService.MusicBinder) service;
             musicService = binder.getService();
             serviceBound = true;
+            if (musicService.getQueueToken() != queueToken && musicService.getCurrentSong() == null) {
+                // Service was recreated without a queue; pick up the one this screen was opened for.
+                // The token check keeps a queue the service already took, but hasn't published yet,
+                // from being started a second time.
+                musicService.playQueue(queueToken, currentPosition);
+            }
+            musicService.addPlaybackListener(playbackListener);
+            playbackState = musicService.getPlaybackState();
+            updateTrackInfo();
             updateUI(); // Initial UI update once service is connected
-            setupVisualizer();
         }
 
         @Override
@@ -114,7 +132,6 @@ public class PlayerActivity extends AppCompatActivity {
                 } else {
                     musicService.go();
                 }
-                updatePlayPauseButton();
             }
         });
 
@@ -130,88 +147,97 @@ public class PlayerActivity extends AppCompatActivity {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
                 if (fromUser && serviceBound) {
-                    musicService.seekTo(progress);
+                    // Coarse, coalesced seeks while dragging; the precise one happens on release.
+                    musicService.scrubTo(progress);
+                    currentTimeTextView.setText(formatTime(progress));
                 }
             }
             @Override
-            public void onStartTrackingTouch(SeekBar seekBar) {}
+            public void onStartTrackingTouch(SeekBar seekBar) {
+                userSeeking = true;
+            }
             @Override
-            public void onStopTrackingTouch(SeekBar seekBar) {}
+            public void onStopTrackingTouch(SeekBar seekBar) {
+                userSeeking = false;
+                if (serviceBound) {
+                    musicService.seekTo(seekBar.getProgress());
+                }
+            }
         });
     }
 
-    private final Runnable updateUIRunnable = new Runnable() {
-        @Override
-        public void run() {
-            if (serviceBound && musicService.isPlaying()) {
-                int current = musicService.getCurrentPosition();
-                seekBar.setProgress(current);
-                currentTimeTextView.setText(formatTime(current));
-            }
-            // Check if song has changed
-            if (serviceBound && musicService.getCurrentSong() != null && !titleTextView.getText().equals(musicService.getCurrentSong().getTitle())) {
-                updateUI();
-                setupVisualizer(); // Re-setup visualizer for the new song
-            }
-            uiUpdateHandler.postDelayed(this, 500); // Update twice a second
+    // --- Playback Events ---
+    private final MusicService.PlaybackListener playbackListener = (event, state) -> {
+        playbackState = state;
+        if (event == PlaybackState.Event.TRACK_CHANGED && !trackViewsReleased) {
+            updateTrackInfo();
         }
+        updateUI();
     };
 
-    private void updateUI() {
-        if (!serviceBound || musicService.getCurrentSong() == null) return;
-        Song currentSong = musicService.getCurrentSong();
+    // Redraws the position on whole-second boundaries while playing; the position itself
+    // is extrapolated from the last published state, so the service is never polled.
+    private final Runnable progressTicker = this::updateProgress;
+
+    private void updateTrackInfo() {
+        Song currentSong = playbackState.getSong();
+        if (currentSong == null) return;
         titleTextView.setText(currentSong.getTitle());
         artistTextView.setText(currentSong.getArtist());
-        int duration = musicService.getDuration();
-        seekBar.setMax(duration);
-        totalTimeTextView.setText(formatTime(duration));
-        updatePlayPauseButton();
+        AlbumArtLoader.getInstance(this).load(currentSong, albumArtImageView);
+        loadWaveform(currentSong);
 
+        if (musicService.getAudioSessionId() != visualizerSessionId) {
+            setupVisualizer();
+        }
+    }
 
-        loadAlbumArt(currentSong.getUriString());
+    private void loadWaveform(Song song) {
+        cancelWaveform();
+        seekBar.setWaveform(null);
+        waveformTicket = WaveformLoader.getInstance(this).load(song, seekBar::setWaveform);
+    }
 
-        // Start updating seekbar and time
-        uiUpdateHandler.post(updateUIRunnable);
+    private void cancelWaveform() {
+        if (waveformTicket != null) {
+            waveformTicket.cancel();
+            waveformTicket = null;
+        }
     }
 
-    private void updatePlayPauseButton() {
-        if (serviceBound) {
-            if (musicService.isPlaying()) {
-                playPauseButton.setImageResource(R.drawable.ic_pause);
-            } else {
-                playPauseButton.setImageResource(R.drawable.ic_play);
-            }
+    private void updateUI() {
+        if (playbackState == null) return;
+        int duration = (int) playbackState.getDurationMs();
+        seekBar.setMax(duration);
+        totalTimeTextView.setText(formatTime(duration));
+        updatePlayPauseButton();
+        updateProgress();
+    }
+
+    private void updateProgress() {
+        uiUpdateHandler.removeCallbacks(progressTicker);
+        if (playbackState == null) return;
+        long position = playbackState.getPositionMs(SystemClock.elapsedRealtime());
+        if (!userSeeking) {
+            seekBar.setProgress((int) position);
+            currentTimeTextView.setText(formatTime(position));
+        }
+        if (resumed && playbackState.isPlaying()) {
+            uiUpdateHandler.postDelayed(progressTicker, 1000 - position % 1000);
         }
     }
 
-    // Corrected loadAlbumArt to use URI
-    private void loadAlbumArt(String uriString) {
-        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
-        try {
-            Uri uri = Uri.parse(uriString);
-            retriever.setDataSource(this, uri);
-            byte[] art = retriever.getEmbeddedPicture();
-            if (art != null) {
-                Bitmap bitmap = BitmapFactory.decodeByteArray(art, 0, art.length);
-                albumArtImageView.setImageBitmap(bitmap);
-            } else {
-                albumArtImageView.setImageResource(R.drawable.ic_music_note);
-            }
-        } catch (Exception e) {
-            albumArtImageView.setImageResource(R.drawable.ic_music_note);
-            Log.e("PlayerActivity", "Error loading album art", e);
-        } finally {
-            try {
-                retriever.release();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+    private void updatePlayPauseButton() {
+        if (playbackState.isPlaying()) {
+            playPauseButton.setImageResource(R.drawable.ic_pause);
+        } else {
+            playPauseButton.setImageResource(R.drawable.ic_play);
         }
     }
 
-    private String formatTime(int ms) {
-        int seconds = (ms / 1000) % 60;
-        int minutes = (ms / (1000 * 60)) % 60;
+    private String formatTime(long ms) {
+        long seconds = (ms / 1000) % 60;
+        long minutes = (ms / (1000 * 60)) % 60;
         return String.format(Locale.getDefault(), "%d:%02d", minutes, seconds);
     }
 
@@ -222,18 +248,23 @@ public class PlayerActivity extends AppCompatActivity {
             if (audioSessionId != -1) {
                 releaseVisualizer(); // Release any existing instance
                 visualizer = new Visualizer(audioSessionId);
-                visualizer.setCaptureSize(Visualizer.getCaptureSizeRange()[1]);
+                visualizerSessionId = audioSessionId;
+                ActivityManager activityManager = (ActivityManager) getSystemService(ACTIVITY_SERVICE);
+                SpectrumAnalyzer.Quality quality = SpectrumAnalyzer.Quality.forDevice(
+                        activityManager.isLowRamDevice(), Runtime.getRuntime().availableProcessors());
+                visualizerView.setBandCount(quality.getBandCount());
+                visualizer.setCaptureSize(quality.getCaptureSize(Visualizer.getCaptureSizeRange()));
                 visualizer.setDataCaptureListener(
                         new Visualizer.OnDataCaptureListener() {
                             public void onWaveFormDataCapture(Visualizer visualizer, byte[] bytes, int samplingRate) {}
 
                             public void onFftDataCapture(Visualizer visualizer, byte[] bytes, int samplingRate) {
                                 if (visualizerView != null) {
-                                    visualizerView.updateVisualizer(bytes);
+                                    visualizerView.updateVisualizer(bytes, samplingRate);
                                 }
                             }
                         },
-                        Visualizer.getMaxCaptureRate() / 2, false, true);
+                        quality.getCaptureRate(Visualizer.getMaxCaptureRate()), false, true);
                 visualizer.setEnabled(true);
             }
         } catch (Exception e) {
@@ -242,10 +273,21 @@ public class PlayerActivity extends AppCompatActivity {
         }
     }
 
+    // Capturing costs CPU and the effect engine's buffers; there's nothing to draw while hidden.
+    private void setVisualizerEnabled(boolean enabled) {
+        if (visualizer == null) return;
+        try {
+            visualizer.setEnabled(enabled);
+        } catch (IllegalStateException e) {
+            Log.w("Visualizer", "Could not " + (enabled ? "enable" : "disable") + " visualizer", e);
+        }
+    }
+
     private void releaseVisualizer() {
         if (visualizer != null) {
             visualizer.release();
             visualizer = null;
+            visualizerSessionId = -1;
         }
     }
 
@@ -253,21 +295,44 @@ public class PlayerActivity extends AppCompatActivity {
     @Override
     protected void onPause() {
         super.onPause();
-        uiUpdateHandler.removeCallbacks(updateUIRunnable);
+        resumed = false;
+        uiUpdateHandler.removeCallbacks(progressTicker);
+        setVisualizerEnabled(false);
     }
 
     @Override
     protected void onResume() {
         super.onResume();
-        if (serviceBound) {
-            uiUpdateHandler.post(updateUIRunnable);
+        resumed = true;
+        if (trackViewsReleased && serviceBound && playbackState != null) {
+            trackViewsReleased = false;
+            updateTrackInfo(); // Reloads art and waveform and recreates the visualizer.
+        }
+        setVisualizerEnabled(true);
+        updateProgress();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // Once the screen is hidden, drop what it alone holds; MusicService trims the shared caches.
+        if (level >= TRIM_MEMORY_UI_HIDDEN && !trackViewsReleased) {
+            trackViewsReleased = true;
+            releaseVisualizer();
+            AlbumArtLoader.getInstance(this).cancel(albumArtImageView);
+            albumArtImageView.setImageDrawable(null);
+            cancelWaveform();
+            seekBar.setWaveform(null);
         }
     }
 
     @Override
     protected void onDestroy() {
+        AlbumArtLoader.getInstance(this).cancel(albumArtImageView);
+        cancelWaveform();
         releaseVisualizer();
         if (serviceBound) {
+            musicService.removePlaybackListener(playbackListener);
             unbindService(musicConnection);
             serviceBound = false;
         }
@@ -275,43 +340,193 @@ public class PlayerActivity extends AppCompatActivity {
     }
 
     // --- Custom Visualizer View (Inner Class) ---
-    public static class VisualizerView extends View {
-        private byte[] bytes;
+    // Drawn on its own render thread through a SurfaceView, paced by that thread's Choreographer,
+    // so FFT captures never cost the UI thread a frame. Captures only set the bars' targets;
+    // frames keep coming while the bars ease toward them, then stop until the next capture.
+    public static class VisualizerView extends SurfaceView implements SurfaceHolder.Callback {
+        private static final float PEAK_CAP_PX = 4f;
+        // Frame time assumed for the first frame after the bars settled.
+        private static final long NOMINAL_FRAME_NANOS = 16_666_667L;
+        private static final long MAX_FRAME_NANOS = 100_000_000L;
+
         private final Paint paint = new Paint();
+        private final Paint peakPaint = new Paint();
+        private final Object captureLock = new Object();
+        private final Object surfaceLock = new Object();
+
+        // Latest capture, written by the capture thread and consumed by the render thread.
+        private byte[] pendingBytes = new byte[0];
+        private int pendingLength;
+        private int pendingSamplingRate;
+        private boolean hasPending;
+        private boolean frameScheduled;
+        private int bandCount = SpectrumAnalyzer.Quality.MEDIUM.getBandCount();
+
+        // Render-thread state, reused every frame so the draw loop does not allocate.
+        private byte[] frameBytes = new byte[0];
+        private SpectrumAnalyzer analyzer;
+        private float[] lines = new float[0];
+        private float[] peakLines = new float[0];
+        private long lastFrameNanos;
+        // The current render thread's; every new surface gets a new thread, and with it a new one.
+        private Choreographer choreographer;
+
+        private HandlerThread renderThread;
+        private Handler renderHandler;
+        private boolean surfaceReady;
+        private int width;
+        private int height;
+
+        private final Choreographer.FrameCallback frameCallback = this::renderFrame;
+        private final Runnable scheduleFrame = () -> choreographer.postFrameCallback(frameCallback);
 
         public VisualizerView(Context context, @Nullable AttributeSet attrs) {
             super(context, attrs);
             paint.setColor(0xFFFFFFFF); // White bars
             paint.setStrokeWidth(8f);
+            peakPaint.setColor(0xB3FFFFFF);
+            peakPaint.setStrokeWidth(PEAK_CAP_PX);
+            setZOrderOnTop(true);
+            getHolder().setFormat(PixelFormat.TRANSLUCENT);
+            getHolder().addCallback(this);
+        }
+
+        /** Number of bars, from the visualizer's quality tier. */
+        public void setBandCount(int bandCount) {
+            synchronized (captureLock) {
+                this.bandCount = bandCount;
+            }
         }
 
-        public void updateVisualizer(byte[] bytes) {
-            this.bytes = bytes;
-            invalidate(); // Redraw the view
+        public void updateVisualizer(byte[] bytes, int samplingRate) {
+            synchronized (captureLock) {
+                if (pendingBytes.length < bytes.length) {
+                    pendingBytes = new byte[bytes.length];
+                }
+                System.arraycopy(bytes, 0, pendingBytes, 0, bytes.length);
+                pendingLength = bytes.length;
+                pendingSamplingRate = samplingRate;
+                hasPending = true;
+                // Several captures landing within one vsync are drawn once.
+                if (!frameScheduled && renderHandler != null) {
+                    frameScheduled = true;
+                    renderHandler.post(scheduleFrame);
+                }
+            }
         }
 
         @Override
-        protected void onDraw(@NonNull Canvas canvas) {
-            super.onDraw(canvas);
-            if (bytes == null) {
-                return;
+        public void surfaceCreated(@NonNull SurfaceHolder holder) {
+            renderThread = new HandlerThread("VisualizerRender", Process.THREAD_PRIORITY_DISPLAY);
+            renderThread.start();
+            synchronized (captureLock) {
+                renderHandler = new Handler(renderThread.getLooper());
+                // Runs before any scheduleFrame posted to the same handler.
+                renderHandler.post(() -> {
+                    choreographer = Choreographer.getInstance();
+                    lastFrameNanos = 0;
+                });
+                frameScheduled = false;
             }
+            synchronized (surfaceLock) {
+                surfaceReady = true;
+            }
+        }
+
+        @Override
+        public void surfaceChanged(@NonNull SurfaceHolder holder, int format, int width, int height) {
+            synchronized (surfaceLock) {
+                this.width = width;
+                this.height = height;
+                updateStrokeWidth();
+            }
+        }
 
-            int width = getWidth();
-            int height = getHeight();
-            int barCount = bytes.length / 4;
-            float barWidth = (float) width / barCount;
+        @Override
+        public void surfaceDestroyed(@NonNull SurfaceHolder holder) {
+            // Blocks until any frame in progress has been posted; nothing is drawn afterwards.
+            synchronized (surfaceLock) {
+                surfaceReady = false;
+            }
+            synchronized (captureLock) {
+                renderHandler = null;
+            }
+            renderThread.quitSafely();
+            renderThread = null;
+        }
 
-            for (int i = 0; i < barCount; i++) {
-                int byteIndex = i * 4;
-                float real = bytes[byteIndex];
-                float imag = bytes[byteIndex + 1];
-                float magnitude = (float) Math.hypot(real, imag);
-                float barHeight = (magnitude / 128) * height; // Scale to view height
+        private void renderFrame(long frameTimeNanos) {
+            int length = 0;
+            int samplingRate = 0;
+            boolean fresh;
+            int bands;
+            synchronized (captureLock) {
+                frameScheduled = false;
+                fresh = hasPending;
+                if (fresh) {
+                    if (frameBytes.length < pendingLength) {
+                        frameBytes = new byte[pendingLength];
+                    }
+                    System.arraycopy(pendingBytes, 0, frameBytes, 0, pendingLength);
+                    length = pendingLength;
+                    samplingRate = pendingSamplingRate;
+                    hasPending = false;
+                }
+                bands = bandCount;
+            }
+            if (analyzer == null || analyzer.getBandCount() != bands) {
+                analyzer = new SpectrumAnalyzer(bands);
+                lines = new float[SpectrumBars.lineFloats(bands)];
+                peakLines = new float[SpectrumBars.lineFloats(bands)];
+                synchronized (surfaceLock) {
+                    updateStrokeWidth();
+                }
+            }
+            if (fresh) {
+                analyzer.analyze(frameBytes, length, samplingRate);
+            }
+            long elapsedNanos = lastFrameNanos == 0 ? NOMINAL_FRAME_NANOS
+                    : Math.min(MAX_FRAME_NANOS, frameTimeNanos - lastFrameNanos);
+            boolean animating = analyzer.advance(elapsedNanos / 1_000_000f);
+            lastFrameNanos = animating ? frameTimeNanos : 0;
+            if (animating) {
+                synchronized (captureLock) {
+                    if (!frameScheduled) {
+                        frameScheduled = true;
+                        choreographer.postFrameCallback(frameCallback);
+                    }
+                }
+            }
 
-                float x = i * barWidth;
-                canvas.drawLine(x, height, x, height - barHeight, paint);
+            synchronized (surfaceLock) {
+                if (!surfaceReady) {
+                    return;
+                }
+                Canvas canvas = getHolder().lockCanvas();
+                if (canvas == null) {
+                    return;
+                }
+                try {
+                    canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+                    drawBars(canvas);
+                } finally {
+                    getHolder().unlockCanvasAndPost(canvas);
+                }
             }
         }
+
+        private void drawBars(Canvas canvas) {
+            int bands = analyzer.getBandCount();
+            int point = SpectrumBars.computeLines(analyzer.getLevels(), bands, width, height, lines);
+            canvas.drawLines(lines, 0, point, paint);
+            point = SpectrumBars.computePeakLines(analyzer.getPeaks(), bands, width, height, PEAK_CAP_PX, peakLines);
+            canvas.drawLines(peakLines, 0, point, peakPaint);
+        }
+
+        // Holding surfaceLock: bars fill 60% of their slot, whatever the width and bar count.
+        private void updateStrokeWidth() {
+            int bands = analyzer != null ? analyzer.getBandCount() : bandCount;
+            paint.setStrokeWidth(Math.max(1f, SpectrumBars.barSpacing(bands, width) * 0.6f));
+        }
     }
 }
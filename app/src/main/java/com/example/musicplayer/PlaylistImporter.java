@@ -0,0 +1,191 @@
+package com.example.musicplayer;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.provider.MediaStore;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Imports M3U/M3U8 and PLS playlists picked through the system file picker.
+ *
+ * The file is streamed through PlaylistParser and its entries are resolved in batches against
+ * a SongPathIndex built from a single MediaStore query, instead of a query per entry. Each
+ * resolved batch goes straight to a PlaylistStore.Writer, so a playlist of tens of thousands
+ * of entries imports in constant memory. Entries that match no song in the library are
+ * counted and dropped.
+ */
+public class PlaylistImporter {
+
+    public interface Callback {
+        /** Called on the main thread; missing is the number of entries that matched no song. */
+        void onImported(PlaylistStore.Playlist playlist, int missing);
+
+        /** Called on the main thread when the file could not be read or none of its entries matched. */
+        void onImportFailed(String message);
+    }
+
+    private static final String TAG = "PlaylistImporter";
+    private static final int BATCH_SIZE = 512;
+    private static final String SELECTION = MediaStore.Audio.Media.IS_MUSIC + "!= 0";
+    private static final String[] PATH_PROJECTION = {MediaStore.Audio.Media._ID, MediaStore.Audio.Media.DATA};
+
+    private final Context context;
+    private final ContentResolver contentResolver;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            r.run();
+        }, "PlaylistImporter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public PlaylistImporter(Context context) {
+        this.context = context.getApplicationContext();
+        this.contentResolver = this.context.getContentResolver();
+    }
+
+    /** Imports the playlist document in the background. Imports run one at a time, in order. */
+    public void importPlaylist(Uri uri, Callback callback) {
+        executor.execute(() -> {
+            PlaylistStore.Playlist playlist = null;
+            String error = null;
+            int[] missing = new int[1];
+            try {
+                playlist = importNow(uri, missing);
+                if (playlist == null) {
+                    error = "None of the playlist's songs are on this device.";
+                }
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Error importing playlist", e);
+                error = "Could not read the playlist.";
+            }
+            final PlaylistStore.Playlist imported = playlist;
+            final String message = error;
+            mainHandler.post(() -> {
+                if (imported != null) {
+                    callback.onImported(imported, missing[0]);
+                } else {
+                    callback.onImportFailed(message);
+                }
+            });
+        });
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // --- Import (background thread) ---
+
+    @Nullable
+    private PlaylistStore.Playlist importNow(Uri uri, int[] missing) throws IOException {
+        SongPathIndex paths = buildPathIndex();
+        PlaylistStore.Writer writer = PlaylistStore.getInstance(context).create(playlistName(uri));
+        try (InputStream in = contentResolver.openInputStream(uri)) {
+            if (in == null) {
+                throw new IOException("No content for " + uri);
+            }
+            // Legacy .m3u files may not be UTF-8; undecodable bytes become U+FFFD rather than failing the import.
+            InputStreamReader reader = new InputStreamReader(in, StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE));
+            Batch batch = new Batch(paths, writer);
+            PlaylistParser.parse(reader, batch::add);
+            batch.flush();
+            missing[0] = batch.missing;
+            return writer.size() == 0 ? null : writer.commit();
+        } finally {
+            writer.abort();
+        }
+    }
+
+    /** Every song's file path in one query, streamed into the index. */
+    private SongPathIndex buildPathIndex() {
+        try (Cursor cursor = contentResolver.query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, PATH_PROJECTION,
+                SELECTION, null, null)) {
+            SongPathIndex.Builder builder = new SongPathIndex.Builder(cursor == null ? 0 : cursor.getCount());
+            while (cursor != null && cursor.moveToNext()) {
+                builder.add(cursor.getLong(0), cursor.getString(1));
+            }
+            return builder.build();
+        }
+    }
+
+    /** The document's display name without its extension. */
+    private String playlistName(Uri uri) {
+        String name = null;
+        try (Cursor cursor = contentResolver.query(uri, new String[] {OpenableColumns.DISPLAY_NAME},
+                null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                name = cursor.getString(0);
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "No display name for " + uri, e);
+        }
+        if (name == null) {
+            name = uri.getLastPathSegment();
+        }
+        if (name == null || name.isEmpty()) {
+            return "Playlist";
+        }
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    /** Resolves entries BATCH_SIZE at a time and appends the matches to the writer. */
+    private static final class Batch {
+        private final SongPathIndex paths;
+        private final PlaylistStore.Writer writer;
+        private final String[] locations = new String[BATCH_SIZE];
+        private final long[] ids = new long[BATCH_SIZE];
+        private int count;
+        int missing;
+
+        Batch(SongPathIndex paths, PlaylistStore.Writer writer) {
+            this.paths = paths;
+            this.writer = writer;
+        }
+
+        void add(String location) throws IOException {
+            locations[count++] = location;
+            if (count == BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            int resolved = 0;
+            for (int i = 0; i < count; i++) {
+                long id = paths.resolve(locations[i]);
+                locations[i] = null;
+                if (id == SongPathIndex.NO_SONG) {
+                    missing++;
+                } else {
+                    ids[resolved++] = id;
+                }
+            }
+            count = 0;
+            if (resolved > 0) {
+                writer.append(ids, resolved);
+            }
+        }
+    }
+}
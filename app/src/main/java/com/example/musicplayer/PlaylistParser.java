@@ -0,0 +1,80 @@
+package com.example.musicplayer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streams the entries out of an M3U/M3U8 or PLS playlist, a line at a time, so memory stays
+ * constant however long the playlist is. Entries are handed over as written (paths, file
+ * URLs or content URIs); resolving them to songs is up to the caller, see SongPathIndex.
+ */
+public final class PlaylistParser {
+
+    public interface Handler {
+        void onEntry(String location) throws IOException;
+    }
+
+    private static final String PLS_HEADER = "[playlist]";
+
+    private PlaylistParser() {}
+
+    /**
+     * Reads the playlist to the end, telling the handler about every entry in order, and
+     * returns how many there were. The format is told from the content: PLS files open with
+     * a [playlist] section, anything else is read as M3U, with or without #EXTM3U.
+     */
+    public static int parse(Reader reader, Handler handler) throws IOException {
+        BufferedReader lines = reader instanceof BufferedReader
+                ? (BufferedReader) reader : new BufferedReader(reader, 16 * 1024);
+        int entries = 0;
+        boolean first = true;
+        boolean pls = false;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (first && !line.isEmpty() && line.charAt(0) == '\uFEFF') {
+                line = line.substring(1); // UTF-8 byte order mark
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (first) {
+                first = false;
+                if (line.equalsIgnoreCase(PLS_HEADER)) {
+                    pls = true;
+                    continue;
+                }
+            }
+            String location = pls ? plsLocation(line) : m3uLocation(line);
+            if (location != null && !location.isEmpty()) {
+                handler.onEntry(location);
+                entries++;
+            }
+        }
+        return entries;
+    }
+
+    // #EXTM3U, #EXTINF and other directives and comments all start with '#'.
+    private static String m3uLocation(String line) {
+        return line.charAt(0) == '#' ? null : line;
+    }
+
+    // FileN=location; TitleN, LengthN, NumberOfEntries and Version are not needed.
+    private static String plsLocation(String line) {
+        int equals = line.indexOf('=');
+        if (equals < 5 || !line.regionMatches(true, 0, "File", 0, 4)) {
+            return null;
+        }
+        String number = line.substring(4, equals).trim();
+        if (number.isEmpty()) {
+            return null;
+        }
+        for (int i = 0; i < number.length(); i++) {
+            if (!Character.isDigit(number.charAt(i))) {
+                return null;
+            }
+        }
+        return line.substring(equals + 1).trim();
+    }
+}
@@ -0,0 +1,345 @@
+package com.example.musicplayer;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Saved playlists, each as a flat file of song ids, plus an index file with their names and
+ * sizes.
+ *
+ * A playlist is written through a Writer in batches straight to a temp file, so an import
+ * never holds the whole playlist in memory, and becomes visible only on commit(): the file is
+ * synced and renamed into place, then the index is rewritten the same way. A crash at any
+ * point leaves the previous state; files the index doesn't know are cleaned up on the next
+ * start. If the index itself is missing or unreadable, no playlist is deleted: the index is
+ * rebuilt from the playlist files, under placeholder names. Reading a playlist back is one
+ * read of 8 bytes per song. Songs are stored by id only, so one deleted from the library
+ * simply drops out when the playlist is next loaded.
+ * Thread-safe; everything here is blocking I/O, so call it off the main thread.
+ */
+public final class PlaylistStore {
+
+    public static final class Playlist {
+        private final long id;
+        private final String name;
+        private final int size;
+
+        Playlist(long id, String name, int size) {
+            this.id = id;
+            this.name = name;
+            this.size = size;
+        }
+
+        public long getId() { return id; }
+        public String getName() { return name; }
+        /** Songs stored, including any no longer in the library. */
+        public int getSize() { return size; }
+    }
+
+    private static final String TAG = "PlaylistStore";
+    private static final String DIRECTORY = "playlists";
+    private static final String INDEX_FILE = "index";
+    private static final String IDS_SUFFIX = ".ids";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final int INDEX_MAGIC = 0x4d50504c; // "MPPL"
+    private static final int IDS_MAGIC = 0x4d505049; // "MPPI"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    // Ids per write; a batch is one syscall.
+    private static final int BATCH_IDS = 1024;
+    // Well within writeUTF()'s 64 KB.
+    private static final int MAX_NAME_LENGTH = 200;
+
+    private static PlaylistStore instance;
+
+    private final File directory;
+    // Guarded by this; read from disk on first use.
+    private List<Playlist> playlists;
+    private long nextId = 1;
+
+    public static synchronized PlaylistStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new PlaylistStore(new File(context.getApplicationContext().getFilesDir(), DIRECTORY));
+        }
+        return instance;
+    }
+
+    /** Keeps everything in directory, which is created on the first write. */
+    PlaylistStore(File directory) {
+        this.directory = directory;
+    }
+
+    /** Saved playlists, oldest first. */
+    public synchronized List<Playlist> getPlaylists() {
+        ensureLoaded();
+        return Collections.unmodifiableList(new ArrayList<>(playlists));
+    }
+
+    /** The playlist's song ids, in order. */
+    public long[] readIds(long playlistId) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(idsFile(playlistId), "r");
+             FileChannel channel = raf.getChannel()) {
+            long length = channel.size();
+            if (length < HEADER_BYTES || (length - HEADER_BYTES) % 8 != 0 || length > Integer.MAX_VALUE) {
+                throw new IOException("Corrupt playlist " + playlistId);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Truncated playlist " + playlistId);
+                }
+            }
+            buffer.flip();
+            if (buffer.getInt() != IDS_MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Corrupt playlist " + playlistId);
+            }
+            long[] ids = new long[(int) ((length - HEADER_BYTES) / 8)];
+            buffer.asLongBuffer().get(ids);
+            return ids;
+        }
+    }
+
+    /** Starts a new playlist; nothing is visible until the writer commits. */
+    public Writer create(String name) throws IOException {
+        long id;
+        synchronized (this) {
+            ensureLoaded();
+            id = nextId++;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        return new Writer(id, name.length() > MAX_NAME_LENGTH ? name.substring(0, MAX_NAME_LENGTH) : name);
+    }
+
+    /** Appends ids to a playlist being created. Not thread-safe. */
+    public final class Writer {
+        private final long id;
+        private final String name;
+        private final File tmp;
+        private final FileOutputStream out;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BATCH_IDS * 8);
+        private int size;
+        private boolean closed;
+
+        private Writer(long id, String name) throws IOException {
+            this.id = id;
+            this.name = name;
+            tmp = new File(directory, id + IDS_SUFFIX + TMP_SUFFIX);
+            out = new FileOutputStream(tmp);
+            channel = out.getChannel();
+            buffer.putInt(IDS_MAGIC).putInt(VERSION);
+            flush();
+        }
+
+        public void append(long[] ids, int count) throws IOException {
+            for (int i = 0; i < count; i++) {
+                buffer.putLong(ids[i]);
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+            }
+            flush();
+            size += count;
+        }
+
+        /** Number of ids appended so far. */
+        public int size() {
+            return size;
+        }
+
+        /** Makes the playlist durable and visible, and returns it. */
+        public Playlist commit() throws IOException {
+            File file = idsFile(id);
+            try {
+                channel.force(true);
+                out.close();
+                closed = true;
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("Cannot replace " + file);
+                }
+                Playlist playlist = new Playlist(id, name, size);
+                synchronized (PlaylistStore.this) {
+                    playlists.add(playlist);
+                    try {
+                        writeIndex();
+                    } catch (IOException e) {
+                        playlists.remove(playlist);
+                        file.delete();
+                        throw e;
+                    }
+                }
+                return playlist;
+            } finally {
+                abort();
+            }
+        }
+
+        /** Drops the playlist; a no-op after commit(). */
+        public void abort() {
+            if (!closed) {
+                closed = true;
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                    // Deleted anyway.
+                }
+            }
+            tmp.delete();
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    // --- Index ---
+
+    // Holding this.
+    private void ensureLoaded() {
+        if (playlists != null) {
+            return;
+        }
+        playlists = new ArrayList<>();
+        File index = new File(directory, INDEX_FILE);
+        boolean indexRead = false;
+        if (index.isFile()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)))) {
+                if (in.readInt() == INDEX_MAGIC && in.readInt() == VERSION) {
+                    nextId = in.readLong();
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        long id = in.readLong();
+                        int size = in.readInt();
+                        playlists.add(new Playlist(id, in.readUTF(), size));
+                    }
+                    indexRead = true;
+                } else {
+                    Log.w(TAG, "Unknown playlist index format");
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Could not read playlist index", e);
+                playlists.clear();
+                nextId = 1;
+            }
+        }
+        if (indexRead) {
+            removeStrayFiles();
+        } else {
+            recoverPlaylists();
+        }
+    }
+
+    /** Deletes temp files and playlists that never made it into the index; only once the index was read. */
+    private void removeStrayFiles() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Set<String> known = new HashSet<>();
+        known.add(INDEX_FILE);
+        for (Playlist playlist : playlists) {
+            known.add(playlist.getId() + IDS_SUFFIX);
+        }
+        for (File file : files) {
+            if (!known.contains(file.getName())) {
+                file.delete();
+            }
+        }
+    }
+
+    /** Without a readable index: lists every playlist file under a placeholder name and writes a new index. */
+    private void recoverPlaylists() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TMP_SUFFIX)) {
+                file.delete();
+                continue;
+            }
+            long id = parseId(name);
+            long length = file.length();
+            if (id <= 0 || length < HEADER_BYTES || (length - HEADER_BYTES) % 8 != 0) {
+                continue; // Not ours to judge; left alone.
+            }
+            int size = (int) Math.min((length - HEADER_BYTES) / 8, Integer.MAX_VALUE);
+            playlists.add(new Playlist(id, "Playlist " + id, size));
+            nextId = Math.max(nextId, id + 1);
+        }
+        if (playlists.isEmpty()) {
+            return;
+        }
+        Collections.sort(playlists, (a, b) -> Long.compare(a.getId(), b.getId()));
+        Log.w(TAG, "Rebuilt the playlist index from " + playlists.size() + " playlist files");
+        try {
+            writeIndex();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write the rebuilt playlist index", e);
+        }
+    }
+
+    /** The playlist id of an "<id>.ids" file name, or -1. */
+    private static long parseId(String fileName) {
+        if (!fileName.endsWith(IDS_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(fileName.substring(0, fileName.length() - IDS_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Holding this. Temp file and rename, like the playlists themselves.
+    private void writeIndex() throws IOException {
+        File index = new File(directory, INDEX_FILE);
+        File tmp = new File(directory, INDEX_FILE + TMP_SUFFIX);
+        try (FileOutputStream file = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(nextId);
+            out.writeInt(playlists.size());
+            for (Playlist playlist : playlists) {
+                out.writeLong(playlist.getId());
+                out.writeInt(playlist.getSize());
+                out.writeUTF(playlist.getName());
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        if (!tmp.renameTo(index)) {
+            tmp.delete();
+            throw new IOException("Cannot replace " + index);
+        }
+    }
+
+    private File idsFile(long playlistId) {
+        return new File(directory, playlistId + IDS_SUFFIX);
+    }
+}
@@ -0,0 +1,270 @@
+package com.example.musicplayer;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The playback session MusicService resumes after its process was killed: the queue, where
+ * in it playback was, and the play modes.
+ *
+ * The queue is kept in LibrarySnapshot's format, metadata included, so it can be restored
+ * before the library is loaded, and is only rewritten when the queue itself changes. The
+ * state (position, play state, modes) goes in a file of a few bytes that names the queue
+ * version it belongs to. Updates only record the latest values; a background thread writes
+ * whatever is pending once per WRITE_DELAY_MS at most, so a burst of skips or seeks costs
+ * one write. Both files are replaced via temp file and rename. Thread-safe.
+ */
+public final class SessionStore {
+
+    /** A restored session. */
+    public static final class Session {
+        private final List<Song> songs;
+        private final int index;
+        private final int positionMs;
+        private final boolean playing;
+        private final boolean shuffled;
+        private final int repeatMode;
+
+        Session(List<Song> songs, int index, int positionMs, boolean playing, boolean shuffled, int repeatMode) {
+            this.songs = songs;
+            this.index = index;
+            this.positionMs = positionMs;
+            this.playing = playing;
+            this.shuffled = shuffled;
+            this.repeatMode = repeatMode;
+        }
+
+        /** The queue in list order; never empty. */
+        public List<Song> getSongs() { return songs; }
+        /** Position of the current song in the queue. */
+        public int getIndex() { return index; }
+        /** Where in the current song playback was. */
+        public int getPositionMs() { return positionMs; }
+        /** Whether it was playing, rather than paused, when last saved. */
+        public boolean isPlaying() { return playing; }
+        public boolean isShuffled() { return shuffled; }
+        /** One of PlayQueue's repeat modes. */
+        public int getRepeatMode() { return repeatMode; }
+    }
+
+    public interface Callback {
+        /** Called on a background thread with the saved session, or null if there is none. */
+        void onRestored(@Nullable Session session);
+    }
+
+    private static final String TAG = "SessionStore";
+    private static final String QUEUE_FILE = "session_queue";
+    private static final String STATE_FILE = "session_state";
+    private static final int STATE_MAGIC = 0x4d505353; // "MPSS"
+    private static final int VERSION = 1;
+    private static final long WRITE_DELAY_MS = 1000;
+
+    private static SessionStore instance;
+
+    private final File queueFile;
+    private final File stateFile;
+    private final ScheduledExecutorService executor;
+
+    // Guarded by this: the latest values not written yet.
+    private List<Song> pendingSongs;
+    private boolean statePending;
+    private int index;
+    private int positionMs;
+    private boolean playing;
+    private boolean shuffled;
+    private int repeatMode;
+    private boolean writeScheduled;
+
+    // Background thread.
+    private long queueVersion;
+
+    public static synchronized SessionStore getInstance(Context context) {
+        if (instance == null) {
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }, "SessionStore");
+                thread.setDaemon(true);
+                return thread;
+            });
+            instance = new SessionStore(context.getApplicationContext().getFilesDir(), executor);
+        }
+        return instance;
+    }
+
+    /** All file access runs on the executor, which must be single-threaded. */
+    SessionStore(File directory, ScheduledExecutorService executor) {
+        queueFile = new File(directory, QUEUE_FILE);
+        stateFile = new File(directory, STATE_FILE);
+        this.executor = executor;
+        executor.execute(this::readQueueVersion);
+    }
+
+    /** Reads the saved session, including anything still pending, and hands it to the callback. */
+    public void restore(Callback callback) {
+        executor.execute(() -> {
+            write();
+            callback.onRestored(read());
+        });
+    }
+
+    /**
+     * Records a new queue, e.g. on playback thread edits. The list must not change afterwards;
+     * PlayQueue.songs() qualifies. Never blocks on I/O.
+     */
+    public void saveQueue(List<Song> songs) {
+        synchronized (this) {
+            pendingSongs = songs;
+            scheduleWrite();
+        }
+    }
+
+    /** Records where playback is; index is a position in the last saved queue. Never blocks on I/O. */
+    public void saveState(int index, int positionMs, boolean playing, boolean shuffled, int repeatMode) {
+        synchronized (this) {
+            this.index = index;
+            this.positionMs = positionMs;
+            this.playing = playing;
+            this.shuffled = shuffled;
+            this.repeatMode = repeatMode;
+            statePending = true;
+            scheduleWrite();
+        }
+    }
+
+    /** Writes pending changes now, e.g. when the service is going away. */
+    public void flush() {
+        executor.execute(this::write);
+    }
+
+    // Holding this.
+    private void scheduleWrite() {
+        if (!writeScheduled) {
+            writeScheduled = true;
+            executor.schedule(this::write, WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // --- Background thread ---
+
+    private void readQueueVersion() {
+        LibrarySnapshot.Reader reader = LibrarySnapshot.open(queueFile);
+        if (reader != null) {
+            queueVersion = reader.getGeneration();
+        }
+    }
+
+    @Nullable
+    private Session read() {
+        LibrarySnapshot.Reader reader = LibrarySnapshot.open(queueFile);
+        if (reader == null || reader.getCount() == 0) {
+            return null;
+        }
+        SongStore.Builder builder = new SongStore.Builder(reader.getCount());
+        while (reader.moveToNext()) {
+            builder.add(reader.getId(), reader.getTitle(), reader.getArtist(), reader.getAlbum(),
+                    reader.getAlbumId(), reader.getDurationMs(), reader.getTrackNumber(),
+                    reader.getDateAdded(), reader.getDateModified());
+        }
+        SongStore songs = builder.build();
+        if (songs.size() != reader.getCount()) {
+            Log.w(TAG, "Saved queue is truncated; not restoring it");
+            return null;
+        }
+        int savedIndex = 0;
+        int savedPositionMs = 0;
+        boolean savedPlaying = false;
+        boolean savedShuffled = false;
+        int savedRepeatMode = PlayQueue.REPEAT_ALL;
+        if (stateFile.isFile()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(stateFile)))) {
+                if (in.readInt() == STATE_MAGIC && in.readInt() == VERSION) {
+                    long stateQueueVersion = in.readLong();
+                    int stateIndex = in.readInt();
+                    int statePositionMs = in.readInt();
+                    savedPlaying = in.readBoolean();
+                    savedShuffled = in.readBoolean();
+                    savedRepeatMode = in.readInt();
+                    // A state saved for an older queue (the process died in between) only keeps the modes.
+                    if (stateQueueVersion == reader.getGeneration() && stateIndex >= 0 && stateIndex < songs.size()) {
+                        savedIndex = stateIndex;
+                        savedPositionMs = Math.max(0, statePositionMs);
+                    }
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Could not read session state", e);
+            }
+        }
+        return new Session(songs, savedIndex, savedPositionMs, savedPlaying, savedShuffled, savedRepeatMode);
+    }
+
+    private void write() {
+        List<Song> songs;
+        boolean writeState;
+        int savedIndex;
+        int savedPositionMs;
+        boolean savedPlaying;
+        boolean savedShuffled;
+        int savedRepeatMode;
+        synchronized (this) {
+            writeScheduled = false;
+            songs = pendingSongs;
+            pendingSongs = null;
+            writeState = statePending || songs != null;
+            statePending = false;
+            savedIndex = index;
+            savedPositionMs = positionMs;
+            savedPlaying = playing;
+            savedShuffled = shuffled;
+            savedRepeatMode = repeatMode;
+        }
+        try {
+            if (songs != null) {
+                // Bumped first: if the write fails, the state below won't match the old queue left on disk.
+                queueVersion++;
+                LibrarySnapshot.write(queueFile, queueVersion, songs);
+            }
+            if (writeState) {
+                writeState(savedIndex, savedPositionMs, savedPlaying, savedShuffled, savedRepeatMode);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not save playback session", e);
+        }
+    }
+
+    private void writeState(int savedIndex, int savedPositionMs, boolean savedPlaying, boolean savedShuffled,
+                            int savedRepeatMode) throws IOException {
+        File tmp = new File(stateFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(STATE_MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(queueVersion);
+            out.writeInt(savedIndex);
+            out.writeInt(savedPositionMs);
+            out.writeBoolean(savedPlaying);
+            out.writeBoolean(savedShuffled);
+            out.writeInt(savedRepeatMode);
+        }
+        if (!tmp.renameTo(stateFile)) {
+            tmp.delete();
+            throw new IOException("Cannot replace " + stateFile);
+        }
+    }
+}
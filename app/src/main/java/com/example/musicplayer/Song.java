@@ -2,22 +2,73 @@
 package com.example.musicplayer;
 
 import java.io.Serializable;
+import java.util.Comparator;
 
 public class Song implements Serializable {
+    // MediaStore.Audio.Media.EXTERNAL_CONTENT_URI; spelled out so this class stays Android-free.
+    private static final String CONTENT_URI_PREFIX = "content://media/external/audio/media/";
+
+    /** Case-insensitive title order, missing titles first. */
+    public static final Comparator<Song> TITLE_ORDER = (a, b) -> {
+        String left = a.getTitle() == null ? "" : a.getTitle();
+        String right = b.getTitle() == null ? "" : b.getTitle();
+        return left.compareToIgnoreCase(right);
+    };
+
     private final long id;
     private final String title;
     private final String artist;
-    private final String uriString;
+    private final String album;
+    private final long albumId;
+    private final long durationMs;
+    private final int trackNumber;
+    private final long dateAdded;
+    private final long dateModified;
 
-    public Song(long id, String title, String artist, String uriString) {
+    public Song(long id, String title, String artist, long dateModified) {
+        this(id, title, artist, null, -1, 0, 0, 0, dateModified);
+    }
+
+    public Song(long id, String title, String artist, String album, long albumId, long durationMs,
+                int trackNumber, long dateAdded, long dateModified) {
         this.id = id;
         this.title = title;
         this.artist = artist;
-        this.uriString = uriString;
+        this.album = album;
+        this.albumId = albumId;
+        this.durationMs = durationMs;
+        this.trackNumber = trackNumber;
+        this.dateAdded = dateAdded;
+        this.dateModified = dateModified;
     }
 
     public long getId() { return id; }
     public String getTitle() { return title; }
     public String getArtist() { return artist; }
-    public String getUriString() { return uriString; }
+    public String getAlbum() { return album; }
+    /** MediaStore album id, or -1 if unknown. */
+    public long getAlbumId() { return albumId; }
+    public long getDurationMs() { return durationMs; }
+    /** MediaStore track number: disc * 1000 + track, or 0 if untagged. */
+    public int getTrackNumber() { return trackNumber; }
+    /** MediaStore DATE_ADDED, in seconds. */
+    public long getDateAdded() { return dateAdded; }
+    public long getDateModified() { return dateModified; }
+
+    /** Derived from the id on demand rather than stored with every song. */
+    public String getUriString() { return CONTENT_URI_PREFIX + id; }
+
+    /**
+     * Songs are the same song when they have the same MediaStore id. SongStore builds a new
+     * instance on every access, so identity says nothing.
+     */
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Song && ((Song) o).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (id ^ (id >>> 32));
+    }
 }
@@ -1,23 +1,220 @@
 package com.example.musicplayer;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
+/**
+ * Song list adapter with stable ids. New lists are diffed against the shown one on a
+ * background thread, keyed by Song.getId(), and only the resulting changes are dispatched.
+ * Lists handed to the adapter are treated as immutable.
+ */
 public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder> {
 
-    private final ArrayList<Song> songs;
+    // Above this many items a general DiffUtil pass (O(N*D)) is too slow when the order changed;
+    // such lists are swapped wholesale and left to stable ids.
+    private static final int MAX_DIFF_UTIL_ITEMS = 2000;
+
+    // Linear diff operations, encoded as {type, position, count}.
+    private static final int OP_REMOVE = 0;
+    private static final int OP_INSERT = 1;
+    private static final int OP_CHANGE = 2;
+
+    private static final Executor DIFF_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ListUpdateCallback updateCallback = new AdapterListUpdateCallback(this);
     private final OnSongListener onSongListener;
+    private List<Song> songs = Collections.emptyList();
+    // The shown list while pages are appended to it in place; only ever the shown one, so no
+    // diff reads it while it grows.
+    private ArrayList<Song> appendable;
+    // Latest submitted list whose diff has not been applied yet, or null.
+    private List<Song> pendingSongs;
+    private int submitGeneration;
 
-    public SongAdapter(ArrayList<Song> songs, OnSongListener onSongListener) {
-        this.songs = songs;
+    public SongAdapter(OnSongListener onSongListener) {
         this.onSongListener = onSongListener;
+        setHasStableIds(true);
+    }
+
+    /** The shown list. It may still grow while the library streams in, so copy it to keep it. */
+    public List<Song> getSongs() {
+        return songs;
+    }
+
+    /** Appends a page without diffing; used while the library streams in. Amortized O(page). */
+    public void appendSongs(List<Song> newSongs) {
+        if (pendingSongs != null) {
+            // Append on top of what is about to be shown rather than what is shown now. The
+            // pending list is being diffed, so this is a copy; it only happens mid-transition.
+            List<Song> appended = new ArrayList<>(pendingSongs.size() + newSongs.size());
+            appended.addAll(pendingSongs);
+            appended.addAll(newSongs);
+            submitList(appended);
+            return;
+        }
+        if (songs != appendable) {
+            // Copied once when streaming starts; later pages go into the same list.
+            appendable = new ArrayList<>(songs.size() + newSongs.size());
+            appendable.addAll(songs);
+            songs = appendable;
+        }
+        int start = appendable.size();
+        appendable.addAll(newSongs);
+        notifyItemRangeInserted(start, newSongs.size());
+    }
+
+    /** Replaces the shown list, dispatching only the differences once they are computed. */
+    public void submitList(List<Song> newSongs) {
+        appendable = null; // Whatever replaces it, the shown list stops growing in place.
+        final int generation = ++submitGeneration;
+        final List<Song> oldSongs = songs;
+        if (oldSongs.isEmpty() || newSongs.isEmpty()) {
+            pendingSongs = null;
+            songs = newSongs;
+            if (!oldSongs.isEmpty()) {
+                notifyItemRangeRemoved(0, oldSongs.size());
+            } else if (!newSongs.isEmpty()) {
+                notifyItemRangeInserted(0, newSongs.size());
+            }
+            return;
+        }
+
+        pendingSongs = newSongs;
+        DIFF_EXECUTOR.execute(() -> {
+            Runnable dispatch = diff(oldSongs, newSongs);
+            mainHandler.post(() -> {
+                if (generation != submitGeneration) {
+                    return; // Superseded by a newer list.
+                }
+                pendingSongs = null;
+                songs = newSongs;
+                dispatch.run();
+            });
+        });
+    }
+
+    // --- Diffing (background thread) ---
+
+    private Runnable diff(List<Song> oldSongs, List<Song> newSongs) {
+        HashMap<Long, Integer> oldPositions = new HashMap<>(oldSongs.size() * 2);
+        for (int i = 0; i < oldSongs.size(); i++) {
+            oldPositions.put(oldSongs.get(i).getId(), i);
+        }
+        Set<Long> newIds = new HashSet<>(newSongs.size() * 2);
+        boolean orderKept = true;
+        int lastOldPosition = -1;
+        for (Song song : newSongs) {
+            newIds.add(song.getId());
+            Integer oldPosition = oldPositions.get(song.getId());
+            if (oldPosition != null) {
+                orderKept &= oldPosition > lastOldPosition;
+                lastOldPosition = oldPosition;
+            }
+        }
+
+        if (orderKept) {
+            // Filters, refreshes and appends keep the relative order: one linear pass is exact.
+            return linearDiff(oldSongs, newSongs, oldPositions, newIds);
+        }
+        if (oldSongs.size() + newSongs.size() <= MAX_DIFF_UTIL_ITEMS) {
+            DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                @Override
+                public int getOldListSize() { return oldSongs.size(); }
+
+                @Override
+                public int getNewListSize() { return newSongs.size(); }
+
+                @Override
+                public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                    return oldSongs.get(oldPosition).getId() == newSongs.get(newPosition).getId();
+                }
+
+                @Override
+                public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                    return sameContents(oldSongs.get(oldPosition), newSongs.get(newPosition));
+                }
+            });
+            return () -> result.dispatchUpdatesTo(updateCallback);
+        }
+        // Reordered large list (e.g. a sort change): stable ids let RecyclerView match the items.
+        return this::notifyDataSetChanged;
+    }
+
+    /** Walks both lists once, batching consecutive removals, insertions and changes. */
+    private Runnable linearDiff(List<Song> oldSongs, List<Song> newSongs,
+                                HashMap<Long, Integer> oldPositions, Set<Long> newIds) {
+        List<int[]> ops = new ArrayList<>();
+        int position = 0;
+        int i = 0;
+        int j = 0;
+        while (i < oldSongs.size() || j < newSongs.size()) {
+            if (i < oldSongs.size() && !newIds.contains(oldSongs.get(i).getId())) {
+                addOp(ops, OP_REMOVE, position);
+                i++;
+            } else if (j < newSongs.size() && !oldPositions.containsKey(newSongs.get(j).getId())) {
+                addOp(ops, OP_INSERT, position);
+                position++;
+                j++;
+            } else {
+                if (!sameContents(oldSongs.get(i), newSongs.get(j))) {
+                    addOp(ops, OP_CHANGE, position);
+                }
+                position++;
+                i++;
+                j++;
+            }
+        }
+        return () -> {
+            for (int[] op : ops) {
+                if (op[0] == OP_REMOVE) {
+                    updateCallback.onRemoved(op[1], op[2]);
+                } else if (op[0] == OP_INSERT) {
+                    updateCallback.onInserted(op[1], op[2]);
+                } else {
+                    updateCallback.onChanged(op[1], op[2], null);
+                }
+            }
+        };
     }
 
+    private static void addOp(List<int[]> ops, int type, int position) {
+        int[] last = ops.isEmpty() ? null : ops.get(ops.size() - 1);
+        if (last != null && last[0] == type) {
+            // Removals repeat at the same position; insertions and changes extend forward.
+            int next = type == OP_REMOVE ? last[1] : last[1] + last[2];
+            if (position == next) {
+                last[2]++;
+                return;
+            }
+        }
+        ops.add(new int[]{type, position, 1});
+    }
+
+    private static boolean sameContents(Song a, Song b) {
+        return TextUtils.equals(a.getTitle(), b.getTitle()) && TextUtils.equals(a.getArtist(), b.getArtist());
+    }
+
+    // --- RecyclerView.Adapter ---
+
     @NonNull
     @Override
     public SongViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -37,6 +234,11 @@ public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder
         return songs.size();
     }
 
+    @Override
+    public long getItemId(int position) {
+        return songs.get(position).getId();
+    }
+
     public static class SongViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
         TextView titleTextView;
         TextView artistTextView;
@@ -52,11 +254,14 @@ public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder
 
         @Override
         public void onClick(View v) {
-            onSongListener.onSongClick(getAdapterPosition());
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                onSongListener.onSongClick(position);
+            }
         }
     }
 
     public interface OnSongListener {
         void onSongClick(int position);
     }
-}
\ No newline at end of file
+}
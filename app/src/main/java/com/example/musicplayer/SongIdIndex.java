@@ -0,0 +1,58 @@
+package com.example.musicplayer;
+
+import java.util.Arrays;
+
+/**
+ * MediaStore id to position in a SongStore, as an open-addressing hash table over primitive
+ * arrays: no boxing, about 12 bytes per slot, and a lookup is a probe or two. Immutable once
+ * built, so it is safe to share between threads.
+ */
+public final class SongIdIndex {
+
+    private static final int EMPTY = -1;
+
+    private final long[] keys;
+    private final int[] positions; // EMPTY marks a free slot
+    private final int mask;
+
+    private SongIdIndex(SongStore songs) {
+        // At most half full, so probe runs stay short.
+        int capacity = Integer.highestOneBit(Math.max(songs.size(), 8) * 2 - 1) << 1;
+        keys = new long[capacity];
+        positions = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(positions, EMPTY);
+        for (int i = 0; i < songs.size(); i++) {
+            long id = songs.getId(i);
+            int slot = slot(id);
+            while (positions[slot] != EMPTY && keys[slot] != id) {
+                slot = (slot + 1) & mask;
+            }
+            if (positions[slot] == EMPTY) { // The first occurrence wins, should an id repeat.
+                keys[slot] = id;
+                positions[slot] = i;
+            }
+        }
+    }
+
+    public static SongIdIndex build(SongStore songs) {
+        return new SongIdIndex(songs);
+    }
+
+    /** Position of the song with the given id, or -1 if the store doesn't have it. */
+    public int positionOf(long id) {
+        int slot = slot(id);
+        while (positions[slot] != EMPTY) {
+            if (keys[slot] == id) {
+                return positions[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int slot(long id) {
+        long hash = id * 0x9E3779B97F4A7C15L; // Fibonacci hashing spreads sequential ids.
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
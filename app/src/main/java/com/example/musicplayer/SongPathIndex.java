@@ -0,0 +1,219 @@
+package com.example.musicplayer;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Resolves playlist entries to MediaStore ids without a query per entry.
+ *
+ * Built once per import from every song's file path. Entries are matched by file name first,
+ * then by how many trailing directories they share with the song's path, so playlists
+ * written on another device or OS ("D:\Music\Artist\Album\01.mp3", "../Album/01.mp3")
+ * still find "/storage/emulated/0/Music/Artist/Album/01.mp3". A match on the file name alone
+ * is only taken for a bare file name that a single song has: generic names like "01.mp3"
+ * must share a folder too. Matching ignores case, as shared storage does. Content URIs of
+ * MediaStore songs resolve by their id. Immutable once built.
+ */
+public final class SongPathIndex {
+
+    /** Returned by resolve() for entries that match no song. */
+    public static final long NO_SONG = -1;
+
+    private static final String MEDIA_URI_PREFIX = "content://media/";
+
+    private final long[] ids;
+    private final String[] paths; // normalized, see normalize()
+    private final int[] nextWithName; // next song with the same file name, or -1
+    private final HashMap<String, Integer> firstByName;
+    private final long[] sortedIds;
+
+    private SongPathIndex(Builder builder) {
+        ids = Arrays.copyOf(builder.ids, builder.size);
+        paths = Arrays.copyOf(builder.paths, builder.size);
+        nextWithName = Arrays.copyOf(builder.nextWithName, builder.size);
+        firstByName = builder.firstByName;
+        sortedIds = ids.clone();
+        Arrays.sort(sortedIds);
+    }
+
+    /** The id of the song the entry refers to, or NO_SONG. */
+    public long resolve(String location) {
+        if (location.regionMatches(true, 0, MEDIA_URI_PREFIX, 0, MEDIA_URI_PREFIX.length())) {
+            long id = trailingId(location);
+            return id >= 0 && Arrays.binarySearch(sortedIds, id) >= 0 ? id : NO_SONG;
+        }
+        String path = normalize(location);
+        if (path == null) {
+            return NO_SONG;
+        }
+        Integer first = firstByName.get(fileName(path));
+        if (first == null) {
+            return NO_SONG;
+        }
+        int best = first;
+        int bestScore = matchingComponents(path, paths[best]);
+        for (int i = nextWithName[best]; i != -1; i = nextWithName[i]) {
+            int score = matchingComponents(path, paths[i]);
+            if (score > bestScore) {
+                best = i;
+                bestScore = score;
+            }
+        }
+        // A score of 1 is the file name only; the entry's folder or another song's may well differ.
+        boolean hasDirectory = path.lastIndexOf('/') > 0;
+        if (bestScore < 2 && (hasDirectory || nextWithName[first] != -1)) {
+            return NO_SONG;
+        }
+        return ids[best];
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Lower-case path with forward slashes and a leading slash, without drive letters or "."
+     * and ".." components; null for locations that can't be a local file, e.g. http URLs.
+     */
+    static String normalize(String location) {
+        String path = location;
+        if (path.regionMatches(true, 0, "file:", 0, 5)) {
+            path = path.substring(5);
+            if (path.startsWith("//")) {
+                int slash = path.indexOf('/', 2); // skips the host, usually empty or "localhost"
+                path = slash < 0 ? "" : path.substring(slash);
+            }
+            path = percentDecode(path);
+        } else if (path.contains("://")) {
+            return null;
+        }
+        StringBuilder normalized = new StringBuilder(path.length() + 1);
+        int start = 0;
+        int length = path.length();
+        while (start <= length) {
+            int end = start;
+            while (end < length && path.charAt(end) != '/' && path.charAt(end) != '\\') {
+                end++;
+            }
+            int componentLength = end - start;
+            boolean skip = componentLength == 0
+                    || (componentLength == 1 && path.charAt(start) == '.')
+                    || (componentLength == 2 && path.charAt(start) == '.' && path.charAt(start + 1) == '.')
+                    || (componentLength == 2 && normalized.length() == 0 && path.charAt(start + 1) == ':');
+            if (!skip) {
+                normalized.append('/').append(path, start, end);
+            }
+            start = end + 1;
+        }
+        return normalized.length() == 0 ? null : normalized.toString().toLowerCase(Locale.ROOT);
+    }
+
+    private static String fileName(String normalizedPath) {
+        return normalizedPath.substring(normalizedPath.lastIndexOf('/') + 1);
+    }
+
+    /** Number of whole trailing components two normalized paths share. */
+    private static int matchingComponents(String a, String b) {
+        int i = a.length() - 1;
+        int j = b.length() - 1;
+        int count = 0;
+        while (i >= 0 && j >= 0 && a.charAt(i) == b.charAt(j)) {
+            if (a.charAt(i) == '/') {
+                count++;
+            }
+            i--;
+            j--;
+        }
+        return count;
+    }
+
+    private static long trailingId(String uri) {
+        int end = uri.length();
+        int start = end;
+        while (start > 0 && Character.isDigit(uri.charAt(start - 1))) {
+            start--;
+        }
+        if (start == end || end - start > 18 || uri.charAt(start - 1) != '/') {
+            return -1;
+        }
+        return Long.parseLong(uri.substring(start, end));
+    }
+
+    // %XX escapes as UTF-8 bytes; unlike URLDecoder, '+' stays a plus.
+    private static String percentDecode(String value) {
+        if (value.indexOf('%') < 0) {
+            return value;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(value.length());
+        int i = 0;
+        while (i < value.length()) {
+            int high;
+            int low;
+            if (value.charAt(i) == '%' && i + 2 < value.length()
+                    && (high = Character.digit(value.charAt(i + 1), 16)) >= 0
+                    && (low = Character.digit(value.charAt(i + 2), 16)) >= 0) {
+                bytes.write(high << 4 | low);
+                i += 3;
+            } else {
+                int end = value.indexOf('%', i + 1);
+                end = end < 0 ? value.length() : end;
+                byte[] run = value.substring(i, end).getBytes(StandardCharsets.UTF_8);
+                bytes.write(run, 0, run.length);
+                i = end;
+            }
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /** Not thread-safe. */
+    public static final class Builder {
+        private long[] ids;
+        private String[] paths;
+        private int[] nextWithName;
+        private final HashMap<String, Integer> firstByName;
+        // Last song added under each name, so chains keep library order without a walk per add.
+        private final HashMap<String, Integer> lastByName;
+        private int size;
+
+        public Builder(int expectedSize) {
+            int capacity = Math.max(expectedSize, 16);
+            ids = new long[capacity];
+            paths = new String[capacity];
+            nextWithName = new int[capacity];
+            firstByName = new HashMap<>(capacity * 2);
+            lastByName = new HashMap<>(capacity * 2);
+        }
+
+        /** Adds a song by its file path (MediaStore DATA); songs without a usable path are skipped. */
+        public void add(long id, String filePath) {
+            String path = filePath == null ? null : normalize(filePath);
+            if (path == null) {
+                return;
+            }
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                paths = Arrays.copyOf(paths, capacity);
+                nextWithName = Arrays.copyOf(nextWithName, capacity);
+            }
+            String name = fileName(path);
+            ids[size] = id;
+            paths[size] = path;
+            nextWithName[size] = -1;
+            Integer last = lastByName.put(name, size);
+            if (last == null) {
+                firstByName.put(name, size);
+            } else {
+                nextWithName[last] = size;
+            }
+            size++;
+        }
+
+        public SongPathIndex build() {
+            return new SongPathIndex(this);
+        }
+    }
+}
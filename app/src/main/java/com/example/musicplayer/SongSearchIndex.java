@@ -0,0 +1,367 @@
+package com.example.musicplayer;
+
+import java.text.Normalizer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Prefix index over the words of every song's title and artist, for search-as-you-type.
+ *
+ * Each normalized word maps to a sorted posting list of document slots. A query matches the
+ * songs that have, for every query term, some word starting with that term; the candidates
+ * for a term are the postings of one contiguous range of the sorted word map. Songs are
+ * added and removed one at a time, so library changes never rebuild the index.
+ *
+ * Each slot refers to a row of a SongStore rather than holding a Song, so the index costs a
+ * reference and an int per song; results are views that build a Song only when asked for it.
+ * Updating from the library's own store moves every slot onto it, after which nothing else
+ * is kept alive.
+ *
+ * Results come back in slot order, which is the order songs were added in, unless the
+ * caller passes the order of the list it shows.
+ * Thread-safe: updates are serialized and each one ends by publishing an immutable snapshot;
+ * queries read the latest snapshot without taking a lock, so the UI thread never waits
+ * behind an update running on a background thread.
+ */
+public final class SongSearchIndex {
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    // Guarded by this; only updates touch these.
+    private final TreeMap<String, Posting> postings = new TreeMap<>();
+    private final HashMap<Long, Integer> slotsById = new HashMap<>();
+    private SongStore[] stores = new SongStore[1024];
+    private int[] rows = new int[1024];
+    private int slotCount; // slots handed out so far, including freed ones
+
+    public synchronized void add(Song song) {
+        addAll(Collections.singletonList(song));
+    }
+
+    public synchronized void addAll(List<Song> songs) {
+        SongStore store = SongStore.copyOf(songs);
+        for (int row = 0; row < store.size(); row++) {
+            Integer slot = slotsById.get(store.getId(row));
+            if (slot != null) {
+                removeSlot(slot);
+            }
+            addInternal(store, row);
+        }
+        publish();
+    }
+
+    public synchronized void remove(long songId) {
+        Integer slot = slotsById.get(songId);
+        if (slot != null) {
+            removeSlot(slot);
+            compactIfSparse();
+            publish();
+        }
+    }
+
+    public synchronized void clear() {
+        postings.clear();
+        slotsById.clear();
+        Arrays.fill(stores, 0, slotCount, null);
+        slotCount = 0;
+        publish();
+    }
+
+    /** Brings the index in line with the given library, touching only songs that were added, removed or retitled. */
+    public synchronized void update(List<Song> songs) {
+        SongStore store = SongStore.copyOf(songs);
+        Set<Long> ids = new HashSet<>(store.size() * 2);
+        for (int row = 0; row < store.size(); row++) {
+            long id = store.getId(row);
+            ids.add(id);
+            Integer slot = slotsById.get(id);
+            if (slot != null) {
+                SongStore indexed = stores[slot];
+                int indexedRow = rows[slot];
+                if (equal(indexed.getTitle(indexedRow), store.getTitle(row))
+                        && equal(indexed.getArtist(indexedRow), store.getArtist(row))) {
+                    // Same words, just the newer row.
+                    stores[slot] = store;
+                    rows[slot] = row;
+                    continue;
+                }
+                removeSlot(slot);
+            }
+            addInternal(store, row);
+        }
+        for (Long id : new ArrayList<>(slotsById.keySet())) {
+            if (!ids.contains(id)) {
+                removeSlot(slotsById.get(id));
+            }
+        }
+        compactIfSparse();
+        publish();
+    }
+
+    public int size() {
+        return snapshot.size;
+    }
+
+    /**
+     * Songs matching every term of the query, or an empty list for a blank query. Never blocks;
+     * the list is an immutable view that builds each Song as it is read.
+     */
+    public List<Song> search(String query) {
+        return search(query, null);
+    }
+
+    /**
+     * Like search(query), with the hits in the order of the list order indexes, e.g. the list
+     * as the user sorted it. Hits order doesn't know come last, in slot order.
+     */
+    public List<Song> search(String query, SongIdIndex order) {
+        String[] terms = words(query);
+        if (terms.length == 0) {
+            return Collections.emptyList();
+        }
+        // Longest terms first: they have the fewest candidates and empty the result soonest.
+        Arrays.sort(terms, (a, b) -> b.length() - a.length());
+
+        Snapshot current = snapshot;
+        BitSet result = null;
+        for (String term : terms) {
+            BitSet matches = new BitSet(current.stores.length);
+            int index = Arrays.binarySearch(current.words, term);
+            for (int w = index >= 0 ? index : -index - 1;
+                    w < current.words.length && current.words[w].startsWith(term); w++) {
+                int[] slots = current.postings[w];
+                for (int i = 0, size = current.postingSizes[w]; i < size; i++) {
+                    int slot = slots[i];
+                    if (result == null || result.get(slot)) {
+                        matches.set(slot);
+                    }
+                }
+            }
+            result = matches;
+            if (result.isEmpty()) {
+                return Collections.emptyList();
+            }
+        }
+
+        int[] slots = new int[result.cardinality()];
+        for (int slot = result.nextSetBit(0), i = 0; slot >= 0; slot = result.nextSetBit(slot + 1)) {
+            slots[i++] = slot;
+        }
+        if (order != null) {
+            long[] packed = new long[slots.length];
+            for (int i = 0; i < slots.length; i++) {
+                int slot = slots[i];
+                int position = order.positionOf(current.stores[slot].getId(current.rows[slot]));
+                packed[i] = ((long) (position >= 0 ? position : Integer.MAX_VALUE) << 32) | slot;
+            }
+            Arrays.sort(packed);
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = (int) packed[i];
+            }
+        }
+        return new Results(current, slots);
+    }
+
+    // --- Internals (callers hold the lock) ---
+
+    /**
+     * Makes the current state visible to queries. Posting arrays are shared with the snapshot
+     * rather than copied: appends only write past the size it captured, and anything else
+     * copies a shared array first.
+     */
+    private void publish() {
+        String[] words = new String[postings.size()];
+        int[][] slots = new int[words.length][];
+        int[] sizes = new int[words.length];
+        int w = 0;
+        for (Map.Entry<String, Posting> entry : postings.entrySet()) {
+            Posting posting = entry.getValue();
+            words[w] = entry.getKey();
+            slots[w] = posting.slots;
+            sizes[w] = posting.size;
+            posting.shared = true;
+            w++;
+        }
+        snapshot = new Snapshot(words, slots, sizes, Arrays.copyOf(stores, slotCount),
+                Arrays.copyOf(rows, slotCount), slotsById.size());
+    }
+
+    private void addInternal(SongStore store, int row) {
+        if (slotCount == stores.length) {
+            stores = Arrays.copyOf(stores, stores.length * 2);
+            rows = Arrays.copyOf(rows, rows.length * 2);
+        }
+        int slot = slotCount++;
+        stores[slot] = store;
+        rows[slot] = row;
+        slotsById.put(store.getId(row), slot);
+        for (String word : wordsOf(store, row)) {
+            Posting posting = postings.get(word);
+            if (posting == null) {
+                posting = new Posting();
+                postings.put(word, posting);
+            }
+            posting.append(slot);
+        }
+    }
+
+    private void removeSlot(int slot) {
+        SongStore store = stores[slot];
+        int row = rows[slot];
+        for (String word : wordsOf(store, row)) {
+            Posting posting = postings.get(word);
+            if (posting != null && posting.remove(slot) && posting.size == 0) {
+                postings.remove(word);
+            }
+        }
+        slotsById.remove(store.getId(row));
+        stores[slot] = null;
+    }
+
+    /** Renumbers slots once more than half of them are free, keeping their relative order. */
+    private void compactIfSparse() {
+        int live = slotsById.size();
+        if (slotCount < 1024 || live * 2 > slotCount) {
+            return;
+        }
+        int[] remap = new int[slotCount];
+        int next = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (stores[slot] != null) {
+                remap[slot] = next;
+                stores[next] = stores[slot];
+                rows[next] = rows[slot];
+                slotsById.put(stores[next].getId(rows[next]), next);
+                next++;
+            }
+        }
+        Arrays.fill(stores, next, slotCount, null);
+        slotCount = next;
+        // Remapping is monotonic, so every posting list stays sorted.
+        for (Posting posting : postings.values()) {
+            posting.unshare();
+            for (int i = 0; i < posting.size; i++) {
+                posting.slots[i] = remap[posting.slots[i]];
+            }
+        }
+    }
+
+    private static Set<String> wordsOf(SongStore store, int row) {
+        Set<String> words = new HashSet<>();
+        Collections.addAll(words, words(store.getTitle(row)));
+        Collections.addAll(words, words(store.getArtist(row)));
+        return words;
+    }
+
+    private static String[] words(String text) {
+        String normalized = normalize(text).trim();
+        return normalized.isEmpty() ? new String[0] : normalized.split(" +");
+    }
+
+    /** Lower-cases, strips accents, and turns everything that is not a letter or digit into a space. */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder builder = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            builder.append(Character.isLetterOrDigit(c) ? Character.toLowerCase(c) : ' ');
+        }
+        return builder.toString();
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /** Sorted, growable list of slots. Slots are handed out in increasing order, so appends keep it sorted. */
+    private static final class Posting {
+        int[] slots = new int[2];
+        int size;
+        boolean shared; // slots is referenced by a published snapshot
+
+        void append(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+                shared = false;
+            }
+            slots[size++] = slot;
+        }
+
+        boolean remove(int slot) {
+            int index = Arrays.binarySearch(slots, 0, size, slot);
+            if (index < 0) {
+                return false;
+            }
+            unshare();
+            System.arraycopy(slots, index + 1, slots, index, size - index - 1);
+            size--;
+            return true;
+        }
+
+        void unshare() {
+            if (shared) {
+                slots = slots.clone();
+                shared = false;
+            }
+        }
+    }
+
+    /** What queries see: the index as of the last update, never modified. */
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(new String[0], new int[0][], new int[0],
+                new SongStore[0], new int[0], 0);
+
+        final String[] words; // sorted
+        final int[][] postings; // by word; only the first postingSizes[w] slots are valid
+        final int[] postingSizes;
+        final SongStore[] stores; // by slot, null for freed slots
+        final int[] rows;
+        final int size;
+
+        Snapshot(String[] words, int[][] postings, int[] postingSizes, SongStore[] stores, int[] rows, int size) {
+            this.words = words;
+            this.postings = postings;
+            this.postingSizes = postingSizes;
+            this.stores = stores;
+            this.rows = rows;
+            this.size = size;
+        }
+    }
+
+    /** Search hits as a list view over a snapshot's slots. */
+    private static final class Results extends AbstractList<Song> {
+        private final Snapshot snapshot;
+        private final int[] slots;
+
+        Results(Snapshot snapshot, int[] slots) {
+            this.snapshot = snapshot;
+            this.slots = slots;
+        }
+
+        @Override
+        public Song get(int index) {
+            int slot = slots[index];
+            return snapshot.stores[slot].get(snapshot.rows[slot]);
+        }
+
+        @Override
+        public int size() {
+            return slots.length;
+        }
+    }
+}
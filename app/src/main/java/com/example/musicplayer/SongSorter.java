@@ -0,0 +1,283 @@
+package com.example.musicplayer;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Client-side ordering of a SongStore, so changing the sort never re-queries MediaStore.
+ *
+ * Locale collation is paid once: each text column is reduced to dense int ranks, built from
+ * one CollationKey per distinct value, where values the collator considers equal share a
+ * rank. Every sort after that compares primitives only: one Arrays.sort(long[]) pass per
+ * key, least significant first, each packing the key above the order of the previous pass.
+ * update() carries title ranks across a library change by collating just the new titles.
+ * Immutable; meant to be built and used on a background thread.
+ */
+public final class SongSorter {
+
+    public enum Key { TITLE, ARTIST, ALBUM, TRACK, DURATION, DATE_ADDED }
+
+    private final SongStore store;
+    private final Locale locale;
+    private final int[] titleRanks; // by position
+    private final String[] titlesByRank; // one title per rank, in collation order
+    private final int[] artistRanks; // by artist code
+    private final int[] albumRanks; // by album code
+
+    private SongSorter(SongStore store, Locale locale, int[] titleRanks, String[] titlesByRank) {
+        this.store = store;
+        this.locale = locale;
+        this.titleRanks = titleRanks;
+        this.titlesByRank = titlesByRank;
+        Collator collator = newCollator(locale);
+        String[] artists = new String[store.getArtistCount()];
+        for (int code = 0; code < artists.length; code++) {
+            artists[code] = store.getArtistByCode(code);
+        }
+        artistRanks = rank(artists, collator, null);
+        String[] albums = new String[store.getAlbumCount()];
+        for (int code = 0; code < albums.length; code++) {
+            albums[code] = store.getAlbumByCode(code);
+        }
+        albumRanks = rank(albums, collator, null);
+    }
+
+    public static SongSorter build(SongStore store, Locale locale) {
+        String[] titles = new String[store.size()];
+        for (int position = 0; position < titles.length; position++) {
+            titles[position] = store.getTitle(position);
+        }
+        String[][] byRank = new String[1][];
+        int[] titleRanks = rank(titles, newCollator(locale), byRank);
+        return new SongSorter(store, locale, titleRanks, byRank[0]);
+    }
+
+    /**
+     * The sorter for newStore, derived from this one. previousPositions maps each position in
+     * newStore to the same, unmodified song's position in this sorter's store, or -1 for songs
+     * that are new or were modified; only those songs' titles are collated.
+     */
+    public SongSorter update(SongStore newStore, int[] previousPositions) {
+        Collator collator = newCollator(locale);
+        int size = newStore.size();
+        int addedCount = 0;
+        for (int previous : previousPositions) {
+            if (previous < 0) addedCount++;
+        }
+        String[] addedTitles = new String[addedCount];
+        for (int position = 0, i = 0; position < size; position++) {
+            if (previousPositions[position] < 0) {
+                addedTitles[i++] = newStore.getTitle(position);
+            }
+        }
+        int[] addedOrder = sortedIndexes(addedTitles, collator);
+
+        // Place the new titles among the existing ranks: each either matches an existing rank
+        // or becomes a new value inserted before rank insertAt[j]. Titles arrive in collation
+        // order, so insertion points never decrease.
+        int[] addedRanks = new int[addedCount]; // existing rank, or -(inserted value + 1)
+        int[] insertAt = new int[addedCount];
+        String[] insertedTitles = new String[addedCount];
+        int inserted = 0;
+        for (int index : addedOrder) {
+            String title = nonNull(addedTitles[index]);
+            int low = 0;
+            int high = titlesByRank.length - 1;
+            int found = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = collator.compare(title, titlesByRank[mid]);
+                if (cmp == 0) {
+                    found = mid;
+                    break;
+                } else if (cmp < 0) {
+                    high = mid - 1;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            if (found >= 0) {
+                addedRanks[index] = found;
+            } else if (inserted > 0 && insertAt[inserted - 1] == low
+                    && collator.compare(title, insertedTitles[inserted - 1]) == 0) {
+                addedRanks[index] = -inserted; // Same as the title just inserted.
+            } else {
+                insertAt[inserted] = low;
+                insertedTitles[inserted] = title;
+                addedRanks[index] = -(++inserted);
+            }
+        }
+
+        // Merge existing and inserted values, remapping old ranks.
+        String[] merged = new String[titlesByRank.length + inserted];
+        int[] oldToMerged = new int[titlesByRank.length];
+        int[] insertedToMerged = new int[inserted];
+        for (int rank = 0, j = 0, out = 0; rank <= titlesByRank.length; rank++) {
+            while (j < inserted && insertAt[j] == rank) {
+                insertedToMerged[j] = out;
+                merged[out++] = insertedTitles[j++];
+            }
+            if (rank < titlesByRank.length) {
+                oldToMerged[rank] = out;
+                merged[out++] = titlesByRank[rank];
+            }
+        }
+        int[] ranks = new int[size];
+        for (int position = 0, i = 0; position < size; position++) {
+            int previous = previousPositions[position];
+            if (previous >= 0) {
+                ranks[position] = oldToMerged[titleRanks[previous]];
+            } else {
+                int rank = addedRanks[i++];
+                ranks[position] = rank >= 0 ? oldToMerged[rank] : insertedToMerged[-rank - 1];
+            }
+        }
+
+        // Drop values no song refers to anymore, so the table doesn't grow with every change.
+        int[] compacted = new int[merged.length];
+        for (int rank : ranks) {
+            compacted[rank] = 1;
+        }
+        int live = 0;
+        for (int rank = 0; rank < merged.length; rank++) {
+            if (compacted[rank] != 0) {
+                merged[live] = merged[rank];
+                compacted[rank] = live++;
+            }
+        }
+        for (int position = 0; position < size; position++) {
+            ranks[position] = compacted[ranks[position]];
+        }
+        return new SongSorter(newStore, locale, ranks, Arrays.copyOf(merged, live));
+    }
+
+    public SongStore getStore() {
+        return store;
+    }
+
+    public Locale getLocale() {
+        return locale;
+    }
+
+    /** The store ordered by key, ties broken by the keys that usually follow it (always ascending). */
+    public SongStore sort(Key key, boolean ascending) {
+        Key[] keys;
+        switch (key) {
+            case TITLE: keys = new Key[]{Key.TITLE, Key.ARTIST}; break;
+            case ARTIST: keys = new Key[]{Key.ARTIST, Key.ALBUM, Key.TRACK, Key.TITLE}; break;
+            case ALBUM: keys = new Key[]{Key.ALBUM, Key.TRACK, Key.TITLE}; break;
+            default: keys = new Key[]{key, Key.TITLE}; break;
+        }
+        boolean[] directions = new boolean[keys.length];
+        Arrays.fill(directions, true);
+        directions[0] = ascending;
+        return store.reorder(order(keys, directions));
+    }
+
+    /** Store positions ordered by the keys, most significant first; remaining ties keep store order. */
+    public int[] order(Key[] keys, boolean[] ascending) {
+        int size = store.size();
+        int[] order = null;
+        int[] orderRanks = null; // orderRanks[position] = index of position in order
+        long[] packed = new long[size];
+        for (int k = keys.length - 1; k >= 0; k--) {
+            for (int position = 0; position < size; position++) {
+                int value = valueOf(keys[k], position);
+                if (!ascending[k]) {
+                    value = Integer.MAX_VALUE - value;
+                }
+                packed[position] = ((long) value << 32) | (order == null ? position : orderRanks[position]);
+            }
+            Arrays.sort(packed);
+            int[] next = new int[size];
+            for (int i = 0; i < size; i++) {
+                int low = (int) packed[i];
+                next[i] = order == null ? low : order[low];
+            }
+            order = next;
+            if (k > 0) {
+                if (orderRanks == null) orderRanks = new int[size];
+                for (int i = 0; i < size; i++) {
+                    orderRanks[order[i]] = i;
+                }
+            }
+        }
+        if (order == null) {
+            order = new int[size];
+            for (int i = 0; i < size; i++) order[i] = i;
+        }
+        return order;
+    }
+
+    /** Non-negative sort value of the key for the song at position. */
+    private int valueOf(Key key, int position) {
+        switch (key) {
+            case TITLE: return titleRanks[position];
+            case ARTIST: return artistRanks[store.getArtistCode(position)];
+            case ALBUM: return albumRanks[store.getAlbumCode(position)];
+            case TRACK: return Math.max(0, store.getTrackNumber(position));
+            case DURATION: return store.getDurationMs(position);
+            default: return (int) Math.min(Math.max(store.getDateAdded(position), 0), Integer.MAX_VALUE);
+        }
+    }
+
+    // --- Collation ---
+
+    // Case-insensitive but accent-aware, so "abba" and "ABBA" tie and fall through to the next key.
+    private static Collator newCollator(Locale locale) {
+        Collator collator = Collator.getInstance(locale);
+        collator.setStrength(Collator.SECONDARY);
+        return collator;
+    }
+
+    /**
+     * Dense collation ranks of values; when byRank is given, byRank[0] receives one value per
+     * rank in collation order.
+     */
+    private static int[] rank(String[] values, Collator collator, String[][] byRank) {
+        CollationKey[] keys = new CollationKey[values.length];
+        for (int i = 0; i < values.length; i++) {
+            keys[i] = collator.getCollationKey(nonNull(values[i]));
+        }
+        int[] sorted = sortedIndexes(keys);
+        int[] ranks = new int[values.length];
+        String[] representatives = new String[values.length];
+        int rank = -1;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || keys[sorted[i]].compareTo(keys[sorted[i - 1]]) != 0) {
+                representatives[++rank] = nonNull(values[sorted[i]]);
+            }
+            ranks[sorted[i]] = rank;
+        }
+        if (byRank != null) {
+            byRank[0] = Arrays.copyOf(representatives, rank + 1);
+        }
+        return ranks;
+    }
+
+    private static int[] sortedIndexes(String[] values, Collator collator) {
+        CollationKey[] keys = new CollationKey[values.length];
+        for (int i = 0; i < values.length; i++) {
+            keys[i] = collator.getCollationKey(nonNull(values[i]));
+        }
+        return sortedIndexes(keys);
+    }
+
+    private static int[] sortedIndexes(CollationKey[] keys) {
+        Integer[] boxed = new Integer[keys.length];
+        for (int i = 0; i < keys.length; i++) boxed[i] = i;
+        Arrays.sort(boxed, (a, b) -> {
+            int cmp = keys[a].compareTo(keys[b]);
+            return cmp != 0 ? cmp : Integer.compare(a, b);
+        });
+        int[] sorted = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) sorted[i] = boxed[i];
+        return sorted;
+    }
+
+    private static String nonNull(String value) {
+        return value == null ? "" : value;
+    }
+}
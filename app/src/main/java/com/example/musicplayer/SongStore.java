@@ -0,0 +1,259 @@
+package com.example.musicplayer;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Immutable, column-oriented song list for large libraries.
+ *
+ * Ids, timestamps and other numbers live in primitive arrays and artists and albums are
+ * dictionary-encoded, so each distinct string is held once no matter how many tracks share
+ * it. Content URIs are not stored at all (see Song.getUriString()). As a List it hands out
+ * lightweight Song views built on access, so it can be passed anywhere a List<Song> is expected.
+ */
+public final class SongStore extends AbstractList<Song> implements RandomAccess {
+
+    private static final SongStore EMPTY = new Builder(0).build();
+
+    private final long[] ids;
+    private final long[] datesAdded;
+    private final long[] datesModified;
+    private final String[] titles;
+    private final int[] artistCodes;
+    private final String[] artists; // dictionary, indexed by artist code
+    private final int[] albumCodes;
+    private final String[] albums; // dictionary, indexed by album code
+    private final long[] albumIds;
+    private final int[] durationsMs;
+    private final int[] trackNumbers;
+
+    private SongStore(Builder builder) {
+        int size = builder.size;
+        ids = Arrays.copyOf(builder.ids, size);
+        datesAdded = Arrays.copyOf(builder.datesAdded, size);
+        datesModified = Arrays.copyOf(builder.datesModified, size);
+        titles = Arrays.copyOf(builder.titles, size);
+        artistCodes = Arrays.copyOf(builder.artistCodes, size);
+        artists = builder.artists.toArray();
+        albumCodes = Arrays.copyOf(builder.albumCodes, size);
+        albums = builder.albums.toArray();
+        albumIds = Arrays.copyOf(builder.albumIds, size);
+        durationsMs = Arrays.copyOf(builder.durationsMs, size);
+        trackNumbers = Arrays.copyOf(builder.trackNumbers, size);
+    }
+
+    /** Gathers the rows of source at the given positions; the dictionaries are shared. */
+    private SongStore(SongStore source, int[] order) {
+        int size = order.length;
+        ids = new long[size];
+        datesAdded = new long[size];
+        datesModified = new long[size];
+        titles = new String[size];
+        artistCodes = new int[size];
+        albumCodes = new int[size];
+        albumIds = new long[size];
+        durationsMs = new int[size];
+        trackNumbers = new int[size];
+        for (int i = 0; i < size; i++) {
+            int from = source.checkIndex(order[i]);
+            ids[i] = source.ids[from];
+            datesAdded[i] = source.datesAdded[from];
+            datesModified[i] = source.datesModified[from];
+            titles[i] = source.titles[from];
+            artistCodes[i] = source.artistCodes[from];
+            albumCodes[i] = source.albumCodes[from];
+            albumIds[i] = source.albumIds[from];
+            durationsMs[i] = source.durationsMs[from];
+            trackNumbers[i] = source.trackNumbers[from];
+        }
+        artists = source.artists;
+        albums = source.albums;
+    }
+
+    public static SongStore empty() {
+        return EMPTY;
+    }
+
+    /** Returns the list itself if it already is a store, otherwise a compact copy of it. */
+    public static SongStore copyOf(List<Song> songs) {
+        if (songs instanceof SongStore) {
+            return (SongStore) songs;
+        }
+        Builder builder = new Builder(songs.size());
+        for (Song song : songs) {
+            builder.add(song);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public Song get(int index) {
+        return new Song(ids[checkIndex(index)], titles[index], artists[artistCodes[index]],
+                albums[albumCodes[index]], albumIds[index], durationsMs[index], trackNumbers[index],
+                datesAdded[index], datesModified[index]);
+    }
+
+    @Override
+    public int size() {
+        return ids.length;
+    }
+
+    // Column accessors, for scans that don't need Song objects.
+    public long getId(int index) { return ids[checkIndex(index)]; }
+    public String getTitle(int index) { return titles[checkIndex(index)]; }
+    public String getArtist(int index) { return artists[artistCodes[checkIndex(index)]]; }
+    public String getAlbum(int index) { return albums[albumCodes[checkIndex(index)]]; }
+    public long getAlbumId(int index) { return albumIds[checkIndex(index)]; }
+    public int getDurationMs(int index) { return durationsMs[checkIndex(index)]; }
+    public int getTrackNumber(int index) { return trackNumbers[checkIndex(index)]; }
+    public long getDateAdded(int index) { return datesAdded[checkIndex(index)]; }
+    public long getDateModified(int index) { return datesModified[checkIndex(index)]; }
+
+    /** Number of distinct artists in the dictionary. */
+    public int getArtistCount() {
+        return artists.length;
+    }
+
+    /** The songs at the given positions, in that order, e.g. a sort permutation. Copies columns, not strings. */
+    public SongStore reorder(int[] order) {
+        return new SongStore(this, order);
+    }
+
+    // Dictionary codes, for grouping and ranking by artist or album without hashing strings.
+    int getArtistCode(int index) { return artistCodes[checkIndex(index)]; }
+    String getArtistByCode(int code) { return artists[code]; }
+    int getAlbumCode(int index) { return albumCodes[checkIndex(index)]; }
+    String getAlbumByCode(int code) { return albums[code]; }
+    int getAlbumCount() { return albums.length; }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= ids.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + ids.length);
+        }
+        return index;
+    }
+
+    /**
+     * Accumulates songs column by column. Songs returned from add() already carry the
+     * dictionaries' string instances, so pages handed out while loading share strings too.
+     * Not thread-safe.
+     */
+    public static final class Builder {
+        private final Dictionary artists = new Dictionary();
+        private final Dictionary albums = new Dictionary();
+
+        private long[] ids;
+        private long[] datesAdded;
+        private long[] datesModified;
+        private String[] titles;
+        private int[] artistCodes;
+        private int[] albumCodes;
+        private long[] albumIds;
+        private int[] durationsMs;
+        private int[] trackNumbers;
+        private int size;
+
+        public Builder(int expectedSize) {
+            int capacity = Math.max(expectedSize, 16);
+            ids = new long[capacity];
+            datesAdded = new long[capacity];
+            datesModified = new long[capacity];
+            titles = new String[capacity];
+            artistCodes = new int[capacity];
+            albumCodes = new int[capacity];
+            albumIds = new long[capacity];
+            durationsMs = new int[capacity];
+            trackNumbers = new int[capacity];
+        }
+
+        public Song add(Song song) {
+            return add(song.getId(), song.getTitle(), song.getArtist(), song.getAlbum(), song.getAlbumId(),
+                    song.getDurationMs(), song.getTrackNumber(), song.getDateAdded(), song.getDateModified());
+        }
+
+        public Song add(long id, String title, String artist, String album, long albumId, long durationMs,
+                        int trackNumber, long dateAdded, long dateModified) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                datesAdded = Arrays.copyOf(datesAdded, capacity);
+                datesModified = Arrays.copyOf(datesModified, capacity);
+                titles = Arrays.copyOf(titles, capacity);
+                artistCodes = Arrays.copyOf(artistCodes, capacity);
+                albumCodes = Arrays.copyOf(albumCodes, capacity);
+                albumIds = Arrays.copyOf(albumIds, capacity);
+                durationsMs = Arrays.copyOf(durationsMs, capacity);
+                trackNumbers = Arrays.copyOf(trackNumbers, capacity);
+            }
+            int artistCode = artists.code(artist);
+            int albumCode = albums.code(album);
+            int duration = (int) Math.min(Math.max(durationMs, 0), Integer.MAX_VALUE);
+            ids[size] = id;
+            datesAdded[size] = dateAdded;
+            datesModified[size] = dateModified;
+            titles[size] = title;
+            artistCodes[size] = artistCode;
+            albumCodes[size] = albumCode;
+            albumIds[size] = albumId;
+            durationsMs[size] = duration;
+            trackNumbers[size] = trackNumber;
+            size++;
+            return new Song(id, title, artists.get(artistCode), albums.get(albumCode), albumId, duration,
+                    trackNumber, dateAdded, dateModified);
+        }
+
+        /**
+         * Adds a MediaStore row, mapping a missing or "<unknown>" artist to "Unknown Artist" and a
+         * missing album to "Unknown Album".
+         */
+        public Song addRow(long id, String title, String artist, String album, long albumId, long durationMs,
+                           int trackNumber, long dateAdded, long dateModified) {
+            if (artist == null || artist.equals("<unknown>")) {
+                artist = "Unknown Artist";
+            }
+            if (album == null || album.equals("<unknown>")) {
+                album = "Unknown Album";
+            }
+            return add(id, title, artist, album, albumId, durationMs, trackNumber, dateAdded, dateModified);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public SongStore build() {
+            return new SongStore(this);
+        }
+    }
+
+    /** Interns strings as dense codes in first-seen order. */
+    private static final class Dictionary {
+        private final HashMap<String, Integer> codesByValue = new HashMap<>();
+        private String[] values = new String[16];
+        private int count;
+
+        int code(String value) {
+            Integer code = codesByValue.get(value);
+            if (code != null) {
+                return code;
+            }
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count] = value;
+            codesByValue.put(value, count);
+            return count++;
+        }
+
+        String get(int code) {
+            return values[code];
+        }
+
+        String[] toArray() {
+            return Arrays.copyOf(values, count);
+        }
+    }
+}
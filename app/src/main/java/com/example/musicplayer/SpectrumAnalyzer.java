@@ -0,0 +1,191 @@
+package com.example.musicplayer;
+
+/**
+ * Turns Visualizer FFT captures into smoothed, log-spaced band levels for the bars.
+ *
+ * analyze() folds every bin of a capture into bands spaced evenly in log frequency, so each
+ * octave gets the same share of the bars, and converts band power to a 0..1 level over a
+ * fixed dB range. advance() then moves the displayed levels toward those targets once per
+ * rendered frame, rising fast and falling slowly, with a peak marker per band that holds
+ * before it drops. Everything works on arrays sized in the constructor or when the capture
+ * format changes, so steady-state frames don't allocate. Not thread-safe; VisualizerView uses
+ * it from its render thread.
+ */
+public final class SpectrumAnalyzer {
+
+    /** Capture size, capture rate and bar count, so slower devices can trade detail for CPU. */
+    public enum Quality {
+        LOW(256, 10_000, 16),
+        MEDIUM(512, 15_000, 24),
+        HIGH(1024, 20_000, 32);
+
+        private final int captureSize;
+        private final int captureRateMilliHz;
+        private final int bandCount;
+
+        Quality(int captureSize, int captureRateMilliHz, int bandCount) {
+            this.captureSize = captureSize;
+            this.captureRateMilliHz = captureRateMilliHz;
+            this.bandCount = bandCount;
+        }
+
+        /** Capture size to request, within the device's Visualizer.getCaptureSizeRange(). */
+        public int getCaptureSize(int[] range) {
+            return Math.max(range[0], Math.min(range[1], captureSize));
+        }
+
+        /** Capture rate to request in mHz, at most Visualizer.getMaxCaptureRate(). */
+        public int getCaptureRate(int maxRateMilliHz) {
+            return Math.min(maxRateMilliHz, captureRateMilliHz);
+        }
+
+        public int getBandCount() {
+            return bandCount;
+        }
+
+        public static Quality forDevice(boolean lowRam, int cores) {
+            if (lowRam || cores <= 2) {
+                return LOW;
+            }
+            return cores <= 4 ? MEDIUM : HIGH;
+        }
+    }
+
+    private static final float MIN_HZ = 40f;
+    private static final float MAX_HZ = 16_000f;
+    // Levels span this many dB below a single full-scale bin.
+    private static final float RANGE_DB = 50f;
+    // Power of one full-scale bin: 8-bit real and imaginary parts.
+    private static final float FULL_SCALE_POWER = 2f * 128 * 128;
+    private static final float ATTACK_MS = 25f;
+    private static final float DECAY_MS = 250f;
+    private static final float PEAK_HOLD_MS = 400f;
+    private static final float PEAK_FALL_PER_MS = 1f / 1000;
+    // Settled once nothing would move by more than this (a fraction of the bar height).
+    private static final float EPSILON = 1f / 512;
+
+    private final int bandCount;
+    private final float[] targets;
+    private final float[] levels;
+    private final float[] peaks;
+    private final float[] peakHoldMs;
+    // Bins [firstBins[b], endBins[b]) belong to band b; rebuilt when the capture format changes.
+    private final int[] firstBins;
+    private final int[] endBins;
+    private int captureLength;
+    private int samplingRateMilliHz;
+
+    public SpectrumAnalyzer(int bandCount) {
+        this.bandCount = Math.max(1, bandCount);
+        targets = new float[this.bandCount];
+        levels = new float[this.bandCount];
+        peaks = new float[this.bandCount];
+        peakHoldMs = new float[this.bandCount];
+        firstBins = new int[this.bandCount];
+        endBins = new int[this.bandCount];
+    }
+
+    public int getBandCount() {
+        return bandCount;
+    }
+
+    /** Displayed levels, 0..1 per band; owned by the analyzer, read but don't keep. */
+    public float[] getLevels() {
+        return levels;
+    }
+
+    /** Peak markers, 0..1 per band, never below the level. */
+    public float[] getPeaks() {
+        return peaks;
+    }
+
+    /**
+     * Sets new band targets from a capture in Visualizer's FFT layout: bytes 0 and 1 are the
+     * real parts of DC and Nyquist, then a real and imaginary byte per bin.
+     */
+    public void analyze(byte[] fft, int length, int samplingRateMilliHz) {
+        if (length != captureLength || samplingRateMilliHz != this.samplingRateMilliHz) {
+            mapBins(length, samplingRateMilliHz);
+        }
+        for (int band = 0; band < bandCount; band++) {
+            float power = 0;
+            for (int bin = firstBins[band]; bin < endBins[band]; bin++) {
+                float real = fft[2 * bin];
+                float imag = fft[2 * bin + 1];
+                power += real * real + imag * imag;
+            }
+            if (power <= 0) {
+                targets[band] = 0;
+                continue;
+            }
+            float db = (float) (10 * Math.log10(power / FULL_SCALE_POWER));
+            targets[band] = Math.max(0f, Math.min(1f, 1f + db / RANGE_DB));
+        }
+    }
+
+    /**
+     * Moves levels toward their targets and peaks down over elapsedMs of frame time. Returns
+     * whether anything is still moving, i.e. whether another frame is worth drawing.
+     */
+    public boolean advance(float elapsedMs) {
+        float attack = (float) (1 - Math.exp(-elapsedMs / ATTACK_MS));
+        float decay = (float) (1 - Math.exp(-elapsedMs / DECAY_MS));
+        boolean moving = false;
+        for (int band = 0; band < bandCount; band++) {
+            float target = targets[band];
+            float level = levels[band];
+            level += (target - level) * (target > level ? attack : decay);
+            if (Math.abs(target - level) < EPSILON) {
+                level = target;
+            } else {
+                moving = true;
+            }
+            levels[band] = level;
+
+            float peak = peaks[band];
+            if (level >= peak) {
+                peak = level;
+                peakHoldMs[band] = PEAK_HOLD_MS;
+            } else if (peakHoldMs[band] > 0) {
+                peakHoldMs[band] -= elapsedMs;
+                moving = true;
+            } else {
+                peak = Math.max(level, peak - PEAK_FALL_PER_MS * elapsedMs);
+                moving |= peak > level + EPSILON;
+            }
+            peaks[band] = peak;
+        }
+        return moving;
+    }
+
+    /**
+     * Assigns the bins between MIN_HZ and MAX_HZ to log-spaced bands. Where the low bands are
+     * narrower than a bin they take one bin each, until the log spacing catches up.
+     */
+    private void mapBins(int length, int samplingRateMilliHz) {
+        captureLength = length;
+        this.samplingRateMilliHz = samplingRateMilliHz;
+        int binCount = length / 2; // Bins 1 .. binCount - 1 carry a real and an imaginary part.
+        if (binCount < 2 || samplingRateMilliHz <= 0) {
+            for (int band = 0; band < bandCount; band++) {
+                firstBins[band] = 0;
+                endBins[band] = 0;
+            }
+            return;
+        }
+        float binHz = samplingRateMilliHz / 1000f / length;
+        float lowHz = Math.max(MIN_HZ, binHz);
+        float highHz = Math.max(lowHz, Math.min(MAX_HZ, binHz * (binCount - 1)));
+        double ratio = highHz / lowHz;
+        int previousEnd = 1;
+        for (int band = 0; band < bandCount; band++) {
+            double bandLowHz = lowHz * Math.pow(ratio, band / (double) bandCount);
+            double bandHighHz = lowHz * Math.pow(ratio, (band + 1) / (double) bandCount);
+            int first = Math.min(binCount - 1, Math.max(previousEnd, (int) (bandLowHz / binHz)));
+            int end = Math.min(binCount, Math.max(first + 1, (int) Math.ceil(bandHighHz / binHz)));
+            firstBins[band] = first;
+            endBins[band] = end;
+            previousEnd = end;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.musicplayer;
+
+/**
+ * Turns SpectrumAnalyzer band levels into vertical bar and peak-marker line segments, in the
+ * x0, y0, x1, y1 layout Canvas.drawLines() takes.
+ */
+public final class SpectrumBars {
+
+    private SpectrumBars() {}
+
+    /** Floats computeLines() and computePeakLines() write for the given number of bands. */
+    public static int lineFloats(int bandCount) {
+        return bandCount * 4;
+    }
+
+    /** Horizontal space per bar; the stroke is narrower to leave a gap between bars. */
+    public static float barSpacing(int bandCount, float width) {
+        return bandCount == 0 ? 0 : width / bandCount;
+    }
+
+    /**
+     * Writes one bar per band into lines, which must hold lineFloats(bandCount) floats, and
+     * returns how many floats were written. Levels are 0..1 of the given height.
+     */
+    public static int computeLines(float[] levels, int bandCount, float width, float height, float[] lines) {
+        float spacing = barSpacing(bandCount, width);
+        int point = 0;
+        for (int band = 0; band < bandCount; band++) {
+            float x = (band + 0.5f) * spacing;
+            lines[point++] = x;
+            lines[point++] = height;
+            lines[point++] = x;
+            lines[point++] = height - levels[band] * height;
+        }
+        return point;
+    }
+
+    /**
+     * Writes a short horizontal marker per band at its peak, capHeight thick when drawn with
+     * a stroke of that width; bands with no peak are skipped. Returns how many floats were written.
+     */
+    public static int computePeakLines(float[] peaks, int bandCount, float width, float height, float capHeight,
+                                       float[] lines) {
+        float spacing = barSpacing(bandCount, width);
+        float halfBar = spacing * 0.3f;
+        int point = 0;
+        for (int band = 0; band < bandCount; band++) {
+            if (peaks[band] <= 0) {
+                continue;
+            }
+            float x = (band + 0.5f) * spacing;
+            float y = Math.max(capHeight / 2, height - peaks[band] * height - capHeight / 2);
+            lines[point++] = x - halfBar;
+            lines[point++] = y;
+            lines[point++] = x + halfBar;
+            lines[point++] = y;
+        }
+        return point;
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.musicplayer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ShortBuffer;
+
+/**
+ * Per-track loudness summary for the seekbar: the peak and RMS level of each of a fixed
+ * number of equal-length time buckets, quantized to one byte each.
+ *
+ * Buckets fill from the start while a decode is running; getFilledCount() says how many are
+ * final, so a partial summary can be drawn without copying.
+ */
+public final class Waveform {
+
+    public static final int DEFAULT_BUCKETS = 1024;
+
+    private static final int MAGIC = 0x4D505746; // "MPWF"
+    private static final int VERSION = 1;
+
+    private final byte[] peaks;
+    private final byte[] rms;
+    // Written by the decoding thread after the bucket bytes, read by the UI.
+    private volatile int filled;
+
+    public Waveform(int bucketCount) {
+        peaks = new byte[bucketCount];
+        rms = new byte[bucketCount];
+    }
+
+    public int getBucketCount() {
+        return peaks.length;
+    }
+
+    /** Buckets from 0 up to this index are final. */
+    public int getFilledCount() {
+        return filled;
+    }
+
+    public boolean isComplete() {
+        return filled == peaks.length;
+    }
+
+    /** Peak level of the bucket, 0 to 1. */
+    public float getPeak(int bucket) {
+        return (peaks[bucket] & 0xFF) / 255f;
+    }
+
+    /** RMS level of the bucket, 0 to 1. */
+    public float getRms(int bucket) {
+        return (rms[bucket] & 0xFF) / 255f;
+    }
+
+    // --- Serialization ---
+
+    /** Writes the summary along with the track's dateModified, so stale entries can be detected. */
+    void writeTo(DataOutput out, long dateModified) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(dateModified);
+        out.writeInt(peaks.length);
+        out.write(peaks);
+        out.write(rms);
+    }
+
+    /** Reads a complete summary, or returns null if the data is foreign or was written for another dateModified. */
+    static Waveform readFrom(DataInput in, long dateModified) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != dateModified) {
+            return null;
+        }
+        int bucketCount = in.readInt();
+        if (bucketCount <= 0 || bucketCount > 1 << 16) {
+            return null;
+        }
+        Waveform waveform = new Waveform(bucketCount);
+        in.readFully(waveform.peaks);
+        in.readFully(waveform.rms);
+        waveform.filled = bucketCount;
+        return waveform;
+    }
+
+    // --- Accumulation ---
+
+    /**
+     * Folds interleaved 16-bit PCM into a waveform as it is decoded, one buffer at a time.
+     * Only the running sums for the current bucket are kept, so memory does not grow with
+     * track length. Samples are placed by their presentation time, which keeps buckets
+     * aligned even if the decoder drops or repeats frames. Not thread-safe.
+     */
+    static final class Accumulator {
+        private final Waveform waveform;
+        private final long durationUs;
+        private int sampleRate;
+        private int channels;
+        private long totalFrames;
+
+        private int bucket;
+        private long bucketEndFrame;
+        private int peak;
+        private double sumSquares;
+        private long samples;
+
+        Accumulator(Waveform waveform, long durationUs, int sampleRate, int channels) {
+            this.waveform = waveform;
+            this.durationUs = durationUs;
+            setFormat(sampleRate, channels);
+        }
+
+        /** The decoder's output format can differ from the container's, e.g. for HE-AAC. */
+        void setFormat(int sampleRate, int channels) {
+            this.sampleRate = Math.max(1, sampleRate);
+            this.channels = Math.max(1, channels);
+            totalFrames = Math.max(1, durationUs * this.sampleRate / 1_000_000);
+            bucketEndFrame = endFrameOf(bucket);
+        }
+
+        void add(ShortBuffer pcm, long presentationTimeUs) {
+            int bucketCount = waveform.peaks.length;
+            long frame = presentationTimeUs * sampleRate / 1_000_000;
+            int frames = pcm.remaining() / channels;
+            for (int f = 0; f < frames; f++, frame++) {
+                while (frame >= bucketEndFrame && bucket < bucketCount - 1) {
+                    closeBucket();
+                }
+                for (int c = 0; c < channels; c++) {
+                    int sample = pcm.get();
+                    int magnitude = sample < 0 ? -sample : sample;
+                    if (magnitude > peak) {
+                        peak = magnitude;
+                    }
+                    sumSquares += (double) sample * sample;
+                }
+                samples += channels;
+            }
+        }
+
+        /** Closes every remaining bucket; buckets the stream never reached stay silent. */
+        void finish() {
+            int bucketCount = waveform.peaks.length;
+            while (bucket < bucketCount) {
+                closeBucket();
+            }
+        }
+
+        private void closeBucket() {
+            float peakLevel = Math.min(1f, peak / 32768f);
+            float rmsLevel = samples == 0 ? 0f : (float) Math.min(1.0, Math.sqrt(sumSquares / samples) / 32768.0);
+            waveform.peaks[bucket] = (byte) Math.round(peakLevel * 255);
+            waveform.rms[bucket] = (byte) Math.round(rmsLevel * 255);
+            bucket++;
+            waveform.filled = bucket;
+            bucketEndFrame = endFrameOf(bucket);
+            peak = 0;
+            sumSquares = 0;
+            samples = 0;
+        }
+
+        private long endFrameOf(int bucket) {
+            return (bucket + 1) * totalFrames / waveform.peaks.length;
+        }
+    }
+}
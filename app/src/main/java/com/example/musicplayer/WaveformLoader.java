@@ -0,0 +1,466 @@
+package com.example.musicplayer;
+
+import android.content.Context;
+import android.media.AudioFormat;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds seekbar waveforms by decoding tracks on a background thread.
+ *
+ * The decode streams through MediaCodec and folds each output buffer into the summary as it
+ * arrives, so memory use is the codec's buffers plus the summary itself, whatever the track
+ * length. Finished summaries are kept in a small memory LRU and in a disk cache of ~2 KiB
+ * files keyed by song id. There is a single decode thread: the track on screen always goes
+ * first, and a prefetch in progress gives way to it. All public methods must be called on
+ * the main thread.
+ */
+public final class WaveformLoader {
+
+    public interface Callback {
+        /**
+         * Called on the main thread, repeatedly with the same growing waveform while the
+         * decode runs and once more when it is complete; null if the track can't be decoded.
+         */
+        void onWaveformUpdated(@Nullable Waveform waveform);
+    }
+
+    private static final String TAG = "WaveformLoader";
+    private static final int MEMORY_ENTRIES = 32;
+    private static final long MAX_DISK_BYTES = 8L * 1024 * 1024;
+    private static final int WRITES_BETWEEN_TRIMS = 50;
+    private static final long CODEC_TIMEOUT_US = 10_000;
+    private static final long PROGRESS_INTERVAL_MS = 200;
+
+    private static final int PRIORITY_PREFETCH = 0;
+    private static final int PRIORITY_CURRENT = 1;
+
+    private static WaveformLoader instance;
+
+    private final Context context;
+    private final File diskDir;
+    private final LruCache<Long, Waveform> memoryCache = new LruCache<>(MEMORY_ENTRIES);
+    // Songs that failed to decode, so they are not retried on every track change. Main thread.
+    private final DecodeFailures failed = new DecodeFailures();
+    private final HashMap<Long, Job> inFlight = new HashMap<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger diskWrites = new AtomicInteger();
+    private final AtomicInteger jobSequence = new AtomicInteger();
+    private final PriorityBlockingQueue<Runnable> queue = new PriorityBlockingQueue<>();
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, queue, r -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            r.run();
+        }, "WaveformLoader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static synchronized WaveformLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new WaveformLoader(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private WaveformLoader(Context context) {
+        this.context = context;
+        this.diskDir = new File(context.getCacheDir(), "waveform");
+    }
+
+    /**
+     * Loads the song's waveform at the highest priority. On a memory hit the callback runs
+     * before this returns and null is returned; otherwise the returned ticket cancels the
+     * request. If a decode is already under way the partial waveform is delivered at once.
+     */
+    @Nullable
+    public Ticket load(Song song, Callback callback) {
+        long id = song.getId();
+        Waveform cached = memoryCache.get(id);
+        if (cached != null || failed.isBlocked(id, song.getDateModified(), SystemClock.elapsedRealtime())) {
+            callback.onWaveformUpdated(cached);
+            return null;
+        }
+
+        Job job = inFlight.get(id);
+        if (job == null) {
+            job = enqueue(song, PRIORITY_CURRENT);
+        } else {
+            if (job.priority < PRIORITY_CURRENT) {
+                // Re-insert so the queue sees the new priority; no-op if the job is already running.
+                boolean queued = queue.remove(job);
+                job.priority = PRIORITY_CURRENT;
+                if (queued) {
+                    executor.execute(job);
+                }
+            }
+            Waveform partial = job.waveform;
+            if (partial != null && partial.getFilledCount() > 0) {
+                callback.onWaveformUpdated(partial);
+            }
+        }
+        Ticket ticket = new Ticket(id, callback);
+        job.tickets.add(ticket);
+        return ticket;
+    }
+
+    /** Builds the song's waveform in the background if it isn't cached, e.g. for the next track. */
+    public void prefetch(Song song) {
+        long id = song.getId();
+        if (memoryCache.get(id) == null && !inFlight.containsKey(id)
+                && !failed.isBlocked(id, song.getDateModified(), SystemClock.elapsedRealtime())) {
+            enqueue(song, PRIORITY_PREFETCH);
+        }
+    }
+
+    /** Drops every cached waveform from memory; the disk tier is kept. */
+    public void clearMemory() {
+        memoryCache.evictAll();
+    }
+
+    private Job enqueue(Song song, int priority) {
+        Job job = new Job(song.getId(), song.getUriString(), song.getDateModified(), priority,
+                jobSequence.getAndIncrement());
+        inFlight.put(job.id, job);
+        executor.execute(job);
+        return job;
+    }
+
+    private void publishProgress(Job job) {
+        if (inFlight.get(job.id) != job || job.waveform == null) {
+            return;
+        }
+        for (Ticket ticket : new ArrayList<>(job.tickets)) {
+            ticket.callback.onWaveformUpdated(job.waveform);
+        }
+    }
+
+    private void deliver(Job job, Waveform waveform) {
+        // Cache even if the request was cancelled meanwhile; the decode is already paid for.
+        if (waveform != null) {
+            memoryCache.put(job.id, waveform);
+            failed.recordSuccess(job.id);
+        } else {
+            failed.recordFailure(job.id, job.dateModified, SystemClock.elapsedRealtime());
+        }
+        if (inFlight.get(job.id) != job) {
+            return;
+        }
+        inFlight.remove(job.id);
+        for (Ticket ticket : job.tickets) {
+            ticket.callback.onWaveformUpdated(waveform);
+        }
+    }
+
+    // --- Decoding (worker thread) ---
+
+    private void run(Job job) {
+        if (job.cancelled) {
+            return;
+        }
+        Waveform waveform = loadFromDisk(job.id, job.dateModified);
+        if (waveform == null) {
+            waveform = decode(job);
+            if (job.yielded) {
+                // Start over once the track on screen is done; partial prefetches aren't kept.
+                job.yielded = false;
+                job.waveform = null;
+                executor.execute(job);
+                return;
+            }
+            if (job.cancelled) {
+                return;
+            }
+            if (waveform != null) {
+                saveToDisk(job.id, job.dateModified, waveform);
+            }
+        }
+        final Waveform result = waveform;
+        mainHandler.post(() -> deliver(job, result));
+    }
+
+    private Waveform decode(Job job) {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            extractor.setDataSource(context, Uri.parse(job.uriString), null);
+            MediaFormat format = null;
+            String mime = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat candidate = extractor.getTrackFormat(i);
+                String candidateMime = candidate.getString(MediaFormat.KEY_MIME);
+                if (candidateMime != null && candidateMime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    format = candidate;
+                    mime = candidateMime;
+                    break;
+                }
+            }
+            if (format == null || !format.containsKey(MediaFormat.KEY_DURATION)) {
+                return null;
+            }
+            long durationUs = format.getLong(MediaFormat.KEY_DURATION);
+            if (durationUs <= 0) {
+                return null;
+            }
+
+            Waveform waveform = new Waveform(Waveform.DEFAULT_BUCKETS);
+            Waveform.Accumulator accumulator = new Waveform.Accumulator(waveform, durationUs,
+                    format.getInteger(MediaFormat.KEY_SAMPLE_RATE), format.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
+            job.waveform = waveform;
+
+            codec = MediaCodec.createDecoderByType(mime);
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            boolean inputDone = false;
+            int published = 0;
+            long lastPublishAt = SystemClock.uptimeMillis();
+            while (true) {
+                if (job.cancelled) {
+                    return null;
+                }
+                if (job.priority == PRIORITY_PREFETCH && hasWaitingCurrentJob()) {
+                    job.yielded = true;
+                    return null;
+                }
+
+                if (!inputDone) {
+                    int inIndex = codec.dequeueInputBuffer(CODEC_TIMEOUT_US);
+                    if (inIndex >= 0) {
+                        ByteBuffer input = codec.getInputBuffer(inIndex);
+                        int size = extractor.readSampleData(input, 0);
+                        if (size < 0) {
+                            codec.queueInputBuffer(inIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            codec.queueInputBuffer(inIndex, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+
+                int outIndex = codec.dequeueOutputBuffer(info, CODEC_TIMEOUT_US);
+                if (outIndex >= 0) {
+                    if (info.size > 0) {
+                        ByteBuffer output = codec.getOutputBuffer(outIndex);
+                        output.position(info.offset);
+                        output.limit(info.offset + info.size);
+                        accumulator.add(output.order(ByteOrder.nativeOrder()).asShortBuffer(), info.presentationTimeUs);
+                    }
+                    codec.releaseOutputBuffer(outIndex, false);
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                        break;
+                    }
+                } else if (outIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    MediaFormat outputFormat = codec.getOutputFormat();
+                    if (outputFormat.containsKey(MediaFormat.KEY_PCM_ENCODING)
+                            && outputFormat.getInteger(MediaFormat.KEY_PCM_ENCODING) != AudioFormat.ENCODING_PCM_16BIT) {
+                        return null;
+                    }
+                    accumulator.setFormat(outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+                            outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
+                }
+
+                long now = SystemClock.uptimeMillis();
+                if (now - lastPublishAt >= PROGRESS_INTERVAL_MS && waveform.getFilledCount() > published) {
+                    published = waveform.getFilledCount();
+                    lastPublishAt = now;
+                    mainHandler.post(() -> publishProgress(job));
+                }
+            }
+            accumulator.finish();
+            return waveform;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Error decoding waveform", e);
+            return null;
+        } finally {
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (IllegalStateException ignored) {
+                    // Never started.
+                }
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+
+    private boolean hasWaitingCurrentJob() {
+        Runnable next = queue.peek();
+        return next instanceof Job && ((Job) next).priority == PRIORITY_CURRENT;
+    }
+
+    // --- Disk tier (worker thread) ---
+
+    private File diskFile(long id) {
+        return new File(diskDir, id + ".wf");
+    }
+
+    private Waveform loadFromDisk(long id, long dateModified) {
+        File file = diskFile(id);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            Waveform waveform = Waveform.readFrom(in, dateModified);
+            if (waveform != null) {
+                file.setLastModified(System.currentTimeMillis());
+            } else {
+                file.delete(); // Track was modified, or the format changed.
+            }
+            return waveform;
+        } catch (IOException e) {
+            Log.w(TAG, "Dropping unreadable waveform", e);
+            file.delete();
+            return null;
+        }
+    }
+
+    private void saveToDisk(long id, long dateModified, Waveform waveform) {
+        if (!diskDir.isDirectory() && !diskDir.mkdirs()) {
+            return;
+        }
+        File file = diskFile(id);
+        File tmp = new File(diskDir, id + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            waveform.writeTo(out, dateModified);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not cache waveform", e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+        }
+        if (diskWrites.incrementAndGet() % WRITES_BETWEEN_TRIMS == 0) {
+            trimDisk();
+        }
+    }
+
+    /** Deletes the least recently used waveforms until the cache fits its budget. */
+    private void trimDisk() {
+        File[] files = diskDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= MAX_DISK_BYTES) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (total <= MAX_DISK_BYTES) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    // --- Job bookkeeping ---
+
+    /** Queue entry; higher priority first, then first come first served. */
+    private final class Job implements Runnable, Comparable<Job> {
+        final long id;
+        final String uriString;
+        final long dateModified;
+        final int sequence;
+        final boolean prefetched;
+        volatile int priority;
+        volatile boolean cancelled;
+        volatile Waveform waveform;
+        boolean yielded; // worker thread only
+        final List<Ticket> tickets = new ArrayList<>(1); // main thread only
+
+        Job(long id, String uriString, long dateModified, int priority, int sequence) {
+            this.id = id;
+            this.uriString = uriString;
+            this.dateModified = dateModified;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.prefetched = priority == PRIORITY_PREFETCH;
+        }
+
+        @Override
+        public void run() {
+            WaveformLoader.this.run(this);
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return Integer.compare(sequence, other.sequence);
+        }
+    }
+
+    public final class Ticket {
+        private final long id;
+        private final Callback callback;
+
+        private Ticket(long id, Callback callback) {
+            this.id = id;
+            this.callback = callback;
+        }
+
+        /**
+         * Stops the callback from firing. A load nobody waits for anymore is abandoned unless it
+         * started as a prefetch, in which case it falls back to prefetch priority.
+         */
+        public void cancel() {
+            Job job = inFlight.get(id);
+            if (job == null || !job.tickets.remove(this) || !job.tickets.isEmpty()) {
+                return;
+            }
+            if (job.prefetched) {
+                boolean queued = queue.remove(job);
+                job.priority = PRIORITY_PREFETCH;
+                if (queued) {
+                    executor.execute(job);
+                }
+            } else {
+                job.cancelled = true;
+                queue.remove(job);
+                inFlight.remove(id);
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.musicplayer;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.widget.SeekBar;
+
+import androidx.annotation.Nullable;
+
+/**
+ * SeekBar that draws the track's waveform as its track: a column per few pixels, RMS solid
+ * with the peak as a fainter halo, brighter up to the playback position. Buckets not yet
+ * decoded are simply not drawn, so a waveform still loading fills in from the left. Without
+ * a waveform it falls back to a thin line. The thumb and touch handling are SeekBar's own.
+ */
+public class WaveformSeekBar extends SeekBar {
+
+    private static final float COLUMN_WIDTH_DP = 2f;
+    private static final float COLUMN_GAP_DP = 1f;
+
+    private final Paint playedPeakPaint = new Paint();
+    private final Paint playedRmsPaint = new Paint();
+    private final Paint remainingPeakPaint = new Paint();
+    private final Paint remainingRmsPaint = new Paint();
+    private final float columnWidth;
+    private final float columnStep;
+
+    private Waveform waveform;
+
+    public WaveformSeekBar(Context context) {
+        this(context, null);
+    }
+
+    public WaveformSeekBar(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        float density = context.getResources().getDisplayMetrics().density;
+        columnWidth = COLUMN_WIDTH_DP * density;
+        columnStep = (COLUMN_WIDTH_DP + COLUMN_GAP_DP) * density;
+        playedPeakPaint.setColor(0x99FFFFFF);
+        playedRmsPaint.setColor(0xFFFFFFFF);
+        remainingPeakPaint.setColor(0x33FFFFFF);
+        remainingRmsPaint.setColor(0x66FFFFFF);
+    }
+
+    /** Shows the waveform, or the plain line for null; call again as a loading waveform fills in. */
+    public void setWaveform(@Nullable Waveform waveform) {
+        this.waveform = waveform;
+        invalidate();
+    }
+
+    @Override
+    public synchronized void setProgress(int progress) {
+        super.setProgress(progress);
+        // The played/remaining split is drawn here, not by the progress drawable.
+        invalidate();
+    }
+
+    @Override
+    protected synchronized void onDraw(Canvas canvas) {
+        float left = getPaddingLeft();
+        float width = getWidth() - getPaddingRight() - left;
+        float centerY = getHeight() / 2f;
+        float halfHeight = (getHeight() - getPaddingTop() - getPaddingBottom()) / 2f;
+        int max = getMax();
+        float progressX = left + (max > 0 ? width * getProgress() / max : 0);
+
+        Waveform waveform = this.waveform;
+        int columns = (int) (width / columnStep);
+        if (waveform == null || columns <= 0) {
+            canvas.drawRect(left, centerY - columnWidth / 4, progressX, centerY + columnWidth / 4, playedRmsPaint);
+            canvas.drawRect(progressX, centerY - columnWidth / 4, left + width, centerY + columnWidth / 4, remainingRmsPaint);
+        } else {
+            int buckets = waveform.getBucketCount();
+            int filled = waveform.getFilledCount();
+            for (int column = 0; column < columns; column++) {
+                int from = (int) ((long) column * buckets / columns);
+                int to = Math.max(from + 1, (int) ((long) (column + 1) * buckets / columns));
+                if (to > filled) {
+                    break;
+                }
+                float peak = 0;
+                float rms = 0;
+                for (int bucket = from; bucket < to; bucket++) {
+                    peak = Math.max(peak, waveform.getPeak(bucket));
+                    rms = Math.max(rms, waveform.getRms(bucket));
+                }
+                // Keep silence visible as a dot so the timeline stays readable.
+                float peakHeight = Math.max(peak * halfHeight, columnWidth / 2);
+                float rmsHeight = Math.max(rms * halfHeight, columnWidth / 2);
+                float x = left + column * columnStep;
+                boolean played = x < progressX;
+                canvas.drawRect(x, centerY - peakHeight, x + columnWidth, centerY + peakHeight,
+                        played ? playedPeakPaint : remainingPeakPaint);
+                canvas.drawRect(x, centerY - rmsHeight, x + columnWidth, centerY + rmsHeight,
+                        played ? playedRmsPaint : remainingRmsPaint);
+            }
+        }
+        super.onDraw(canvas);
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.musicplayer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BrowseIndexTest {
+
+    private static final String[] ALBUMS = {"Blue", "blue", "Red", "Green", "Blue"};
+    private static final String[] ARTISTS = {"Abba", "ABBA", "Beck", "Cher"};
+
+    /** Songs with clashing album and artist names; album ids 0-4 match ALBUMS. */
+    private static SongStore randomStore(Random random, int size, long firstId) {
+        SongStore.Builder builder = new SongStore.Builder(size);
+        for (int i = 0; i < size; i++) {
+            int album = random.nextInt(ALBUMS.length);
+            builder.add(firstId + i, "Title " + random.nextInt(50), ARTISTS[random.nextInt(ARTISTS.length)],
+                    ALBUMS[album], album, 1000 + random.nextInt(1000), random.nextInt(12), 0, 0);
+        }
+        return builder.build();
+    }
+
+    private static void assertSameIndex(BrowseIndex expected, BrowseIndex actual) {
+        assertEquals(expected.getGroupCount(), actual.getGroupCount());
+        for (int group = 0; group < expected.getGroupCount(); group++) {
+            assertEquals(expected.getName(group), actual.getName(group));
+            assertEquals(expected.getSongCount(group), actual.getSongCount(group));
+            assertEquals(expected.getTotalDurationMs(group), actual.getTotalDurationMs(group));
+            for (int i = 0; i < expected.getSongCount(group); i++) {
+                assertEquals("group " + group + " song " + i,
+                        expected.getPosition(group, i), actual.getPosition(group, i));
+            }
+        }
+    }
+
+    @Test
+    public void build_groupsByAlbumIdInNameOrder() {
+        SongStore.Builder builder = new SongStore.Builder(4);
+        builder.add(1, "A", "Abba", "Gold", 7, 100, 2, 0, 0);
+        builder.add(2, "B", "Cher", "Gold", 8, 200, 1, 0, 0);
+        builder.add(3, "C", "Abba", "Arrival", 9, 300, 1, 0, 0);
+        builder.add(4, "D", "Abba", "Gold", 7, 400, 1, 0, 0);
+        BrowseIndex index = BrowseIndex.build(BrowseIndex.Kind.ALBUM, builder.build());
+
+        assertEquals(3, index.getGroupCount());
+        assertEquals("Arrival", index.getName(0));
+        assertEquals("Gold", index.getName(1));
+        assertEquals("Gold", index.getName(2));
+        // Album 7 before album 8, its tracks in track order.
+        assertEquals(Arrays.asList(4L, 1L), Arrays.asList(index.getSongs(1).get(0).getId(),
+                index.getSongs(1).get(1).getId()));
+        assertEquals(500, index.getTotalDurationMs(1));
+        assertEquals(2, index.getSongs(2).get(0).getId());
+    }
+
+    @Test
+    public void build_keepsArtistSongsInStoreOrder() {
+        SongStore.Builder builder = new SongStore.Builder(3);
+        builder.add(1, "A", "Beck", "X", 1, 0, 0, 0, 0);
+        builder.add(2, "B", "Abba", "Y", 2, 0, 0, 0, 0);
+        builder.add(3, "C", "Beck", "Z", 3, 0, 0, 0, 0);
+        BrowseIndex index = BrowseIndex.build(BrowseIndex.Kind.ARTIST, builder.build());
+
+        assertEquals(2, index.getGroupCount());
+        assertEquals("Abba", index.getName(0));
+        assertEquals(0, index.getPosition(1, 0));
+        assertEquals(2, index.getPosition(1, 1));
+    }
+
+    @Test
+    public void update_matchesAFreshBuild() {
+        Random random = new Random(11);
+        for (BrowseIndex.Kind kind : BrowseIndex.Kind.values()) {
+            SongStore store = randomStore(random, 200, 0);
+            BrowseIndex index = BrowseIndex.build(kind, store);
+            long nextId = 1000;
+            for (int round = 0; round < 30; round++) {
+                // Drop some songs, modify some and add some in between; the rest keep their order.
+                List<Integer> kept = new ArrayList<>();
+                List<Integer> previous = new ArrayList<>();
+                SongStore added = randomStore(random, random.nextInt(20), nextId);
+                nextId += added.size();
+                for (int position = 0; position < store.size(); position++) {
+                    int roll = random.nextInt(10);
+                    if (roll > 0) {
+                        kept.add(position);
+                        previous.add(roll == 1 ? -1 : position);
+                    }
+                }
+                SongStore.Builder builder = new SongStore.Builder(kept.size() + added.size());
+                List<Integer> order = new ArrayList<>();
+                for (int i = 0; i < kept.size(); i++) {
+                    order.add(i);
+                }
+                for (int i = 0; i < added.size(); i++) {
+                    order.add(random.nextInt(order.size() + 1), kept.size() + i);
+                }
+                int[] previousPositions = new int[order.size()];
+                for (int i = 0; i < order.size(); i++) {
+                    int from = order.get(i);
+                    if (from < kept.size()) {
+                        Song song = store.get(kept.get(from));
+                        if (previous.get(from) < 0) {
+                            int album = random.nextInt(ALBUMS.length);
+                            builder.add(song.getId(), song.getTitle(), ARTISTS[random.nextInt(ARTISTS.length)],
+                                    ALBUMS[album], album, song.getDurationMs(), song.getTrackNumber(), 0, 1);
+                        } else {
+                            builder.add(song);
+                        }
+                        previousPositions[i] = previous.get(from);
+                    } else {
+                        builder.add(added.get(from - kept.size()));
+                        previousPositions[i] = -1;
+                    }
+                }
+                store = builder.build();
+                index = index.update(store, previousPositions);
+                assertSameIndex(BrowseIndex.build(kind, store), index);
+            }
+        }
+    }
+
+    @Test
+    public void update_withoutChangesKeepsEveryGroup() {
+        SongStore store = randomStore(new Random(5), 100, 0);
+        BrowseIndex index = BrowseIndex.build(BrowseIndex.Kind.ALBUM, store);
+        int[] identity = new int[store.size()];
+        for (int i = 0; i < identity.length; i++) {
+            identity[i] = i;
+        }
+
+        assertSameIndex(index, index.update(store, identity));
+    }
+}
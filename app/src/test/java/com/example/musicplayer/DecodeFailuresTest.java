@@ -0,0 +1,63 @@
+package com.example.musicplayer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DecodeFailuresTest {
+
+    private static final long DELAY = DecodeFailures.FIRST_RETRY_DELAY_MS;
+
+    @Test
+    public void failure_blocksUntilTheRetryDelayHasPassed() {
+        DecodeFailures failures = new DecodeFailures();
+        assertFalse(failures.isBlocked(1, 100, 0));
+
+        failures.recordFailure(1, 100, 0);
+
+        assertTrue(failures.isBlocked(1, 100, DELAY - 1));
+        assertFalse(failures.isBlocked(1, 100, DELAY));
+        assertFalse(failures.isBlocked(2, 100, 0));
+    }
+
+    @Test
+    public void repeatedFailures_doubleTheDelayThenGiveUp() {
+        DecodeFailures failures = new DecodeFailures();
+        long now = 0;
+        for (int failure = 1; failure < DecodeFailures.MAX_FAILURES; failure++) {
+            failures.recordFailure(1, 100, now);
+            long delay = DELAY << (failure - 1);
+            assertTrue(failures.isBlocked(1, 100, now + delay - 1));
+            assertFalse(failures.isBlocked(1, 100, now + delay));
+            now += delay;
+        }
+
+        failures.recordFailure(1, 100, now);
+
+        assertTrue(failures.isBlocked(1, 100, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void modifiedFile_startsOver() {
+        DecodeFailures failures = new DecodeFailures();
+        for (int i = 0; i < DecodeFailures.MAX_FAILURES; i++) {
+            failures.recordFailure(1, 100, 0);
+        }
+
+        assertFalse(failures.isBlocked(1, 101, 0));
+
+        failures.recordFailure(1, 101, 0);
+
+        assertFalse(failures.isBlocked(1, 101, DELAY));
+    }
+
+    @Test
+    public void success_clearsTheFailures() {
+        DecodeFailures failures = new DecodeFailures();
+        failures.recordFailure(1, 100, 0);
+
+        failures.recordSuccess(1);
+
+        assertFalse(failures.isBlocked(1, 100, 0));
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.musicplayer;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketOf_staysWithinAnEighthOfTheValue() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong() >>> (24 + random.nextInt(40));
+            long upper = LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(value));
+            assertTrue(value + " above its bucket", value <= upper);
+            assertTrue(value + " too far from " + upper, upper - value <= value / 8);
+        }
+    }
+
+    @Test
+    public void buckets_increaseWithValue() {
+        int previous = LatencyHistogram.bucketOf(0);
+        for (long value = 1; value < 1 << 20; value++) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(bucket == previous || bucket == previous + 1);
+            previous = bucket;
+        }
+    }
+
+    @Test
+    public void percentiles_boundTheRecordedValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMaxMicros());
+        assertEquals(500, histogram.getMeanMicros());
+        long p50 = histogram.getPercentileMicros(50);
+        assertTrue(p50 >= 500 && p50 <= 500 + 500 / 8);
+        long p99 = histogram.getPercentileMicros(99);
+        assertTrue(p99 >= 990 && p99 <= 1000);
+        assertEquals(1000, histogram.getPercentileMicros(100));
+    }
+
+    @Test
+    public void record_clampsNegativeAndHugeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE / 2);
+
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMicros(50));
+        assertEquals(Long.MAX_VALUE / 2, histogram.getMaxMicros());
+    }
+
+    @Test
+    public void getBuckets_listsNonEmptyBucketsInOrder() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(3);
+        histogram.record(3);
+        histogram.record(100_000);
+
+        long[][] buckets = histogram.getBuckets();
+
+        assertEquals(2, buckets.length);
+        assertArrayEquals(new long[]{3, 2}, buckets[0]);
+        assertTrue(buckets[1][0] >= 100_000);
+        assertEquals(1, buckets[1][1]);
+    }
+
+    @Test
+    public void reset_forgetsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(42);
+
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxMicros());
+        assertEquals(0, histogram.getPercentileMicros(50));
+        assertEquals(0, histogram.getBuckets().length);
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.musicplayer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class LoudnessStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void put_survivesReopening() throws IOException {
+        File file = new File(folder.getRoot(), "loudness");
+        LoudnessStore store = LoudnessStore.open(file);
+        store.put(1, 100, new Loudness(-9.03f, 0.5f));
+        store.put(2, 200, new Loudness(Float.NEGATIVE_INFINITY, 0f));
+        store.close();
+
+        LoudnessStore reopened = LoudnessStore.open(file);
+
+        Loudness loudness = reopened.get(1, 100);
+        assertEquals(-9.03f, loudness.getIntegratedLufs(), 0.005f);
+        assertEquals(0.5f, loudness.getPeak(), 0.0001f);
+        assertEquals(Float.NEGATIVE_INFINITY, reopened.get(2, 200).getIntegratedLufs(), 0f);
+        reopened.close();
+    }
+
+    @Test
+    public void get_ignoresResultsForAnOlderFile() throws IOException {
+        LoudnessStore store = LoudnessStore.open(new File(folder.getRoot(), "loudness"));
+        store.put(1, 100, new Loudness(-10f, 0.5f));
+
+        assertNull(store.get(1, 101));
+        assertNull(store.get(2, 100));
+
+        store.put(1, 101, new Loudness(-12f, 0.5f));
+
+        assertEquals(-12f, store.get(1, 101).getIntegratedLufs(), 0.005f);
+        store.close();
+    }
+
+    @Test
+    public void inMemory_keepsResultsWithoutAFile() throws IOException {
+        LoudnessStore store = LoudnessStore.inMemory();
+        store.put(1, 100, new Loudness(-10f, 0.5f));
+        store.put(1, 101, new Loudness(-12f, 0.5f));
+
+        assertNull(store.get(1, 100));
+        assertEquals(-12f, store.get(1, 101).getIntegratedLufs(), 0.005f);
+        store.close();
+    }
+
+    @Test
+    public void open_cutsOffATornRecord() throws IOException {
+        File file = new File(folder.getRoot(), "loudness");
+        LoudnessStore store = LoudnessStore.open(file);
+        store.put(1, 100, new Loudness(-10f, 0.5f));
+        store.put(2, 100, new Loudness(-11f, 0.5f));
+        store.close();
+        long goodLength = file.length();
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[]{0, 0, 0, 0, 0, 0, 0});
+        }
+
+        LoudnessStore reopened = LoudnessStore.open(file);
+        assertEquals(goodLength, file.length());
+        reopened.put(3, 100, new Loudness(-12f, 0.5f));
+        reopened.close();
+
+        LoudnessStore again = LoudnessStore.open(file);
+        assertNotNull(again.get(1, 100));
+        assertNotNull(again.get(2, 100));
+        assertEquals(-12f, again.get(3, 100).getIntegratedLufs(), 0.005f);
+        again.close();
+    }
+
+    @Test
+    public void open_startsOverOnAnotherVersion() throws IOException {
+        File file = new File(folder.getRoot(), "loudness");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(0x4d504c47);
+            out.writeInt(99);
+            out.writeLong(1);
+            out.writeLong(100);
+            out.writeShort(-1000);
+            out.writeShort(16384);
+        }
+
+        LoudnessStore store = LoudnessStore.open(file);
+        assertNull(store.get(1, 100));
+        store.put(1, 100, new Loudness(-10f, 0.5f));
+        store.close();
+
+        assertEquals(-10f, LoudnessStore.open(file).get(1, 100).getIntegratedLufs(), 0.005f);
+    }
+
+    @Test
+    public void open_startsOverOnGarbage() throws IOException {
+        File file = new File(folder.getRoot(), "loudness");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{1, 2, 3});
+        }
+
+        LoudnessStore store = LoudnessStore.open(file);
+        store.put(1, 100, new Loudness(-10f, 0.5f));
+        store.close();
+
+        assertNotNull(LoudnessStore.open(file).get(1, 100));
+    }
+
+    @Test
+    public void put_compactsSupersededRecords() throws IOException {
+        File file = new File(folder.getRoot(), "loudness");
+        LoudnessStore store = LoudnessStore.open(file);
+        for (int i = 0; i < 5000; i++) {
+            store.put(i % 10, i, new Loudness(-10f - i % 10, 0.5f));
+        }
+        store.close();
+
+        // Never more than twice the live records plus one compaction's worth of appends.
+        assertTrue(file.length() < 8 + 20 * 1010);
+        LoudnessStore reopened = LoudnessStore.open(file);
+        assertEquals(-19f, reopened.get(9, 4999).getIntegratedLufs(), 0.005f);
+        reopened.close();
+    }
+
+    @Test
+    public void put_recoversAfterAFailedRewrite() throws IOException {
+        File directory = folder.newFolder("data");
+        File file = new File(directory, "loudness");
+        LoudnessStore store = LoudnessStore.open(file);
+        store.close();
+        // With the directory replaced by a file, the log can be neither appended to nor rewritten.
+        assertTrue(file.delete() && directory.delete() && directory.createNewFile());
+        try {
+            store.put(1, 100, new Loudness(-10f, 0.5f));
+            fail("Expected the write to fail");
+        } catch (IOException expected) {
+            // No log is open now.
+        }
+        assertNotNull(store.get(1, 100));
+
+        assertTrue(directory.delete());
+        store.put(2, 100, new Loudness(-11f, 0.5f));
+        store.close();
+
+        LoudnessStore reopened = LoudnessStore.open(file);
+        assertNotNull(reopened.get(1, 100));
+        assertNotNull(reopened.get(2, 100));
+        reopened.close();
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.musicplayer;
+
+import org.junit.Test;
+
+import java.nio.ShortBuffer;
+
+import static org.junit.Assert.*;
+
+public class LoudnessTest {
+
+    private static final int RATE = 48000;
+
+    /** A 997 Hz sine, the BS.1770 reference tone, at the given linear amplitude. */
+    private static ShortBuffer sine(double amplitude, double seconds, int channels) {
+        int frames = (int) (RATE * seconds);
+        short[] samples = new short[frames * channels];
+        for (int f = 0; f < frames; f++) {
+            short sample = (short) Math.round(amplitude * 32767 * Math.sin(2 * Math.PI * 997 * f / RATE));
+            for (int c = 0; c < channels; c++) {
+                samples[f * channels + c] = sample;
+            }
+        }
+        return ShortBuffer.wrap(samples);
+    }
+
+    @Test
+    public void meter_readsTheReferenceTone() {
+        // A full-scale tone in one channel is -3.01 LUFS; half scale is 6.02 dB lower.
+        Loudness.Meter meter = new Loudness.Meter(RATE, 1);
+        meter.add(sine(0.5, 5, 1));
+
+        Loudness loudness = meter.finish();
+
+        assertEquals(-9.03, loudness.getIntegratedLufs(), 0.15);
+        assertEquals(0.5, loudness.getPeak(), 0.001);
+    }
+
+    @Test
+    public void meter_sumsChannels() {
+        Loudness.Meter meter = new Loudness.Meter(RATE, 2);
+        meter.add(sine(0.5, 5, 2));
+
+        assertEquals(-6.02, meter.finish().getIntegratedLufs(), 0.15);
+    }
+
+    @Test
+    public void meter_gatesOutQuietPassages() {
+        Loudness.Meter meter = new Loudness.Meter(RATE, 1);
+        meter.add(sine(0.5, 10, 1));
+        meter.add(sine(0.005, 10, 1));
+
+        assertEquals(-9.03, meter.finish().getIntegratedLufs(), 0.15);
+    }
+
+    @Test
+    public void meter_acceptsInputInAnyChunks() {
+        Loudness.Meter whole = new Loudness.Meter(RATE, 1);
+        whole.add(sine(0.25, 3, 1));
+        Loudness.Meter chunked = new Loudness.Meter(RATE, 1);
+        ShortBuffer pcm = sine(0.25, 3, 1);
+        while (pcm.hasRemaining()) {
+            ShortBuffer chunk = pcm.slice();
+            chunk.limit(Math.min(777, chunk.remaining()));
+            chunked.add(chunk);
+            pcm.position(pcm.position() + chunk.limit());
+        }
+
+        assertEquals(whole.finish().getIntegratedLufs(), chunked.finish().getIntegratedLufs(), 0f);
+    }
+
+    @Test
+    public void meter_reportsSilenceAsNegativeInfinity() {
+        Loudness.Meter meter = new Loudness.Meter(RATE, 2);
+        meter.add(ShortBuffer.wrap(new short[RATE * 2]));
+
+        Loudness loudness = meter.finish();
+
+        assertEquals(Float.NEGATIVE_INFINITY, loudness.getIntegratedLufs(), 0f);
+        assertEquals(0f, loudness.getPeak(), 0f);
+        assertEquals(0f, loudness.getGainDb(), 0f);
+    }
+
+    @Test
+    public void gain_bringsTracksToTheReferenceWithoutClipping() {
+        assertEquals(-10f, new Loudness(-8f, 0.5f).getGainDb(), 0.001f);
+        assertEquals(4f, new Loudness(-22f, 0.5f).getGainDb(), 0.001f);
+        // 12 dB would push a 0.9 peak past full scale.
+        assertEquals(0.915f, new Loudness(-30f, 0.9f).getGainDb(), 0.001f);
+    }
+}
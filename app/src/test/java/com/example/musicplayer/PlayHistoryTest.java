@@ -0,0 +1,160 @@
+package com.example.musicplayer;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PlayHistoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ScheduledThreadPoolExecutor executor;
+
+    @After
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /** A history over the folder whose files have been read. */
+    private PlayHistory open() throws InterruptedException, ExecutionException {
+        executor = new ScheduledThreadPoolExecutor(1);
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        PlayHistory history = new PlayHistory(folder.getRoot(), executor);
+        executor.submit(() -> { }).get();
+        return history;
+    }
+
+    /** Writes everything out and stops the history's thread, as a killed process would after a flush. */
+    private void close(PlayHistory history) throws InterruptedException {
+        history.flush();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        executor = null;
+    }
+
+    private File logFile() {
+        return new File(folder.getRoot(), "play_history.log");
+    }
+
+    @Test
+    public void events_surviveReopening() throws Exception {
+        PlayHistory history = open();
+        history.record(1, PlayStats.EVENT_PLAYED);
+        history.record(1, PlayStats.EVENT_COMPLETED);
+        history.record(2, PlayStats.EVENT_PLAYED);
+        history.record(2, PlayStats.EVENT_SKIPPED);
+        history.record(1, PlayStats.EVENT_PLAYED);
+        close(history);
+
+        PlayHistory reopened = open();
+
+        assertEquals(2, reopened.getStats(1).getPlays());
+        assertEquals(1, reopened.getStats(1).getCompletions());
+        assertEquals(1, reopened.getStats(2).getSkips());
+        assertArrayEquals(new long[]{1, 2}, reopened.getMostPlayed(10));
+        assertArrayEquals(new long[]{1}, reopened.getRecentlyPlayed(1));
+    }
+
+    @Test
+    public void open_dropsATornRecordAndKeepsAppending() throws Exception {
+        PlayHistory history = open();
+        history.record(1, PlayStats.EVENT_PLAYED);
+        close(history);
+        long goodLength = logFile().length();
+        try (FileOutputStream out = new FileOutputStream(logFile(), true)) {
+            out.write(new byte[]{0, 0, 0, 0, 0, 0, 0, 0, 9});
+        }
+
+        PlayHistory reopened = open();
+        assertEquals(goodLength, logFile().length());
+        reopened.record(2, PlayStats.EVENT_PLAYED);
+        close(reopened);
+
+        PlayHistory again = open();
+        assertEquals(1, again.getStats(1).getPlays());
+        assertEquals(1, again.getStats(2).getPlays());
+    }
+
+    @Test
+    public void open_ignoresALogOfAnotherVersion() throws Exception {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(logFile()))) {
+            out.writeInt(0x4d505048);
+            out.writeInt(99);
+            out.writeLong(0);
+            out.writeLong(1);
+            out.writeLong(1000);
+            out.writeByte(PlayStats.EVENT_PLAYED);
+        }
+
+        PlayHistory history = open();
+        assertNull(history.getStats(1));
+        history.record(2, PlayStats.EVENT_PLAYED);
+        close(history);
+
+        assertEquals(1, open().getStats(2).getPlays());
+    }
+
+    @Test
+    public void open_ignoresUnreadableCounters() throws Exception {
+        Files.write(new File(folder.getRoot(), "play_stats").toPath(), new byte[]{0x4d, 0x50, 0x50, 0x53, 0, 0});
+
+        PlayHistory history = open();
+        history.record(1, PlayStats.EVENT_PLAYED);
+        close(history);
+
+        assertEquals(1, open().getStats(1).getPlays());
+    }
+
+    @Test
+    public void compaction_neverCountsAnEventTwice() throws Exception {
+        PlayHistory history = open();
+        for (int i = 0; i < 10; i++) {
+            history.record(1, PlayStats.EVENT_PLAYED);
+        }
+        close(history);
+        byte[] oldLog = Files.readAllBytes(logFile().toPath());
+
+        history = open();
+        for (int i = 0; i < 6000; i++) {
+            history.record(2 + i % 3, PlayStats.EVENT_PLAYED);
+        }
+        close(history);
+        assertTrue("expected a compacted log", logFile().length() < 6000 * 17);
+
+        PlayHistory reopened = open();
+        assertEquals(10, reopened.getStats(1).getPlays());
+        assertEquals(2000, reopened.getStats(2).getPlays());
+        close(reopened);
+
+        // As if the process died after writing the counters but before replacing the log.
+        Files.write(logFile().toPath(), oldLog);
+        PlayHistory afterCrash = open();
+        assertEquals(10, afterCrash.getStats(1).getPlays());
+        assertEquals(2000, afterCrash.getStats(4).getPlays());
+    }
+
+    @Test
+    public void record_countsBeforeTheFileIsWritten() throws Exception {
+        PlayHistory history = open();
+
+        history.record(7, PlayStats.EVENT_PLAYED);
+        history.record(7, PlayStats.EVENT_SKIPPED);
+
+        assertEquals(1f, history.getStats(7).getSkipRate(), 0f);
+        assertFalse(logFile().length() > 16);
+    }
+}
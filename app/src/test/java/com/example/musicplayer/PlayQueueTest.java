@@ -0,0 +1,262 @@
+package com.example.musicplayer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class PlayQueueTest {
+
+    private static List<Song> songs(int count) {
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            songs.add(new Song(100 + i, "Song " + i, "Artist", 0));
+        }
+        return songs;
+    }
+
+    private static List<Long> ids(List<Song> songs) {
+        List<Long> ids = new ArrayList<>();
+        for (Song song : songs) {
+            ids.add(song.getId());
+        }
+        return ids;
+    }
+
+    private static List<Long> ids(PlayQueue queue) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < queue.size(); i++) {
+            ids.add(queue.get(i).getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void songs_returnsTheListItselfUntilEdited() {
+        List<Song> songs = songs(5);
+        PlayQueue queue = new PlayQueue(new Random(1));
+        queue.setSongs(songs, 2);
+
+        assertSame(songs, queue.songs());
+        assertEquals(5, queue.size());
+        assertEquals(2, queue.getCurrentPosition());
+        assertEquals(102, queue.getCurrentSong().getId());
+    }
+
+    @Test
+    public void insert_shiftsFollowingSongs() {
+        PlayQueue queue = new PlayQueue(new Random(1));
+        queue.setSongs(songs(3), 0);
+        int version = queue.getVersion();
+
+        int entry = queue.insert(1, new Song(7, "Inserted", "Artist", 0));
+
+        assertEquals(4, queue.size());
+        assertEquals(1, queue.positionOf(entry));
+        assertEquals(Arrays.asList(100L, 7L, 101L, 102L), ids(queue));
+        assertEquals(ids(queue), ids(queue.songs()));
+        assertNotEquals(version, queue.getVersion());
+    }
+
+    @Test
+    public void enqueue_appendsAndStartsAnEmptyQueue() {
+        PlayQueue queue = new PlayQueue(new Random(1));
+        queue.setSongs(new ArrayList<Song>(), 0);
+        assertEquals(PlayQueue.NO_ENTRY, queue.getCurrentEntry());
+
+        int first = queue.enqueue(new Song(1, "A", "Artist", 0));
+        queue.enqueue(new Song(2, "B", "Artist", 0));
+
+        assertEquals(first, queue.getCurrentEntry());
+        assertEquals(Arrays.asList(1L, 2L), ids(queue));
+    }
+
+    @Test
+    public void remove_currentKeepsPlayingAndContinuesFromItsPlace() {
+        PlayQueue queue = new PlayQueue(new Random(1));
+        queue.setSongs(songs(4), 1);
+
+        queue.remove(1);
+
+        assertEquals(3, queue.size());
+        assertEquals(101, queue.getCurrentSong().getId());
+        assertEquals(-1, queue.getCurrentPosition());
+        assertEquals(102, queue.getSong(queue.next(false)).getId());
+    }
+
+    @Test
+    public void remove_lastSongEmptiesTheQueue() {
+        PlayQueue queue = new PlayQueue(new Random(1));
+        queue.setSongs(songs(1), 0);
+
+        queue.remove(0);
+
+        assertTrue(queue.isEmpty());
+        assertTrue(queue.songs().isEmpty());
+        assertEquals(PlayQueue.NO_ENTRY, queue.next(false));
+    }
+
+    @Test
+    public void move_keepsEntryIdentity() {
+        PlayQueue queue = new PlayQueue(new Random(1));
+        queue.setSongs(songs(5), 0);
+        int entry = queue.entryAt(4);
+
+        queue.move(4, 1);
+
+        assertEquals(1, queue.positionOf(entry));
+        assertEquals(Arrays.asList(100L, 104L, 101L, 102L, 103L), ids(queue));
+
+        queue.move(0, 4);
+
+        assertEquals(Arrays.asList(104L, 101L, 102L, 103L, 100L), ids(queue));
+        assertEquals(100, queue.getCurrentSong().getId());
+        assertEquals(4, queue.getCurrentPosition());
+    }
+
+    @Test
+    public void edits_matchAnArrayListModel() {
+        Random random = new Random(42);
+        PlayQueue queue = new PlayQueue(new Random(7));
+        List<Song> model = new ArrayList<>(songs(50));
+        queue.setSongs(new ArrayList<>(model), 0);
+        long nextId = 1000;
+
+        for (int step = 0; step < 2000; step++) {
+            int op = random.nextInt(3);
+            if (op == 0 || model.size() < 2) {
+                int position = random.nextInt(model.size() + 1);
+                Song song = new Song(nextId++, "New", "Artist", 0);
+                queue.insert(position, song);
+                model.add(position, song);
+            } else if (op == 1) {
+                int position = random.nextInt(model.size());
+                queue.remove(position);
+                model.remove(position);
+            } else {
+                int from = random.nextInt(model.size());
+                int to = random.nextInt(model.size());
+                queue.move(from, to);
+                model.add(to, model.remove(from));
+            }
+            assertEquals(model.size(), queue.size());
+        }
+        assertEquals(ids(model), ids(queue));
+        assertEquals(ids(model), ids(queue.songs()));
+    }
+
+    @Test
+    public void songs_isNotChangedByLaterEdits() {
+        PlayQueue queue = new PlayQueue(new Random(1));
+        queue.setSongs(songs(3), 0);
+        queue.enqueue(new Song(9, "Extra", "Artist", 0));
+        List<Song> snapshot = queue.songs();
+
+        queue.remove(0);
+
+        assertEquals(Arrays.asList(100L, 101L, 102L, 9L), ids(snapshot));
+    }
+
+    @Test
+    public void getVersion_ignoresPlaybackAndModes() {
+        PlayQueue queue = new PlayQueue(new Random(1));
+        queue.setSongs(songs(3), 0);
+        int version = queue.getVersion();
+
+        queue.next(false);
+        queue.setShuffled(true);
+        queue.setRepeatMode(PlayQueue.REPEAT_ONE);
+
+        assertEquals(version, queue.getVersion());
+
+        queue.replaceSong(queue.entryAt(0), new Song(100, "Retitled", "Artist", 1));
+
+        assertNotEquals(version, queue.getVersion());
+        assertEquals("Retitled", queue.get(0).getTitle());
+    }
+
+    @Test
+    public void repeatModes_atTheEnd() {
+        PlayQueue queue = new PlayQueue(new Random(1));
+        queue.setSongs(songs(2), 1);
+
+        queue.setRepeatMode(PlayQueue.REPEAT_OFF);
+        assertEquals(PlayQueue.NO_ENTRY, queue.peekNext(true));
+
+        queue.setRepeatMode(PlayQueue.REPEAT_ALL);
+        assertEquals(queue.entryAt(0), queue.peekNext(true));
+
+        queue.setRepeatMode(PlayQueue.REPEAT_ONE);
+        assertEquals(queue.getCurrentEntry(), queue.peekNext(true));
+        assertEquals(queue.entryAt(0), queue.peekNext(false));
+    }
+
+    @Test
+    public void shuffle_playsEverySongOncePerRound() {
+        PlayQueue queue = new PlayQueue(new Random(3));
+        queue.setSongs(songs(20), 5);
+        queue.setRepeatMode(PlayQueue.REPEAT_OFF);
+        queue.setShuffled(true);
+
+        Set<Integer> played = new HashSet<>();
+        played.add(queue.getCurrentEntry());
+        int entry;
+        while ((entry = queue.next(false)) != PlayQueue.NO_ENTRY) {
+            assertTrue("played twice: " + entry, played.add(entry));
+        }
+        assertEquals(20, played.size());
+    }
+
+    @Test
+    public void shuffle_skipsRemovedAndIncludesAddedSongs() {
+        PlayQueue queue = new PlayQueue(new Random(5));
+        queue.setSongs(songs(10), 0);
+        queue.setRepeatMode(PlayQueue.REPEAT_OFF);
+        queue.setShuffled(true);
+        int removed = queue.entryAt(3);
+        queue.remove(3);
+        int added = queue.enqueue(new Song(9, "Added", "Artist", 0));
+
+        Set<Integer> played = new HashSet<>();
+        int entry;
+        while ((entry = queue.next(false)) != PlayQueue.NO_ENTRY) {
+            played.add(entry);
+        }
+        assertFalse(played.contains(removed));
+        assertTrue(played.contains(added));
+        assertEquals(9, played.size());
+    }
+
+    @Test
+    public void shuffle_playNextComesFirst() {
+        PlayQueue queue = new PlayQueue(new Random(1));
+        queue.setSongs(songs(10), 0);
+        queue.setShuffled(true);
+
+        int entry = queue.playNext(new Song(9, "Next", "Artist", 0));
+
+        assertEquals(1, queue.positionOf(entry));
+        assertEquals(entry, queue.next(false));
+    }
+
+    @Test
+    public void shuffle_previousReturnsToTheSongsPlayed() {
+        PlayQueue queue = new PlayQueue(new Random(1));
+        queue.setSongs(songs(10), 0);
+        queue.setShuffled(true);
+        int first = queue.getCurrentEntry();
+        int second = queue.next(false);
+        int third = queue.next(false);
+
+        assertEquals(second, queue.previous());
+        assertEquals(first, queue.previous());
+        assertEquals(second, queue.next(false));
+        assertEquals(third, queue.next(false));
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.musicplayer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PlayStatsTest {
+
+    @Test
+    public void mostPlayed_breaksTiesByLatestPlay() {
+        PlayStats stats = new PlayStats();
+        stats.apply(1, PlayStats.EVENT_PLAYED, 100);
+        stats.apply(2, PlayStats.EVENT_PLAYED, 200);
+        stats.apply(2, PlayStats.EVENT_PLAYED, 300);
+        stats.apply(3, PlayStats.EVENT_PLAYED, 400);
+
+        assertArrayEquals(new long[]{2, 3, 1}, stats.mostPlayed(10));
+        assertArrayEquals(new long[]{2, 3}, stats.mostPlayed(2));
+        assertArrayEquals(new long[0], stats.mostPlayed(-1));
+    }
+
+    @Test
+    public void recentlyPlayed_movesWithEveryPlay() {
+        PlayStats stats = new PlayStats();
+        stats.apply(1, PlayStats.EVENT_PLAYED, 100);
+        stats.apply(2, PlayStats.EVENT_PLAYED, 200);
+
+        stats.apply(1, PlayStats.EVENT_PLAYED, 300);
+
+        assertArrayEquals(new long[]{1, 2}, stats.recentlyPlayed(10));
+        assertEquals(300, stats.get(1).getLastPlayedMs());
+    }
+
+    @Test
+    public void completionsAndSkips_dontCountAsPlays() {
+        PlayStats stats = new PlayStats();
+        stats.apply(1, PlayStats.EVENT_SKIPPED, 100);
+        stats.apply(1, PlayStats.EVENT_COMPLETED, 100);
+        stats.apply(1, 42, 100);
+
+        assertEquals(0, stats.get(1).getPlays());
+        assertEquals(1, stats.get(1).getSkips());
+        assertEquals(0f, stats.get(1).getSkipRate(), 0f);
+        assertEquals(0, stats.mostPlayed(10).length);
+        assertEquals(1, stats.size());
+    }
+
+    @Test
+    public void add_mergesCounters() {
+        PlayStats stats = new PlayStats();
+        stats.add(1, 4, 3, 1, 500);
+        stats.add(1, 1, 0, 1, 100);
+
+        PlayStats.Entry entry = stats.get(1);
+        assertEquals(5, entry.getPlays());
+        assertEquals(3, entry.getCompletions());
+        assertEquals(0.4f, entry.getSkipRate(), 0.0001f);
+        assertEquals(500, entry.getLastPlayedMs());
+    }
+}
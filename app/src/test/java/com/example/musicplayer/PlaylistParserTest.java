@@ -0,0 +1,85 @@
+package com.example.musicplayer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PlaylistParserTest {
+
+    private static List<String> parse(String playlist) throws IOException {
+        List<String> entries = new ArrayList<>();
+        int count = PlaylistParser.parse(new StringReader(playlist), entries::add);
+        assertEquals(entries.size(), count);
+        return entries;
+    }
+
+    @Test
+    public void m3u_skipsDirectivesCommentsAndBlankLines() throws IOException {
+        String playlist = "#EXTM3U\n"
+                + "#EXTINF:215,Artist - Title\n"
+                + "Music/01.mp3\n"
+                + "\n"
+                + "# a comment\n"
+                + "   /sdcard/Music/02.flac  \n"
+                + "file:///sdcard/Music/03%20Song.mp3\n";
+
+        assertEquals(Arrays.asList("Music/01.mp3", "/sdcard/Music/02.flac", "file:///sdcard/Music/03%20Song.mp3"),
+                parse(playlist));
+    }
+
+    @Test
+    public void m3u_withoutHeaderByteOrderMarkOrTrailingNewline() throws IOException {
+        assertEquals(Arrays.asList("a.mp3", "b.mp3"), parse("\uFEFFa.mp3\r\nb.mp3"));
+        assertEquals(Collections.singletonList("b.mp3"), parse("\uFEFF\nb.mp3"));
+    }
+
+    @Test
+    public void m3u_keepsWindowsPaths() throws IOException {
+        assertEquals(Collections.singletonList("D:\\Music\\Album\\01 Intro.mp3"),
+                parse("#EXTM3U\r\nD:\\Music\\Album\\01 Intro.mp3\r\n"));
+    }
+
+    @Test
+    public void pls_readsFileEntriesOnly() throws IOException {
+        String playlist = "\n[Playlist]\n"
+                + "NumberOfEntries=3\n"
+                + "File1=/music/one.mp3\n"
+                + "Title1=One\n"
+                + "Length1=200\n"
+                + "file2 = /music/two.mp3\n"
+                + "File=/music/no-number.mp3\n"
+                + "FileX=/music/not-a-number.mp3\n"
+                + "File3=\n"
+                + "File10=http://example.com/stream\n"
+                + "Version=2\n";
+
+        assertEquals(Arrays.asList("/music/one.mp3", "/music/two.mp3", "http://example.com/stream"), parse(playlist));
+    }
+
+    @Test
+    public void pls_headerMustComeFirst() throws IOException {
+        assertEquals(Arrays.asList("one.mp3", "[playlist]", "File1=two.mp3"),
+                parse("one.mp3\n[playlist]\nFile1=two.mp3\n"));
+    }
+
+    @Test
+    public void empty_hasNoEntries() throws IOException {
+        assertTrue(parse("").isEmpty());
+        assertTrue(parse("#EXTM3U\n\n").isEmpty());
+        assertTrue(parse("[playlist]\nNumberOfEntries=0\n").isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void handlerErrors_stopTheParse() throws IOException {
+        PlaylistParser.parse(new StringReader("a.mp3\nb.mp3\n"), location -> {
+            throw new IOException("full");
+        });
+    }
+}
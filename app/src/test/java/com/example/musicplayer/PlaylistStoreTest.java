@@ -0,0 +1,134 @@
+package com.example.musicplayer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PlaylistStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory() {
+        return new File(folder.getRoot(), "playlists");
+    }
+
+    private static long[] ids(int count, long first) {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = first + i;
+        }
+        return ids;
+    }
+
+    private static PlaylistStore.Playlist save(PlaylistStore store, String name, long[] ids) throws IOException {
+        PlaylistStore.Writer writer = store.create(name);
+        writer.append(ids, ids.length);
+        return writer.commit();
+    }
+
+    private void write(String fileName, byte[] bytes) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(new File(directory(), fileName))) {
+            out.write(bytes);
+        }
+    }
+
+    @Test
+    public void commit_isReadBackAfterRestart() throws IOException {
+        PlaylistStore store = new PlaylistStore(directory());
+        // More than one write batch, in two appends.
+        long[] ids = ids(3000, 100);
+        PlaylistStore.Writer writer = store.create("Road trip");
+        writer.append(ids, 1000);
+        writer.append(Arrays.copyOfRange(ids, 1000, 3000), 2000);
+        assertEquals(3000, writer.size());
+        assertTrue(store.getPlaylists().isEmpty());
+        PlaylistStore.Playlist playlist = writer.commit();
+
+        PlaylistStore reopened = new PlaylistStore(directory());
+
+        List<PlaylistStore.Playlist> playlists = reopened.getPlaylists();
+        assertEquals(1, playlists.size());
+        assertEquals(playlist.getId(), playlists.get(0).getId());
+        assertEquals("Road trip", playlists.get(0).getName());
+        assertEquals(3000, playlists.get(0).getSize());
+        assertArrayEquals(ids, reopened.readIds(playlist.getId()));
+        // Ids are not handed out twice.
+        assertNotEquals(playlist.getId(), save(reopened, "Second", ids(1, 1)).getId());
+    }
+
+    @Test
+    public void abort_leavesNoFileBehind() throws IOException {
+        PlaylistStore store = new PlaylistStore(directory());
+        PlaylistStore.Writer writer = store.create("Dropped");
+        writer.append(ids(10, 1), 10);
+
+        writer.abort();
+
+        assertTrue(store.getPlaylists().isEmpty());
+        assertEquals(0, directory().list().length);
+    }
+
+    @Test
+    public void missingIndex_keepsAndRelistsThePlaylists() throws IOException {
+        PlaylistStore store = new PlaylistStore(directory());
+        PlaylistStore.Playlist first = save(store, "First", ids(5, 1));
+        PlaylistStore.Playlist second = save(store, "Second", ids(2, 50));
+        assertTrue(new File(directory(), "index").delete());
+
+        PlaylistStore reopened = new PlaylistStore(directory());
+
+        List<PlaylistStore.Playlist> playlists = reopened.getPlaylists();
+        assertEquals(2, playlists.size());
+        assertEquals(first.getId(), playlists.get(0).getId());
+        assertEquals(5, playlists.get(0).getSize());
+        assertEquals("Playlist " + second.getId(), playlists.get(1).getName());
+        assertArrayEquals(ids(2, 50), reopened.readIds(second.getId()));
+        // The rebuilt index is written, so the next start finds the same playlists.
+        assertEquals(2, new PlaylistStore(directory()).getPlaylists().size());
+    }
+
+    @Test
+    public void corruptIndex_keepsThePlaylistFiles() throws IOException {
+        PlaylistStore store = new PlaylistStore(directory());
+        PlaylistStore.Playlist playlist = save(store, "Kept", ids(3, 7));
+        write("index", new byte[]{1, 2, 3});
+        write("notes.txt", new byte[]{1, 2, 3});
+
+        PlaylistStore reopened = new PlaylistStore(directory());
+
+        assertEquals(1, reopened.getPlaylists().size());
+        assertArrayEquals(ids(3, 7), reopened.readIds(playlist.getId()));
+        // Files recovery can't make sense of are left alone.
+        assertTrue(new File(directory(), "notes.txt").isFile());
+    }
+
+    @Test
+    public void strayFiles_areRemovedOnceTheIndexIsRead() throws IOException {
+        PlaylistStore store = new PlaylistStore(directory());
+        PlaylistStore.Playlist playlist = save(store, "Kept", ids(3, 7));
+        // An import and an index write cut short, and a playlist that never made it into the index.
+        write("8.ids.tmp", new byte[16]);
+        write("index.tmp", new byte[4]);
+        write("9.ids", new byte[16]);
+
+        PlaylistStore reopened = new PlaylistStore(directory());
+
+        assertEquals(1, reopened.getPlaylists().size());
+        assertEquals(Arrays.asList(playlist.getId() + ".ids", "index"), sorted(directory().list()));
+        assertArrayEquals(ids(3, 7), reopened.readIds(playlist.getId()));
+    }
+
+    private static List<String> sorted(String[] names) {
+        Arrays.sort(names);
+        return Arrays.asList(names);
+    }
+}
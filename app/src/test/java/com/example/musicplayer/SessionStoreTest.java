@@ -0,0 +1,181 @@
+package com.example.musicplayer;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class SessionStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ScheduledThreadPoolExecutor executor;
+
+    @After
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private SessionStore open() {
+        executor = new ScheduledThreadPoolExecutor(1);
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        return new SessionStore(folder.getRoot(), executor);
+    }
+
+    /** Writes everything out and stops the store's thread, as a killed process would after a flush. */
+    private void close(SessionStore store) throws InterruptedException {
+        store.flush();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        executor = null;
+    }
+
+    private SessionStore.Session restore(SessionStore store) throws Exception {
+        AtomicReference<SessionStore.Session> restored = new AtomicReference<>();
+        store.restore(restored::set);
+        executor.submit(() -> { }).get();
+        return restored.get();
+    }
+
+    private static List<Song> songs(int count) {
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            songs.add(new Song(10 + i, "Song " + i, "Artist", "Album", 5, 180_000, i + 1, 1000, 2000 + i));
+        }
+        return songs;
+    }
+
+    @Test
+    public void session_survivesReopening() throws Exception {
+        SessionStore store = open();
+        store.saveQueue(songs(3));
+        store.saveState(2, 61_000, true, true, PlayQueue.REPEAT_ONE);
+        close(store);
+
+        SessionStore.Session session = restore(open());
+
+        assertEquals(3, session.getSongs().size());
+        Song song = session.getSongs().get(2);
+        assertEquals(12, song.getId());
+        assertEquals("Song 2", song.getTitle());
+        assertEquals("Album", song.getAlbum());
+        assertEquals(180_000, song.getDurationMs());
+        assertEquals(2002, song.getDateModified());
+        assertEquals(2, session.getIndex());
+        assertEquals(61_000, session.getPositionMs());
+        assertTrue(session.isPlaying());
+        assertTrue(session.isShuffled());
+        assertEquals(PlayQueue.REPEAT_ONE, session.getRepeatMode());
+    }
+
+    @Test
+    public void restore_includesChangesNotWrittenYet() throws Exception {
+        SessionStore store = open();
+        store.saveQueue(songs(2));
+        store.saveState(1, 500, false, false, PlayQueue.REPEAT_OFF);
+
+        SessionStore.Session session = restore(store);
+
+        assertEquals(2, session.getSongs().size());
+        assertEquals(1, session.getIndex());
+    }
+
+    @Test
+    public void restore_withoutASessionIsNull() throws Exception {
+        assertNull(restore(open()));
+    }
+
+    @Test
+    public void state_forAnOlderQueueOnlyKeepsTheModes() throws Exception {
+        SessionStore store = open();
+        store.saveQueue(songs(5));
+        store.saveState(4, 1000, true, true, PlayQueue.REPEAT_OFF);
+        close(store);
+        File stateFile = new File(folder.getRoot(), "session_state");
+        File savedState = folder.newFile("saved_state");
+        assertTrue(stateFile.renameTo(savedState));
+
+        // The queue is replaced, then the process dies before the new state is written.
+        store = open();
+        store.saveQueue(songs(2));
+        close(store);
+        assertTrue(stateFile.delete() && savedState.renameTo(stateFile));
+
+        SessionStore.Session session = restore(open());
+
+        assertEquals(2, session.getSongs().size());
+        assertEquals(0, session.getIndex());
+        assertEquals(0, session.getPositionMs());
+        assertTrue(session.isShuffled());
+        assertEquals(PlayQueue.REPEAT_OFF, session.getRepeatMode());
+    }
+
+    @Test
+    public void truncatedQueue_isNotRestored() throws Exception {
+        SessionStore store = open();
+        store.saveQueue(songs(50));
+        store.saveState(3, 0, false, false, PlayQueue.REPEAT_ALL);
+        close(store);
+        File queueFile = new File(folder.getRoot(), "session_queue");
+        try (RandomAccessFile raf = new RandomAccessFile(queueFile, "rw")) {
+            raf.setLength(raf.length() - 10);
+        }
+
+        assertNull(restore(open()));
+    }
+
+    @Test
+    public void state_ofAnotherVersionIsIgnored() throws Exception {
+        SessionStore store = open();
+        store.saveQueue(songs(3));
+        close(store);
+        try (DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(new File(folder.getRoot(), "session_state")))) {
+            out.writeInt(0x4d505353);
+            out.writeInt(99);
+            out.writeLong(1);
+            out.writeInt(2);
+            out.writeInt(5000);
+        }
+
+        SessionStore.Session session = restore(open());
+
+        assertEquals(3, session.getSongs().size());
+        assertEquals(0, session.getIndex());
+        assertFalse(session.isPlaying());
+        assertEquals(PlayQueue.REPEAT_ALL, session.getRepeatMode());
+    }
+
+    @Test
+    public void truncatedState_fallsBackToTheStart() throws Exception {
+        SessionStore store = open();
+        store.saveQueue(songs(3));
+        store.saveState(2, 5000, true, false, PlayQueue.REPEAT_ALL);
+        close(store);
+        File stateFile = new File(folder.getRoot(), "session_state");
+        try (RandomAccessFile raf = new RandomAccessFile(stateFile, "rw")) {
+            raf.setLength(12);
+        }
+
+        SessionStore.Session session = restore(open());
+
+        assertEquals(3, session.getSongs().size());
+        assertEquals(0, session.getIndex());
+        assertEquals(0, session.getPositionMs());
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.musicplayer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SongPathIndexTest {
+
+    private static SongPathIndex index() {
+        SongPathIndex.Builder builder = new SongPathIndex.Builder(0);
+        builder.add(1, "/storage/emulated/0/Music/Artist/Album/01.mp3");
+        builder.add(2, "/storage/emulated/0/Music/Other/Album/01.mp3");
+        builder.add(3, "/storage/emulated/0/Music/Other/Single.mp3");
+        builder.add(4, "/storage/emulated/0/Music/Artist/Album/Song Name.flac");
+        builder.add(5, null);
+        return builder.build();
+    }
+
+    @Test
+    public void resolve_matchesPathsFromOtherDevices() {
+        SongPathIndex index = index();
+
+        assertEquals(4, index.size());
+        assertEquals(1, index.resolve("D:\\Music\\Artist\\Album\\01.mp3"));
+        assertEquals(2, index.resolve("../Other/Album/01.mp3"));
+        assertEquals(1, index.resolve("/STORAGE/emulated/0/music/artist/album/01.MP3"));
+        assertEquals(4, index.resolve("file:///sdcard/Music/Artist/Album/Song%20Name.flac"));
+        assertEquals(4, index.resolve("file://localhost/Album/./Song Name.flac"));
+    }
+
+    @Test
+    public void resolve_takesABareFileNameOnlyWhenItIsUnique() {
+        SongPathIndex index = index();
+
+        assertEquals(3, index.resolve("Single.mp3"));
+        assertEquals(SongPathIndex.NO_SONG, index.resolve("01.mp3"));
+    }
+
+    @Test
+    public void resolve_needsASharedFolderWhenTheEntryHasOne() {
+        SongPathIndex index = index();
+
+        assertEquals(SongPathIndex.NO_SONG, index.resolve("/elsewhere/Single.mp3"));
+        assertEquals(SongPathIndex.NO_SONG, index.resolve("Unrelated/Album2/01.mp3"));
+        assertEquals(3, index.resolve("Other/Single.mp3"));
+    }
+
+    @Test
+    public void resolve_mediaStoreUrisById() {
+        SongPathIndex index = index();
+
+        assertEquals(3, index.resolve("content://media/external/audio/media/3"));
+        assertEquals(SongPathIndex.NO_SONG, index.resolve("content://media/external/audio/media/5"));
+        assertEquals(SongPathIndex.NO_SONG, index.resolve("content://media/external/audio/media/"));
+    }
+
+    @Test
+    public void resolve_rejectsRemoteAndUnknownEntries() {
+        SongPathIndex index = index();
+
+        assertEquals(SongPathIndex.NO_SONG, index.resolve("http://example.com/01.mp3"));
+        assertEquals(SongPathIndex.NO_SONG, index.resolve("missing.mp3"));
+        assertEquals(SongPathIndex.NO_SONG, index.resolve(".."));
+    }
+
+    @Test
+    public void normalize_dropsDrivesDotsAndCase() {
+        assertEquals("/music/a/01.mp3", SongPathIndex.normalize("C:\\Music\\A\\.\\01.mp3"));
+        assertEquals("/a/b.mp3", SongPathIndex.normalize("..//a/b.mp3"));
+        assertEquals("/m\u00fcsic/a+b.mp3", SongPathIndex.normalize("file:///M%C3%BCsic/a+b.mp3"));
+        assertNull(SongPathIndex.normalize("rtsp://host/a.mp3"));
+        assertNull(SongPathIndex.normalize("./"));
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.musicplayer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SongSearchIndexTest {
+
+    private static List<Long> ids(List<Song> songs) {
+        List<Long> ids = new ArrayList<>();
+        for (Song song : songs) {
+            ids.add(song.getId());
+        }
+        return ids;
+    }
+
+    private static SongSearchIndex index(Song... songs) {
+        SongSearchIndex index = new SongSearchIndex();
+        index.addAll(Arrays.asList(songs));
+        return index;
+    }
+
+    @Test
+    public void search_matchesWordPrefixesOfTitleAndArtist() {
+        SongSearchIndex index = index(
+                new Song(1, "Blue Monday", "New Order", 0),
+                new Song(2, "Blue in Green", "Miles Davis", 0),
+                new Song(3, "Monday Morning", "Fleetwood Mac", 0));
+
+        assertEquals(Arrays.asList(1L, 2L), ids(index.search("blu")));
+        assertEquals(Arrays.asList(1L, 3L), ids(index.search("MON")));
+        assertEquals(Arrays.asList(1L), ids(index.search("mon ord")));
+        assertEquals(Arrays.asList(2L), ids(index.search("davis blue")));
+        assertTrue(index.search("onday").isEmpty());
+        assertTrue(index.search("  ").isEmpty());
+    }
+
+    @Test
+    public void search_ignoresAccentsAndPunctuation() {
+        SongSearchIndex index = index(new Song(1, "Caf\u00e9 del Mar", "Energy 52", 0),
+                new Song(2, "Don't Stop", "Fleetwood Mac", 0));
+
+        assertEquals(Arrays.asList(1L), ids(index.search("cafe")));
+        assertEquals(Arrays.asList(2L), ids(index.search("don t")));
+    }
+
+    @Test
+    public void add_replacesASongWithTheSameId() {
+        SongSearchIndex index = index(new Song(1, "Old Title", "Artist", 0));
+
+        index.add(new Song(1, "New Title", "Artist", 0));
+
+        assertEquals(1, index.size());
+        assertTrue(index.search("old").isEmpty());
+        assertEquals("New Title", index.search("new").get(0).getTitle());
+    }
+
+    @Test
+    public void remove_dropsTheSong() {
+        SongSearchIndex index = index(new Song(1, "Same", "A", 0), new Song(2, "Same", "B", 0));
+
+        index.remove(1);
+
+        assertEquals(Arrays.asList(2L), ids(index.search("same")));
+    }
+
+    @Test
+    public void update_addsRemovesAndRetitles() {
+        SongSearchIndex index = index(
+                new Song(1, "Keep", "Artist", 0),
+                new Song(2, "Gone", "Artist", 0),
+                new Song(3, "Before", "Artist", 0));
+
+        SongStore.Builder builder = new SongStore.Builder(3);
+        builder.add(1, "Keep", "Artist", "Album", 1, 0, 0, 0, 0);
+        builder.add(3, "After", "Artist", "Album", 1, 0, 0, 0, 0);
+        builder.add(4, "Fresh", "Artist", "Album", 1, 0, 0, 0, 0);
+        index.update(builder.build());
+
+        assertEquals(3, index.size());
+        assertTrue(index.search("gone").isEmpty());
+        assertTrue(index.search("before").isEmpty());
+        assertEquals(Arrays.asList(3L), ids(index.search("after")));
+        assertEquals(Arrays.asList(4L), ids(index.search("fresh")));
+        // Unchanged songs still come back with the newer metadata.
+        assertEquals("Album", index.search("keep").get(0).getAlbum());
+    }
+
+    @Test
+    public void update_afterManyRemovalsKeepsResultsInOrder() {
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            songs.add(new Song(i, "Track " + i, "Artist", 0));
+        }
+        SongSearchIndex index = new SongSearchIndex();
+        index.addAll(songs);
+
+        List<Song> survivors = new ArrayList<>();
+        for (int i = 0; i < songs.size(); i += 4) {
+            survivors.add(songs.get(i));
+        }
+        index.update(SongStore.copyOf(survivors));
+
+        assertEquals(survivors.size(), index.size());
+        assertEquals(ids(survivors), ids(index.search("track")));
+        assertEquals(Arrays.asList(4000L), ids(index.search("4000")));
+    }
+
+    @Test
+    public void search_resultsAreNotChangedByLaterUpdates() {
+        SongSearchIndex index = index(new Song(1, "Same", "A", 0), new Song(2, "Same", "B", 0),
+                new Song(3, "Same", "C", 0));
+        List<Song> before = index.search("same");
+
+        index.remove(2);
+        index.add(new Song(4, "Same", "D", 0));
+        index.add(new Song(1, "Renamed", "A", 0));
+
+        assertEquals(Arrays.asList(1L, 2L, 3L), ids(before));
+        assertEquals("Same", before.get(0).getTitle());
+        assertEquals(Arrays.asList(3L, 4L), ids(index.search("same")));
+    }
+
+    @Test
+    public void search_followsTheGivenOrder() {
+        SongSearchIndex index = index(new Song(1, "Same", "A", 0), new Song(2, "Same", "B", 0),
+                new Song(3, "Same", "C", 0), new Song(4, "Other", "D", 0));
+        SongStore shown = SongStore.copyOf(Arrays.asList(new Song(3, "Same", "C", 0),
+                new Song(4, "Other", "D", 0), new Song(1, "Same", "A", 0)));
+
+        // Song 2 is not in the shown list yet, so it comes last.
+        assertEquals(Arrays.asList(3L, 1L, 2L), ids(index.search("same", SongIdIndex.build(shown))));
+        assertEquals(Arrays.asList(1L, 2L, 3L), ids(index.search("same", null)));
+    }
+
+    @Test
+    public void clear_emptiesTheIndex() {
+        SongSearchIndex index = index(new Song(1, "Title", "Artist", 0));
+
+        index.clear();
+
+        assertEquals(0, index.size());
+        assertTrue(index.search("title").isEmpty());
+    }
+}
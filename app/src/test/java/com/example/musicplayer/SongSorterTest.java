@@ -0,0 +1,118 @@
+package com.example.musicplayer;
+
+import org.junit.Test;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SongSorterTest {
+
+    private static final String[] TITLES = {"apple", "Apple", "banana", "\u00e9clair", "eclair", "Zebra", "", null};
+    private static final String[] ARTISTS = {"Abba", "abba", "Beck", "Cher"};
+
+    private static List<Long> ids(List<Song> songs) {
+        List<Long> ids = new ArrayList<>();
+        for (Song song : songs) {
+            ids.add(song.getId());
+        }
+        return ids;
+    }
+
+    private static SongStore randomStore(Random random, int size, long firstId) {
+        SongStore.Builder builder = new SongStore.Builder(size);
+        for (int i = 0; i < size; i++) {
+            builder.add(firstId + i, TITLES[random.nextInt(TITLES.length)], ARTISTS[random.nextInt(ARTISTS.length)],
+                    "Album " + random.nextInt(3), 1, random.nextInt(5000), random.nextInt(10), random.nextInt(100), 0);
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void sort_byTitleIgnoresCaseAndFallsBackToArtist() {
+        SongStore.Builder builder = new SongStore.Builder(4);
+        builder.add(1, "banana", "Cher", "A", 1, 0, 0, 0, 0);
+        builder.add(2, "Apple", "Beck", "A", 1, 0, 0, 0, 0);
+        builder.add(3, "apple", "Abba", "A", 1, 0, 0, 0, 0);
+        builder.add(4, "Banana", "Abba", "A", 1, 0, 0, 0, 0);
+        SongSorter sorter = SongSorter.build(builder.build(), Locale.US);
+
+        assertEquals(Arrays.asList(3L, 2L, 4L, 1L), ids(sorter.sort(SongSorter.Key.TITLE, true)));
+        assertEquals(Arrays.asList(4L, 1L, 3L, 2L), ids(sorter.sort(SongSorter.Key.TITLE, false)));
+    }
+
+    @Test
+    public void sort_byNumbersAndKeepsStoreOrderOnTies() {
+        SongStore.Builder builder = new SongStore.Builder(3);
+        builder.add(1, "Same", "Same", "A", 1, 300, 0, 5, 0);
+        builder.add(2, "Same", "Same", "A", 1, 100, 0, 5, 0);
+        builder.add(3, "Same", "Same", "A", 1, 200, 0, 9, 0);
+        SongSorter sorter = SongSorter.build(builder.build(), Locale.US);
+
+        assertEquals(Arrays.asList(2L, 3L, 1L), ids(sorter.sort(SongSorter.Key.DURATION, true)));
+        assertEquals(Arrays.asList(3L, 1L, 2L), ids(sorter.sort(SongSorter.Key.DATE_ADDED, false)));
+    }
+
+    @Test
+    public void order_matchesAComparatorSort() {
+        Random random = new Random(3);
+        SongStore store = randomStore(random, 500, 0);
+        SongSorter sorter = SongSorter.build(store, Locale.US);
+        Collator collator = Collator.getInstance(Locale.US);
+        collator.setStrength(Collator.SECONDARY);
+
+        int[] order = sorter.order(new SongSorter.Key[]{SongSorter.Key.ARTIST, SongSorter.Key.DURATION},
+                new boolean[]{false, true});
+
+        for (int i = 1; i < order.length; i++) {
+            int a = order[i - 1];
+            int b = order[i];
+            int byArtist = collator.compare(store.getArtist(b), store.getArtist(a));
+            assertTrue(byArtist <= 0);
+            if (byArtist == 0) {
+                int byDuration = Integer.compare(store.getDurationMs(a), store.getDurationMs(b));
+                assertTrue(byDuration < 0 || byDuration == 0 && a < b);
+            }
+        }
+    }
+
+    @Test
+    public void update_sortsLikeAFreshBuild() {
+        Random random = new Random(8);
+        SongStore store = randomStore(random, 300, 0);
+        SongSorter sorter = SongSorter.build(store, Locale.US);
+        long nextId = 1000;
+        for (int round = 0; round < 20; round++) {
+            SongStore added = randomStore(random, random.nextInt(30), nextId);
+            nextId += added.size();
+            SongStore.Builder builder = new SongStore.Builder(store.size() + added.size());
+            List<Integer> previous = new ArrayList<>();
+            for (int position = 0; position < store.size(); position++) {
+                if (random.nextInt(8) != 0) {
+                    builder.add(store.get(position));
+                    previous.add(position);
+                }
+            }
+            for (Song song : added) {
+                builder.add(song);
+                previous.add(-1);
+            }
+            int[] previousPositions = new int[previous.size()];
+            for (int i = 0; i < previousPositions.length; i++) {
+                previousPositions[i] = previous.get(i);
+            }
+            store = builder.build();
+            sorter = sorter.update(store, previousPositions);
+
+            SongSorter fresh = SongSorter.build(store, Locale.US);
+            for (SongSorter.Key key : SongSorter.Key.values()) {
+                assertEquals(key.name(), ids(fresh.sort(key, true)), ids(sorter.sort(key, true)));
+            }
+        }
+    }
+}
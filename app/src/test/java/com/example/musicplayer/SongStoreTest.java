@@ -0,0 +1,107 @@
+package com.example.musicplayer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SongStoreTest {
+
+    private static SongStore store() {
+        SongStore.Builder builder = new SongStore.Builder(0);
+        builder.add(1, "One", "Alice", "First", 10, 1000, 1, 100, 200);
+        builder.add(2, "Two", "Bob", "Second", 20, 2000, 2, 101, 201);
+        builder.add(3, "Three", "Alice", "First", 10, 3000, 3, 102, 202);
+        return builder.build();
+    }
+
+    @Test
+    public void get_returnsEveryColumn() {
+        Song song = store().get(1);
+
+        assertEquals(2, song.getId());
+        assertEquals("Two", song.getTitle());
+        assertEquals("Bob", song.getArtist());
+        assertEquals("Second", song.getAlbum());
+        assertEquals(20, song.getAlbumId());
+        assertEquals(2000, song.getDurationMs());
+        assertEquals(2, song.getTrackNumber());
+        assertEquals(101, song.getDateAdded());
+        assertEquals(201, song.getDateModified());
+    }
+
+    @Test
+    public void builder_growsPastItsExpectedSize() {
+        SongStore.Builder builder = new SongStore.Builder(1);
+        for (int i = 0; i < 100; i++) {
+            builder.add(i, "Title " + i, "Artist " + (i % 3), "Album", 1, 0, 0, 0, 0);
+        }
+        SongStore store = builder.build();
+
+        assertEquals(100, store.size());
+        assertEquals(99, store.getId(99));
+        assertEquals(3, store.getArtistCount());
+    }
+
+    @Test
+    public void artists_areStoredOnce() {
+        SongStore store = store();
+
+        assertEquals(2, store.getArtistCount());
+        assertEquals(store.getArtistCode(0), store.getArtistCode(2));
+        assertSame(store.get(0).getArtist(), store.get(2).getArtist());
+    }
+
+    @Test
+    public void addRow_mapsUnknownArtistAndAlbum() {
+        SongStore.Builder builder = new SongStore.Builder(2);
+        builder.addRow(1, "One", "<unknown>", null, -1, 0, 0, 0, 0);
+        SongStore store = builder.build();
+
+        assertEquals("Unknown Artist", store.getArtist(0));
+        assertEquals("Unknown Album", store.getAlbum(0));
+    }
+
+    @Test
+    public void reorder_gathersRows() {
+        SongStore reordered = store().reorder(new int[]{2, 0});
+
+        assertEquals(2, reordered.size());
+        assertEquals(3, reordered.getId(0));
+        assertEquals("Alice", reordered.getArtist(0));
+        assertEquals(1, reordered.getId(1));
+        assertEquals(1000, reordered.getDurationMs(1));
+    }
+
+    @Test
+    public void copyOf_keepsStoresAndCopiesOtherLists() {
+        SongStore store = store();
+        assertSame(store, SongStore.copyOf(store));
+
+        List<Song> songs = new ArrayList<>(store);
+        SongStore copy = SongStore.copyOf(songs);
+
+        assertNotSame(store, copy);
+        assertEquals(songs, copy);
+        assertEquals("Three", copy.getTitle(2));
+    }
+
+    @Test
+    public void songs_areEqualByIdOnly() {
+        SongStore store = store();
+
+        assertEquals(store.get(0), store.get(0));
+        assertEquals(store.get(0).hashCode(), store.get(0).hashCode());
+        assertEquals(store.get(0), new Song(1, "Retitled", "Someone", 0));
+        assertNotEquals(store.get(0), store.get(1));
+        assertEquals(1, Arrays.asList(store.get(1), store.get(0)).indexOf(store.get(0)));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void get_rejectsPositionsPastTheEnd() {
+        store().get(3);
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.musicplayer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SpectrumAnalyzerTest {
+
+    private static final int RATE_44K = 44_100_000;
+    // Long enough for every level to reach its target and every peak to fall.
+    private static final float SETTLE_MS = 1_000_000f;
+
+    /** Bands a full-scale signal in the bin alone lights up, once the levels have settled. */
+    private static List<Integer> bandsLitBy(SpectrumAnalyzer analyzer, int length, int rateMilliHz, int bin) {
+        byte[] fft = new byte[length];
+        fft[2 * bin] = -128;
+        fft[2 * bin + 1] = -128;
+        analyzer.analyze(fft, length, rateMilliHz);
+        analyzer.advance(SETTLE_MS);
+        List<Integer> bands = new ArrayList<>();
+        float[] levels = analyzer.getLevels();
+        for (int band = 0; band < levels.length; band++) {
+            if (levels[band] > 0) {
+                bands.add(band);
+            }
+        }
+        return bands;
+    }
+
+    /** For each bin, the band it lights up or -1; asserts that no bin lights more than one. */
+    private static int[] bandPerBin(SpectrumAnalyzer analyzer, int length, int rateMilliHz) {
+        int[] bands = new int[length / 2];
+        bands[0] = -1;
+        for (int bin = 1; bin < bands.length; bin++) {
+            List<Integer> lit = bandsLitBy(analyzer, length, rateMilliHz, bin);
+            assertTrue("bin " + bin + " lights " + lit, lit.size() <= 1);
+            bands[bin] = lit.isEmpty() ? -1 : lit.get(0);
+        }
+        return bands;
+    }
+
+    private static void assertEveryBandReadsAscendingBins(int[] bands, int bandCount) {
+        int previous = -1;
+        boolean[] read = new boolean[bandCount];
+        for (int band : bands) {
+            if (band >= 0) {
+                assertTrue(band >= previous);
+                previous = band;
+                read[band] = true;
+            }
+        }
+        for (int band = 0; band < bandCount; band++) {
+            assertTrue("band " + band + " reads no bin", read[band]);
+        }
+    }
+
+    private static float levelOf(byte real, byte imag) {
+        // 32 bands over a 1024-byte capture at 44.1 kHz: band 0 is bin 1 alone.
+        SpectrumAnalyzer analyzer = new SpectrumAnalyzer(32);
+        byte[] fft = new byte[1024];
+        fft[2] = real;
+        fft[3] = imag;
+        analyzer.analyze(fft, fft.length, RATE_44K);
+        analyzer.advance(SETTLE_MS);
+        return analyzer.getLevels()[0];
+    }
+
+    @Test
+    public void mapBins_spreadsBinsOverLogSpacedBands() {
+        SpectrumAnalyzer analyzer = new SpectrumAnalyzer(32);
+
+        int[] bands = bandPerBin(analyzer, 1024, RATE_44K);
+
+        assertEveryBandReadsAscendingBins(bands, 32);
+        // The low bands are narrower than a 43 Hz bin, so each takes one bin of its own.
+        for (int bin = 1; bin <= 14; bin++) {
+            assertEquals(bin - 1, bands[bin]);
+        }
+        // Higher bands take ever more bins.
+        assertEquals(bands[20], bands[23]);
+        // Nothing above 16 kHz.
+        assertEquals(-1, bands[400]);
+        assertEquals(-1, bands[511]);
+    }
+
+    @Test
+    public void mapBins_lowSamplingRateStopsAtTheTopBin() {
+        SpectrumAnalyzer analyzer = new SpectrumAnalyzer(32);
+
+        int[] bands = bandPerBin(analyzer, 1024, 8_000_000);
+
+        assertEveryBandReadsAscendingBins(bands, 32);
+        // Bins below 40 Hz are left out; the last band runs up to the top of the capture.
+        assertEquals(-1, bands[4]);
+        assertEquals(0, bands[5]);
+        assertEquals(31, bands[510]);
+    }
+
+    @Test
+    public void mapBins_smallCaptureGivesEveryBandABin() {
+        SpectrumAnalyzer analyzer = new SpectrumAnalyzer(16);
+
+        // Bins 1 to 6 take a band each; the bands beyond them share the top bin.
+        for (int bin = 1; bin <= 6; bin++) {
+            assertEquals(Collections.singletonList(bin - 1), bandsLitBy(analyzer, 16, RATE_44K, bin));
+        }
+        assertEquals(10, bandsLitBy(analyzer, 16, RATE_44K, 7).size());
+
+        assertEquals(8, bandsLitBy(new SpectrumAnalyzer(8), 4, RATE_44K, 1).size());
+    }
+
+    @Test
+    public void mapBins_unusableCaptureLightsNothing() {
+        SpectrumAnalyzer analyzer = new SpectrumAnalyzer(8);
+        byte[] fft = {-128, -128, -128, -128};
+
+        analyzer.analyze(fft, 2, RATE_44K);
+        assertFalse(analyzer.advance(SETTLE_MS));
+        analyzer.analyze(fft, 4, 0);
+        assertFalse(analyzer.advance(SETTLE_MS));
+
+        for (float level : analyzer.getLevels()) {
+            assertEquals(0f, level, 0f);
+        }
+    }
+
+    @Test
+    public void analyze_mapsFiftyDbBelowFullScaleToLevels() {
+        assertEquals(1f, levelOf((byte) -128, (byte) -128), 0.001f);
+        // 3200 / 32768 of full-scale power is 10.1 dB down, a fifth of the range.
+        assertEquals(0.798f, levelOf((byte) 40, (byte) 40), 0.001f);
+        // 45 dB down.
+        assertEquals(0.097f, levelOf((byte) 1, (byte) 0), 0.001f);
+        assertEquals(0f, levelOf((byte) 0, (byte) 0), 0f);
+    }
+
+    @Test
+    public void advance_risesFastAndFallsSlowly() {
+        SpectrumAnalyzer analyzer = new SpectrumAnalyzer(32);
+        byte[] loud = new byte[1024];
+        loud[2] = -128;
+        loud[3] = -128;
+        analyzer.analyze(loud, loud.length, RATE_44K);
+
+        assertTrue(analyzer.advance(25f));
+        assertEquals(1 - Math.exp(-1), analyzer.getLevels()[0], 0.001);
+        analyzer.advance(SETTLE_MS);
+        assertEquals(1f, analyzer.getLevels()[0], 0f);
+
+        analyzer.analyze(new byte[1024], 1024, RATE_44K);
+        assertTrue(analyzer.advance(250f));
+        assertEquals(Math.exp(-1), analyzer.getLevels()[0], 0.001);
+    }
+
+    @Test
+    public void advance_holdsPeaksThenLetsThemFall() {
+        SpectrumAnalyzer analyzer = new SpectrumAnalyzer(32);
+        byte[] loud = new byte[1024];
+        loud[2] = -128;
+        loud[3] = -128;
+        analyzer.analyze(loud, loud.length, RATE_44K);
+        analyzer.advance(SETTLE_MS);
+        assertEquals(1f, analyzer.getPeaks()[0], 0f);
+
+        // Silence: the peak holds for 400 ms, then falls 1/1000 per ms.
+        analyzer.analyze(new byte[1024], 1024, RATE_44K);
+        for (int ms = 0; ms < 400; ms += 100) {
+            assertTrue(analyzer.advance(100f));
+            assertEquals(1f, analyzer.getPeaks()[0], 0f);
+        }
+        assertTrue(analyzer.advance(100f));
+        assertEquals(0.9f, analyzer.getPeaks()[0], 0.001f);
+        assertTrue(analyzer.getPeaks()[0] >= analyzer.getLevels()[0]);
+
+        assertTrue(analyzer.advance(300f));
+        assertEquals(0.6f, analyzer.getPeaks()[0], 0.001f);
+
+        // Both have reached silence; nothing moves anymore.
+        assertFalse(analyzer.advance(SETTLE_MS));
+        assertEquals(0f, analyzer.getLevels()[0], 0f);
+        assertEquals(0f, analyzer.getPeaks()[0], 0f);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.musicplayer.benchmark;
+
+import com.example.musicplayer.SongStore;
+import java.util.Random;
+
+/**
+ * Deterministic stand-in for a MediaStore cursor: the projected columns as arrays, with
+ * titles built from a small vocabulary, roughly one artist per twenty tracks and albums of
+ * about ten tracks.
+ */
+final class FakeLibrary {
+
+    private static final String[] WORDS = {
+            "love", "night", "blue", "heart", "fire", "rain", "dream", "summer", "road", "light",
+            "river", "gold", "shadow", "song", "dance", "moon", "city", "home", "wild", "time",
+            "café", "océan", "über", "señor", "naïve", "déjà", "vu", "niño", "straße", "rêve"
+    };
+
+    final long[] ids;
+    final String[] titles;
+    final String[] artists;
+    final long[] datesModified;
+    final String[] albums;
+    final long[] albumIds;
+    final long[] durationsMs;
+    final int[] trackNumbers;
+    final long[] datesAdded;
+
+    FakeLibrary(int size) {
+        Random random = new Random(42);
+        int artistCount = Math.max(1, size / 20);
+        ids = new long[size];
+        titles = new String[size];
+        artists = new String[size];
+        datesModified = new long[size];
+        albums = new String[size];
+        albumIds = new long[size];
+        durationsMs = new long[size];
+        trackNumbers = new int[size];
+        datesAdded = new long[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = 1000 + i;
+            titles[i] = words(random, 1 + random.nextInt(4)) + " " + i;
+            int artist = random.nextInt(artistCount);
+            // Fresh instances, as a cursor would return them; a few rows have no artist.
+            artists[i] = artist == 0 ? "<unknown>" : new String("Artist " + WORDS[artist % WORDS.length] + " " + artist);
+            datesModified[i] = 1_600_000_000L + random.nextInt(100_000_000);
+            int album = artist * 2 + random.nextInt(2);
+            albums[i] = new String("Album " + WORDS[album % WORDS.length] + " " + album);
+            albumIds[i] = album;
+            durationsMs[i] = 120_000 + random.nextInt(240_000);
+            trackNumbers[i] = 1 + random.nextInt(12);
+            datesAdded[i] = datesModified[i] - random.nextInt(1_000_000);
+        }
+    }
+
+    int size() {
+        return ids.length;
+    }
+
+    SongStore toStore() {
+        SongStore.Builder builder = new SongStore.Builder(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            builder.addRow(ids[i], titles[i], artists[i], albums[i], albumIds[i], durationsMs[i], trackNumbers[i],
+                    datesAdded[i], datesModified[i]);
+        }
+        return builder.build();
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.musicplayer.benchmark;
+
+import com.example.musicplayer.LibraryIndex;
+import com.example.musicplayer.Song;
+import com.example.musicplayer.SongStore;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Building the library from cursor rows, its browse indexes, and the title sort the delta sync runs. */
+@State(Scope.Benchmark)
+public class LibraryBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int songs;
+
+    private FakeLibrary rows;
+    private SongStore store;
+    private LibraryIndex library;
+    private SongStore changedStore;
+    private int[] previousPositions;
+
+    @Setup
+    public void setUp() {
+        rows = new FakeLibrary(songs);
+        store = rows.toStore();
+        library = LibraryIndex.build(store);
+
+        // A delta sync that modified one song in a hundred; the rest keep their positions.
+        SongStore.Builder builder = new SongStore.Builder(store.size());
+        previousPositions = new int[store.size()];
+        for (int i = 0; i < store.size(); i++) {
+            Song song = store.get(i);
+            if (i % 100 == 0) {
+                builder.add(song.getId(), song.getTitle(), song.getArtist(), "Remastered " + song.getAlbum(),
+                        song.getAlbumId() + 1_000_000, song.getDurationMs(), song.getTrackNumber(),
+                        song.getDateAdded(), song.getDateModified() + 1);
+                previousPositions[i] = -1;
+            } else {
+                builder.add(song);
+                previousPositions[i] = i;
+            }
+        }
+        changedStore = builder.build();
+    }
+
+    /** Mirrors LibraryLoader's cursor loop. */
+    @Benchmark
+    public SongStore buildFromCursor() {
+        SongStore.Builder builder = new SongStore.Builder(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            builder.addRow(rows.ids[i], rows.titles[i], rows.artists[i], rows.albums[i], rows.albumIds[i],
+                    rows.durationsMs[i], rows.trackNumbers[i], rows.datesAdded[i], rows.datesModified[i]);
+        }
+        return builder.build();
+    }
+
+    /** Copy, sort by title and re-compact, as after a delta sync. */
+    @Benchmark
+    public SongStore sortByTitle() {
+        List<Song> sorted = new ArrayList<>(store);
+        Collections.sort(sorted, Song.TITLE_ORDER);
+        return SongStore.copyOf(sorted);
+    }
+
+    /** Album and artist indexes from scratch, as after a full scan. */
+    @Benchmark
+    public LibraryIndex buildBrowseIndexes() {
+        return LibraryIndex.build(store);
+    }
+
+    /** The same indexes carried over a delta sync that touched 1% of the songs. */
+    @Benchmark
+    public LibraryIndex updateBrowseIndexes() {
+        return library.update(changedStore, previousPositions);
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.musicplayer.benchmark;
+
+import com.example.musicplayer.PlayStats;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Play history counters: the per-event update MusicService pays for, and the top-N reads behind the history lists. */
+@State(Scope.Benchmark)
+public class PlayStatsBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int songs;
+
+    private PlayStats stats;
+    private long[] eventSongs;
+    private int next;
+    private long clock;
+
+    @Setup
+    public void setUp() {
+        // Every song played a few times, favourites a lot more.
+        Random random = new Random(3);
+        stats = new PlayStats();
+        clock = 1_600_000_000_000L;
+        for (int i = 0; i < songs * 4; i++) {
+            long songId = 1000 + (random.nextInt(10) == 0 ? random.nextInt(Math.max(1, songs / 50)) : random.nextInt(songs));
+            stats.apply(songId, PlayStats.EVENT_PLAYED, clock++);
+        }
+        eventSongs = new long[4096];
+        for (int i = 0; i < eventSongs.length; i++) {
+            eventSongs[i] = 1000 + random.nextInt(songs);
+        }
+    }
+
+    @Benchmark
+    public void recordPlay() {
+        stats.apply(eventSongs[next++ & (eventSongs.length - 1)], PlayStats.EVENT_PLAYED, clock++);
+    }
+
+    @Benchmark
+    public long[] mostPlayed() {
+        return stats.mostPlayed(100);
+    }
+
+    @Benchmark
+    public long[] recentlyPlayed() {
+        return stats.recentlyPlayed(100);
+    }
+}
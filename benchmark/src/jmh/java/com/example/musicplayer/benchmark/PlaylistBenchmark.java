@@ -0,0 +1,88 @@
+package com.example.musicplayer.benchmark;
+
+import com.example.musicplayer.LibraryIndex;
+import com.example.musicplayer.PlaylistParser;
+import com.example.musicplayer.SongPathIndex;
+import com.example.musicplayer.SongStore;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Playlist import (parse and resolve every entry) and loading a saved playlist's songs for the queue. */
+@State(Scope.Benchmark)
+public class PlaylistBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int songs;
+
+    private String[] paths;
+    private SongPathIndex pathIndex;
+    private LibraryIndex library;
+    private String m3u;
+    private long[] playlistIds;
+
+    @Setup
+    public void setUp() {
+        FakeLibrary fake = new FakeLibrary(songs);
+        SongStore store = fake.toStore();
+        library = LibraryIndex.build(store);
+        library.getIdIndex();
+
+        paths = new String[fake.size()];
+        SongPathIndex.Builder builder = new SongPathIndex.Builder(fake.size());
+        for (int i = 0; i < fake.size(); i++) {
+            paths[i] = "/storage/emulated/0/Music/" + store.getArtist(i) + "/" + fake.albums[i] + "/"
+                    + fake.titles[i] + ".mp3";
+            builder.add(fake.ids[i], paths[i]);
+        }
+        pathIndex = builder.build();
+
+        // Half the library in random order, written on Windows, with a few songs that aren't here.
+        Random random = new Random(7);
+        int entries = Math.max(1, songs / 2);
+        StringBuilder playlist = new StringBuilder("#EXTM3U\r\n");
+        playlistIds = new long[entries];
+        for (int i = 0; i < entries; i++) {
+            int song = random.nextInt(fake.size());
+            playlistIds[i] = fake.ids[song];
+            String path = i % 100 == 0 ? "/Music/missing/" + i + ".mp3" : paths[song];
+            playlist.append("#EXTINF:200,").append(fake.titles[song]).append("\r\n")
+                    .append("D:").append(path.substring("/storage/emulated/0".length()).replace('/', '\\'))
+                    .append("\r\n");
+        }
+        m3u = playlist.toString();
+    }
+
+    /** One MediaStore path query's worth of index, as every import starts with. */
+    @Benchmark
+    public SongPathIndex buildPathIndex() {
+        SongPathIndex.Builder builder = new SongPathIndex.Builder(paths.length);
+        for (int i = 0; i < paths.length; i++) {
+            builder.add(i, paths[i]);
+        }
+        return builder.build();
+    }
+
+    /** Streams the M3U and resolves every entry; returns the number matched. */
+    @Benchmark
+    public int importPlaylist() throws IOException {
+        int[] matched = new int[1];
+        PlaylistParser.parse(new StringReader(m3u), location -> {
+            if (pathIndex.resolve(location) != SongPathIndex.NO_SONG) {
+                matched[0]++;
+            }
+        });
+        return matched[0];
+    }
+
+    /** A saved playlist's ids to the songs MusicService queues, as when a playlist is played. */
+    @Benchmark
+    public SongStore loadPlaylist() {
+        return library.select(playlistIds);
+    }
+}
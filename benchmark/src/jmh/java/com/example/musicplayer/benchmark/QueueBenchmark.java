@@ -0,0 +1,75 @@
+package com.example.musicplayer.benchmark;
+
+import com.example.musicplayer.PlayQueue;
+import com.example.musicplayer.Song;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Skipping through the queue in order and shuffled, reshuffling it, and editing it. */
+@State(Scope.Benchmark)
+public class QueueBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int songs;
+
+    private PlayQueue queue;
+    private PlayQueue shuffledQueue;
+    private Song song;
+
+    @Setup
+    public void setUp() {
+        FakeLibrary library = new FakeLibrary(songs);
+        queue = new PlayQueue(new Random(1));
+        queue.setSongs(library.toStore(), 0);
+        shuffledQueue = new PlayQueue(new Random(1));
+        shuffledQueue.setSongs(library.toStore(), 0);
+        shuffledQueue.setShuffled(true);
+        song = new Song(1, "Inserted", "Artist", 0);
+    }
+
+    @Benchmark
+    public int nextThenPrevious() {
+        queue.next(false);
+        return queue.previous();
+    }
+
+    @Benchmark
+    public int shuffledNextThenPrevious() {
+        shuffledQueue.next(false);
+        return shuffledQueue.previous();
+    }
+
+    /** Skips that keep drawing from the lazy permutation, wrapping into a new round at the end. */
+    @Benchmark
+    public int shuffledNext() {
+        return shuffledQueue.next(false);
+    }
+
+    /** Turning shuffle on starts a new lazy permutation. */
+    @Benchmark
+    public int reshuffle() {
+        queue.setShuffled(true);
+        int next = queue.peekNext(false);
+        queue.setShuffled(false);
+        return next;
+    }
+
+    @Benchmark
+    public int insertThenRemoveInTheMiddle() {
+        int position = queue.size() / 2;
+        int entry = queue.insert(position, song);
+        queue.remove(position);
+        return entry;
+    }
+
+    @Benchmark
+    public int moveToFrontAndBack() {
+        queue.move(queue.size() - 1, 0);
+        queue.move(0, queue.size() - 1);
+        return queue.entryAt(0);
+    }
+}
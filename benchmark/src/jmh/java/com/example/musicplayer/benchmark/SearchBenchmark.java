@@ -0,0 +1,33 @@
+package com.example.musicplayer.benchmark;
+
+import com.example.musicplayer.SongSearchIndex;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Search-as-you-type lookups against a populated index. */
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int songs;
+
+    @Param({"l", "lov", "love night", "cafe", "zzz"})
+    public String query;
+
+    private SongSearchIndex index;
+
+    @Setup
+    public void setUp() {
+        index = new SongSearchIndex();
+        index.addAll(new FakeLibrary(songs).toStore());
+    }
+
+    @Benchmark
+    public List<?> search() {
+        return index.search(query);
+    }
+}
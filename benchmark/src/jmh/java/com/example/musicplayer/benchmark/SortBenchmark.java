@@ -0,0 +1,70 @@
+package com.example.musicplayer.benchmark;
+
+import com.example.musicplayer.Song;
+import com.example.musicplayer.SongSorter;
+import com.example.musicplayer.SongStore;
+import java.util.Locale;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Client-side sorting: the one-off collation pass, the cached sorts the menu runs, and carrying ranks over a sync. */
+@State(Scope.Benchmark)
+public class SortBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int songs;
+
+    private SongStore store;
+    private SongSorter sorter;
+    private SongStore changedStore;
+    private int[] previousPositions;
+
+    @Setup
+    public void setUp() {
+        store = new FakeLibrary(songs).toStore();
+        sorter = SongSorter.build(store, Locale.US);
+
+        // A delta sync that retitled one song in a hundred.
+        SongStore.Builder builder = new SongStore.Builder(store.size());
+        previousPositions = new int[store.size()];
+        for (int i = 0; i < store.size(); i++) {
+            Song song = store.get(i);
+            if (i % 100 == 0) {
+                builder.add(song.getId(), song.getTitle() + " (Live)", song.getArtist(), song.getAlbum(),
+                        song.getAlbumId(), song.getDurationMs(), song.getTrackNumber(),
+                        song.getDateAdded(), song.getDateModified() + 1);
+                previousPositions[i] = -1;
+            } else {
+                builder.add(song);
+                previousPositions[i] = i;
+            }
+        }
+        changedStore = builder.build();
+    }
+
+    /** Collation keys for every title, artist and album, as on the first sort after a load. */
+    @Benchmark
+    public SongSorter buildSorter() {
+        return SongSorter.build(store, Locale.US);
+    }
+
+    /** Four keys deep (artist, album, track, title) over cached ranks. */
+    @Benchmark
+    public SongStore sortByArtist() {
+        return sorter.sort(SongSorter.Key.ARTIST, true);
+    }
+
+    @Benchmark
+    public SongStore sortByDateAdded() {
+        return sorter.sort(SongSorter.Key.DATE_ADDED, false);
+    }
+
+    /** Title ranks carried over a delta sync that touched 1% of the songs. */
+    @Benchmark
+    public SongSorter updateSorter() {
+        return sorter.update(changedStore, previousPositions);
+    }
+}
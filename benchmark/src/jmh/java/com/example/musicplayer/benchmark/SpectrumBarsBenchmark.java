@@ -0,0 +1,55 @@
+package com.example.musicplayer.benchmark;
+
+import com.example.musicplayer.SpectrumAnalyzer;
+import com.example.musicplayer.SpectrumBars;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** One visualizer frame, from FFT capture to bar geometry, per quality tier. */
+@State(Scope.Benchmark)
+public class SpectrumBarsBenchmark {
+
+    private static final int SAMPLING_RATE_MILLI_HZ = 44_100_000;
+    private static final float FRAME_MS = 1000f / 60;
+
+    @Param({"LOW", "MEDIUM", "HIGH"})
+    public SpectrumAnalyzer.Quality quality;
+
+    // Two captures, alternated so every frame has something to ease toward.
+    private byte[][] captures;
+    private int captureSize;
+    private int frame;
+    private SpectrumAnalyzer analyzer;
+    private float[] lines;
+    private float[] peakLines;
+
+    @Setup
+    public void setUp() {
+        captureSize = quality.getCaptureSize(new int[] {128, 1024});
+        Random random = new Random(7);
+        captures = new byte[2][captureSize];
+        random.nextBytes(captures[0]);
+        random.nextBytes(captures[1]);
+        analyzer = new SpectrumAnalyzer(quality.getBandCount());
+        lines = new float[SpectrumBars.lineFloats(quality.getBandCount())];
+        peakLines = new float[SpectrumBars.lineFloats(quality.getBandCount())];
+    }
+
+    @Benchmark
+    public int frame() {
+        int bands = analyzer.getBandCount();
+        analyzer.analyze(captures[frame++ & 1], captureSize, SAMPLING_RATE_MILLI_HZ);
+        analyzer.advance(FRAME_MS);
+        return SpectrumBars.computeLines(analyzer.getLevels(), bands, 1080f, 400f, lines)
+                + SpectrumBars.computePeakLines(analyzer.getPeaks(), bands, 1080f, 400f, 4f, peakLines);
+    }
+
+    @Benchmark
+    public boolean advanceOnly() {
+        return analyzer.advance(FRAME_MS);
+    }
+}